@@ -1,45 +1,80 @@
 package com.curriculum.CurriculumUruguay;
 
-import com.curriculum.CurriculumUruguay.service.AiService;
+import com.curriculum.CurriculumUruguay.channel.ChannelAdapter;
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.model.PdfData;
+import com.curriculum.CurriculumUruguay.service.DuplicateFilter;
+import com.curriculum.CurriculumUruguay.service.MessagePipeline;
+import com.curriculum.CurriculumUruguay.service.PdfFileIdCache;
+import com.curriculum.CurriculumUruguay.service.PipelineMetrics;
+import com.curriculum.CurriculumUruguay.service.TelegramSender;
+import com.curriculum.CurriculumUruguay.util.SizeLimitedInputStream;
 import com.curriculum.CurriculumUruguay.util.TelegramUpdateProcessor;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.methods.CopyMessage;
 import org.telegram.telegrambots.meta.api.methods.GetFile;
 import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
-import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
-import org.telegram.telegrambots.meta.api.objects.Message;
-import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+import org.telegram.telegrambots.meta.api.objects.MessageId;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Base64;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Map;
+import java.net.URLConnection;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 @Component
-public class Bot extends TelegramLongPollingBot {
+public class Bot extends TelegramLongPollingBot implements ChannelAdapter {
     private static final Logger logger = LoggerFactory.getLogger(Bot.class);
 
+    public static final String CHANNEL = "telegram";
+
     @Value("${telegram.bot.token}")
     private String botToken;
 
     @Value("${telegram.bot.username}")
     private String botUsername;
-    
-    private final AiService aiService;
-    
-    public Bot(AiService aiService) {
-        this.aiService = aiService;
+
+    @Value("${telegram.api.url:https://api.telegram.org}")
+    private String apiUrl;
+
+    @Value("${bot.image.max-bytes:10485760}")
+    private long maxImageBytes;
+
+    @Value("${bot.image.target-size:1280}")
+    private int targetPhotoSize;
+
+    private final MessagePipeline messagePipeline;
+
+    private final PdfFileIdCache pdfFileIdCache;
+
+    private final TelegramSender telegramSender;
+
+    private final PipelineMetrics pipelineMetrics;
+
+    private final DuplicateFilter duplicateFilter;
+
+    public Bot(DefaultBotOptions botOptions, MessagePipeline messagePipeline, PdfFileIdCache pdfFileIdCache,
+               TelegramSender telegramSender, PipelineMetrics pipelineMetrics, DuplicateFilter duplicateFilter) {
+        super(botOptions);
+        this.messagePipeline = messagePipeline;
+        this.pdfFileIdCache = pdfFileIdCache;
+        this.telegramSender = telegramSender;
+        this.pipelineMetrics = pipelineMetrics;
+        this.duplicateFilter = duplicateFilter;
     }
 
     @Override
@@ -55,232 +90,167 @@ public class Bot extends TelegramLongPollingBot {
     @Override
     public void onUpdateReceived(Update update) {
         logger.info("Received update: {}", update.getUpdateId());
-        
+
+        // Updates delivered again after a restart or a retried request are handled only once
+        if (!duplicateFilter.acceptUpdate(update.getUpdateId())) {
+            logger.info("Update {} was already received, ignoring", update.getUpdateId());
+            pipelineMetrics.countUpdate(CHANNEL, "unknown", PipelineMetrics.DUPLICATE);
+            return;
+        }
+
         if (!update.hasMessage()) {
             logger.info("Update doesn't contain a message, ignoring");
+            pipelineMetrics.countUpdate(CHANNEL, "unknown", "ignored");
             return;
         }
-        
-        Message msg = update.getMessage();
-        Long userId = msg.getFrom().getId();
-        
+
         // Determine the type of update
+        Timer.Sample classify = pipelineMetrics.start();
         String eventType = TelegramUpdateProcessor.determineUpdateType(update);
+        pipelineMetrics.stop(classify, "classify", eventType, PipelineMetrics.SUCCESS);
         logger.info("Update type: {}", eventType);
-        
-        // Log the interaction instead of saving to database
-        logger.info("User interaction: userId={}, eventType={}", userId, eventType);
-        
-        try {
-            // Process different types of messages
-            switch (eventType) {
-                case "text":
-                    handleTextMessage(update);
-                    break;
-                case "photo":
-                    handlePhotoMessage(update);
-                    break;
-                case "document":
-                    handleDocumentMessage(update);
-                    break;
-                default:
-                    // For unsupported message types, send a default response
-                    sendText(userId, "Lo siento, no puedo procesar este tipo de mensaje. Por favor envía texto o una imagen.");
-                    break;
-            }
-        } catch (Exception e) {
-            logger.error("Error processing update: {}", e.getMessage(), e);
-            sendText(userId, "Lo siento, ocurrió un error al procesar tu mensaje. Por favor intenta nuevamente.");
-        }
-    }
-    
-    /**
-     * Handle text messages
-     */
-    private void handleTextMessage(Update update) {
-        Message message = update.getMessage();
-        Long userId = message.getFrom().getId();
-        String text = message.getText();
 
-        if(text.equals("/start")) {
-            return;
-        }
-        
-        logger.info("Processing text message from user {}: {}", userId, text);
-        
-        // Send text to AI service
-        Map<String, Object> aiResponse = aiService.sendTextToAi(userId.toString(), text);
-        
-        // Process AI response
-        processAiResponse(userId, aiResponse);
-    }
-    
-    /**
-     * Handle photo messages
-     */
-    private void handlePhotoMessage(Update update) {
-        Message message = update.getMessage();
-        Long userId = message.getFrom().getId();
-        List<PhotoSize> photos = message.getPhoto();
-        String caption = message.getCaption();
-        
-        logger.info("Processing photo message from user {}", userId);
-        
-        try {
-            // Get the largest photo (best quality)
-            PhotoSize photo = photos.stream()
-                    .max(Comparator.comparing(PhotoSize::getFileSize))
-                    .orElseThrow(() -> new RuntimeException("No photos found"));
-            
-            // Download the photo
-            byte[] photoData = downloadPhotoData(photo.getFileId());
-            
-            // Send photo to AI service
-            Map<String, Object> aiResponse = aiService.sendImageToAi(userId.toString(), caption, photoData);
-            
-            // Process AI response
-            processAiResponse(userId, aiResponse);
-        } catch (Exception e) {
-            logger.error("Error processing photo: {}", e.getMessage(), e);
-            sendText(userId, "Lo siento, ocurrió un error al procesar tu imagen. Por favor intenta nuevamente.");
-        }
+        // Hand the message to the shared pipeline so a slow AI call doesn't block the polling thread
+        messagePipeline.submit(this, TelegramUpdateProcessor.toInboundMessage(update, eventType, targetPhotoSize));
     }
-    
+
     /**
-     * Handle document messages
+     * Called when the polling session stops. The client's executor also carries the
+     * replies, it is kept until the outbound queue has been flushed
      */
-    private void handleDocumentMessage(Update update) {
-        Message message = update.getMessage();
-        Long userId = message.getFrom().getId();
-        
-        // For now, just inform the user that we don't process documents
-        sendText(userId, "Lo siento, actualmente no procesamos documentos. Por favor envía texto o una imagen.");
+    @Override
+    public void onClosing() {
+        // Shut down in close() once the pending replies are sent
     }
-    
-    /**
-     * Process the response from the AI service
-     */
-    private void processAiResponse(Long userId, Map<String, Object> aiResponse) {
-        if (aiResponse == null) {
-            sendText(userId, "Lo siento, no pude obtener una respuesta del servicio. Por favor intenta nuevamente.");
-            return;
-        }
-        // Extract nested "message" map
-        Map<String, Object> messageMap = (Map<String, Object>) aiResponse.get("message");
-
-
-        // Send PDF if available
-        if (messageMap.containsKey("pdfData") && messageMap.get("pdfData") != null) {
-            try {
-                String pdfData = (String) messageMap.get("pdfData");
-                logger.info("PDF data received: [data available]");
-
-                if (pdfData.isEmpty()) {
-                    logger.warn("PDF data is empty");
-                    return;
-                }
 
-                String filename = messageMap.containsKey("pdfFilename") && messageMap.get("pdfFilename") != null ?
-                        (String) messageMap.get("pdfFilename") : "curriculum.pdf";
-
-                try {
-                    byte[] pdfBytes = Base64.getDecoder().decode(pdfData);
-
-                    String textMessage = (String) messageMap.get("message");
+    @PreDestroy
+    public void close() {
+        super.onClosing();
+    }
 
-                    // Send the PDF
-                    sendPdfWithCaption(userId, pdfBytes, filename, textMessage);
+    @Override
+    public String channel() {
+        return CHANNEL;
+    }
 
-                    return;
-                } catch (IllegalArgumentException e) {
-                    // This exception is thrown when the input is not valid Base64
-                    logger.error("Invalid Base64 data for PDF: {}", e.getMessage());
-                    sendText(userId, "Lo siento, los datos del PDF no son válidos. Por favor intenta nuevamente.");
-                }
-            } catch (Exception e) {
-                logger.error("Error processing PDF data: {}", e.getMessage(), e);
-                sendText(userId, "Lo siento, ocurrió un error al procesar el PDF. Por favor intenta nuevamente.");
-            }
-        }
-        // Send text message if available
-        if (messageMap.containsKey("message") && messageMap.get("message") instanceof String) {
-            String textMessage = (String) messageMap.get("message");
-            sendText(userId, textMessage);
-        }
+    @Override
+    public CompletableFuture<Void> sendText(InboundMessage to, String text) {
+        return sendText(Long.valueOf(to.chatId()), text);
+    }
 
-         else if (!aiResponse.containsKey("message")) {
-            // If the response format is unexpected, send a generic message
-            sendText(userId, "He recibido tu mensaje, pero no pude procesar la respuesta correctamente.");
-        }
+    @Override
+    public CompletableFuture<Void> sendPdf(InboundMessage to, PdfData pdfData, String filename, String caption) {
+        return sendPdfWithCaption(Long.valueOf(to.chatId()), pdfData, filename, caption);
     }
-    
+
     /**
-     * Download photo data from Telegram servers
+     * Look up the path of a photo and open it on Telegram servers
      */
-    private byte[] downloadPhotoData(String fileId) throws IOException, TelegramApiException {
-        logger.info("Downloading photo with fileId: {}", fileId);
-        
+    @Override
+    public InputStream openMedia(InboundMessage.Media media) {
         // Get file path from Telegram servers
-        String filePath = getFile(fileId);
+        String filePath = pipelineMetrics.time("file_lookup", "photo", () -> getFile(media.id()));
         logger.info("Retrieved file path from Telegram: {}", filePath);
-        
-        // Get the file URL
-        String fileUrl = "https://api.telegram.org/file/bot" + botToken + "/" + filePath;
-        logger.info("File URL: {}", fileUrl);
-        
-        // Download the file
-        URL url = new URL(fileUrl);
-        try (InputStream inputStream = url.openStream()) {
-            byte[] imageData = inputStream.readAllBytes();
-            logger.info("Successfully downloaded image data, size: {} bytes", imageData.length);
-            return imageData;
+        return openPhotoStream(filePath);
+    }
+
+    /**
+     * Open a stream to a photo on Telegram servers. Files whose reported size is over
+     * the maximum image size are refused before any content is read.
+     */
+    private InputStream openPhotoStream(String filePath) {
+        try {
+            URLConnection connection = new URL(apiUrl + "/file/bot" + botToken + "/" + filePath).openConnection();
+            long contentLength = connection.getContentLengthLong();
+            if (contentLength > maxImageBytes) {
+                if (connection instanceof HttpURLConnection http) {
+                    http.disconnect();
+                }
+                throw new SizeLimitedInputStream.SizeLimitExceededException(maxImageBytes);
+            }
+            logger.info("Streaming photo from Telegram, size: {} bytes", contentLength);
+            return connection.getInputStream();
         } catch (IOException e) {
             logger.error("Error downloading image data: {}", e.getMessage());
-            throw e;
+            throw new UncheckedIOException(e);
         }
     }
 
-    public void sendText(Long who, String what) {
-        SendMessage sm = SendMessage.builder()
-                .chatId(who.toString())
-                .text(what).build();
-        try {
-            execute(sm);
-        } catch (TelegramApiException e) {
-            logger.error("Error sending text message: {}", e.getMessage(), e);
-            throw new RuntimeException(e);
-        }
+    /**
+     * Queue a text message, long messages are split to fit Telegram's limit
+     * @return Future completed once the message has been sent
+     */
+    public CompletableFuture<Void> sendText(Long who, String what) {
+        return telegramSender.sendText(who, what).thenAccept(sent -> { });
     }
 
-    public void sendPdf(Long who, InputFile document) {
+    public CompletableFuture<Void> sendPdf(Long who, InputFile document) {
         SendDocument sd = SendDocument.builder()
                 .chatId(who.toString())
                 .document(document)
                 .caption("Aquí está tu curriculum")
                 .build();
-        try {
-            execute(sd);
-        } catch (TelegramApiException e) {
-            logger.error("Error sending PDF: {}", e.getMessage(), e);
-            throw new RuntimeException(e);
-        }
+        return telegramSender.sendDocument(who, () -> sd).thenAccept(sent -> { });
     }
-    
-    public void sendPdfWithCaption(Long who, byte[] pdfData, String filename, String caption) {
-        try (InputStream inputStream = new ByteArrayInputStream(pdfData)) {
-            InputFile document = new InputFile(inputStream, filename);
-            
-            SendDocument sd = SendDocument.builder()
-                    .chatId(who.toString())
-                    .document(document)
-                    .caption(caption)
-                    .build();
-            
-            execute(sd);
-        } catch (IOException | TelegramApiException e) {
-            logger.error("Error sending PDF with caption: {}", e.getMessage(), e);
-            throw new RuntimeException(e);
+
+    public CompletableFuture<Void> sendPdfWithCaption(Long who, byte[] pdfData, String filename, String caption) {
+        return sendPdfWithCaption(who, PdfData.of(pdfData), filename, caption);
+    }
+
+    /**
+     * Send a PDF streaming it from memory or from its temporary file. A PDF that was
+     * already uploaded is re-sent by its Telegram file_id instead of uploading it again.
+     * The PDF must stay open until the returned future completes.
+     */
+    public CompletableFuture<Void> sendPdfWithCaption(Long who, PdfData pdfData, String filename, String caption) {
+        String cachedFileId = pdfFileIdCache.get(pdfData.sha256());
+        if (cachedFileId == null) {
+            return uploadPdf(who, pdfData, filename, caption);
         }
+
+        SendDocument byFileId = SendDocument.builder()
+                .chatId(who.toString())
+                .document(new InputFile(cachedFileId))
+                .caption(caption)
+                .build();
+        return telegramSender.sendDocument(who, () -> byFileId)
+                .<Void>thenApply(sent -> null)
+                .exceptionallyCompose(e -> {
+                    logger.warn("Cached file_id rejected by Telegram, uploading PDF again: {}", e.getMessage());
+                    pdfFileIdCache.evict(pdfData.sha256());
+                    return uploadPdf(who, pdfData, filename, caption);
+                });
+    }
+
+    private CompletableFuture<Void> uploadPdf(Long who, PdfData pdfData, String filename, String caption) {
+        // Every attempt, including retries after rate limiting, reads the PDF again
+        Queue<InputStream> opened = new ConcurrentLinkedQueue<>();
+        return telegramSender.sendDocument(who, () -> {
+                    try {
+                        InputStream inputStream = pdfData.openStream();
+                        opened.add(inputStream);
+                        return SendDocument.builder()
+                                .chatId(who.toString())
+                                .document(new InputFile(inputStream, filename))
+                                .caption(caption)
+                                .build();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .whenComplete((sent, error) -> {
+                    for (InputStream inputStream : opened) {
+                        try {
+                            inputStream.close();
+                        } catch (IOException e) {
+                            logger.warn("Error closing PDF stream: {}", e.getMessage());
+                        }
+                    }
+                    if (sent != null && sent.hasDocument()) {
+                        pdfFileIdCache.put(pdfData.sha256(), sent.getDocument().getFileId());
+                    }
+                })
+                .thenAccept(sent -> { });
     }
 
     public String getFile(String fileId) {
@@ -296,17 +266,12 @@ public class Bot extends TelegramLongPollingBot {
         }
     }
 
-    public void copyMessage(Long who, Integer msgId) {
+    public CompletableFuture<MessageId> copyMessage(Long who, Integer msgId) {
         CopyMessage cm = CopyMessage.builder()
                 .fromChatId(who.toString())
                 .chatId(who.toString())
                 .messageId(msgId)
                 .build();
-        try {
-            execute(cm);
-        } catch (TelegramApiException e) {
-            logger.error("Error copying message: {}", e.getMessage(), e);
-            throw new RuntimeException(e);
-        }
+        return telegramSender.execute(who, cm);
     }
 }
@@ -0,0 +1,168 @@
+package com.curriculum.CurriculumUruguay;
+
+import com.curriculum.CurriculumUruguay.service.ClusterRouter;
+import com.curriculum.CurriculumUruguay.service.InboundJournal;
+import com.curriculum.CurriculumUruguay.service.MessageCoalescer;
+import com.curriculum.CurriculumUruguay.service.TelegramSender;
+import com.curriculum.CurriculumUruguay.service.UpdateDispatcher;
+import com.curriculum.CurriculumUruguay.util.SetWebhookWithSecret;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.BotSession;
+import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Starts and stops receiving updates. Updates are only received once the
+ * application is ready, so startup never waits on Telegram and a run that stops
+ * after the context refresh, like a CDS training run, makes no remote call.
+ * <p>
+ * On shutdown intake stops first: the polling session is closed and the web
+ * server, stopped gracefully before this, refuses new webhook requests, which
+ * Telegram delivers again to the next instance. The updates already received are
+ * then given until the drain timeout to be answered, and the replies still queued
+ * for Telegram are sent. Updates left unanswered at the deadline stay in the inbound
+ * journal, when enabled, and are handled after the restart.
+ */
+@Component
+public class BotLifecycle implements SmartLifecycle {
+    private static final Logger logger = LoggerFactory.getLogger(BotLifecycle.class);
+
+    private final Bot bot;
+    private final MessageCoalescer messageCoalescer;
+    private final UpdateDispatcher updateDispatcher;
+    private final TelegramSender telegramSender;
+    private final ClusterRouter clusterRouter;
+    private final InboundJournal inboundJournal;
+
+    private final String botMode;
+    private final String webhookUrl;
+    private final String webhookPath;
+    private final String webhookSecretToken;
+    private final int webhookMaxConnections;
+    private final Duration drainTimeout;
+
+    private volatile boolean running;
+    private BotSession session;
+
+    public BotLifecycle(Bot bot, MessageCoalescer messageCoalescer, UpdateDispatcher updateDispatcher,
+                        TelegramSender telegramSender, ClusterRouter clusterRouter, InboundJournal inboundJournal,
+                        @Value("${telegram.bot.mode:polling}") String botMode,
+                        @Value("${telegram.webhook.url:}") String webhookUrl,
+                        @Value("${telegram.webhook.path:/telegram/webhook}") String webhookPath,
+                        @Value("${telegram.webhook.secret-token:}") String webhookSecretToken,
+                        @Value("${telegram.webhook.max-connections:40}") int webhookMaxConnections,
+                        @Value("${bot.shutdown.drain-timeout:20s}") Duration drainTimeout) {
+        this.bot = bot;
+        this.messageCoalescer = messageCoalescer;
+        this.updateDispatcher = updateDispatcher;
+        this.telegramSender = telegramSender;
+        this.clusterRouter = clusterRouter;
+        this.inboundJournal = inboundJournal;
+        this.botMode = botMode;
+        this.webhookUrl = webhookUrl;
+        this.webhookPath = webhookPath;
+        this.webhookSecretToken = webhookSecretToken;
+        this.webhookMaxConnections = webhookMaxConnections;
+        this.drainTimeout = drainTimeout;
+    }
+
+    /**
+     * Start receiving updates according to telegram.bot.mode:
+     * polling (long polling session), webhook (Telegram pushes to our endpoint)
+     * or none (updates are not received by this instance)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public synchronized void startIntake(ApplicationReadyEvent event) throws TelegramApiException {
+        switch (botMode) {
+            case "polling":
+                session = new TelegramBotsApi(DefaultBotSession.class).registerBot(bot);
+                break;
+            case "webhook":
+                bot.execute(new SetWebhookWithSecret(webhookUrl + webhookPath, webhookSecretToken,
+                        webhookMaxConnections, List.of("message")));
+                logger.info("Webhook registered at {}{}", webhookUrl, webhookPath);
+                break;
+            case "none":
+                logger.info("Bot update receiving is disabled");
+                return;
+            default:
+                throw new IllegalStateException("Unknown telegram.bot.mode: " + botMode);
+        }
+        logger.info("Receiving updates {} ms after startup", event.getTimeTaken().toMillis());
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * Stop intake and wait for the updates in progress, up to the drain timeout
+     */
+    @Override
+    public void stop() {
+        running = false;
+        stopPolling();
+        // Texts waiting for the user to stop typing go now
+        messageCoalescer.flush();
+
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        while (pending() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        int unfinished = updateDispatcher.getQueuedTotal() + clusterRouter.getQueued();
+        if (unfinished > 0) {
+            logger.warn("Drain timeout of {} elapsed with {} updates unfinished, {}", drainTimeout, unfinished,
+                    inboundJournal.isEnabled() ? "they are replayed on restart" : "they are lost");
+        }
+        if (telegramSender.getQueued() > 0) {
+            logger.warn("{} Telegram calls were not sent before shutdown", telegramSender.getQueued());
+        }
+    }
+
+    private synchronized void stopPolling() {
+        if (session != null && session.isRunning()) {
+            session.stop();
+            logger.info("Polling stopped");
+        }
+    }
+
+    /**
+     * @return Updates being handled or forwarded plus replies not sent yet
+     */
+    private int pending() {
+        return updateDispatcher.getQueuedTotal() + clusterRouter.getQueued() + telegramSender.getQueued();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stops after the web server stopped accepting requests, before it is shut down
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 1536;
+    }
+}
@@ -1,15 +1,10 @@
 package com.curriculum.CurriculumUruguay;
 
-import jakarta.annotation.PostConstruct;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
 import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
-import org.telegram.telegrambots.meta.TelegramBotsApi;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
-import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
 @SpringBootApplication(exclude = {
 	DataSourceAutoConfiguration.class,
@@ -18,16 +13,7 @@ import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 })
 public class CurriculumUruguayApplication {
 
-	@Autowired
-	private Bot bot;
-
 	public static void main(String[] args) {
 		SpringApplication.run(CurriculumUruguayApplication.class, args);
 	}
-
-	@PostConstruct
-	public void initBot() throws TelegramApiException {
-		TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
-		botsApi.registerBot(bot);
-	}
 }
@@ -0,0 +1,45 @@
+package com.curriculum.CurriculumUruguay.channel;
+
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.model.PdfData;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A messaging channel the bot is reachable on. Adapters turn the channel's payloads
+ * into {@link InboundMessage}s for the shared pipeline and deliver its replies.
+ */
+public interface ChannelAdapter {
+
+    /**
+     * @return Channel name, as used in {@link InboundMessage#channel()}
+     */
+    String channel();
+
+    /**
+     * Send a text reply
+     * @param to Message being answered
+     * @param text Reply text
+     * @return Future completed once the reply has been sent
+     */
+    CompletableFuture<Void> sendText(InboundMessage to, String text);
+
+    /**
+     * Send a PDF reply. The PDF stays open until the returned future completes.
+     * @param to Message being answered
+     * @param pdfData PDF content
+     * @param filename Filename shown to the user
+     * @param caption Optional caption
+     * @return Future completed once the PDF has been sent
+     */
+    CompletableFuture<Void> sendPdf(InboundMessage to, PdfData pdfData, String filename, String caption);
+
+    /**
+     * Open attached media. Called while the request to the AI service is being
+     * written, so the content streams through without being buffered.
+     * @param media Media of an inbound message
+     * @return Stream of the media content
+     */
+    InputStream openMedia(InboundMessage.Media media);
+}
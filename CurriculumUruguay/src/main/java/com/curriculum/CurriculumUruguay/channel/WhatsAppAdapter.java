@@ -0,0 +1,279 @@
+package com.curriculum.CurriculumUruguay.channel;
+
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.model.PdfData;
+import com.curriculum.CurriculumUruguay.util.MessageText;
+import com.curriculum.CurriculumUruguay.util.MultipartBody;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * WhatsApp Cloud API channel. Messages arrive through the webhook handled by
+ * {@link com.curriculum.CurriculumUruguay.controller.WhatsAppWebhookController},
+ * replies and media go through the Graph API.
+ */
+@Component
+@ConditionalOnProperty(name = "whatsapp.enabled", havingValue = "true")
+public class WhatsAppAdapter implements ChannelAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(WhatsAppAdapter.class);
+
+    public static final String CHANNEL = "whatsapp";
+
+    /**
+     * Maximum length of a WhatsApp text message body
+     */
+    private static final int MAX_MESSAGE_LENGTH = 4096;
+
+    private final String baseUrl;
+
+    private final String accessToken;
+
+    private final Duration requestTimeout;
+
+    private final ObjectMapper objectMapper;
+
+    private final HttpClient httpClient;
+
+    public WhatsAppAdapter(@Value("${whatsapp.api-url:https://graph.facebook.com}") String apiUrl,
+                           @Value("${whatsapp.api-version:v21.0}") String apiVersion,
+                           @Value("${whatsapp.access-token}") String accessToken,
+                           @Value("${whatsapp.connect-timeout:5s}") Duration connectTimeout,
+                           @Value("${whatsapp.request-timeout:60s}") Duration requestTimeout,
+                           ObjectMapper objectMapper, ExecutorService aiResponseExecutor) {
+        this.baseUrl = apiUrl + "/" + apiVersion;
+        this.accessToken = accessToken;
+        this.requestTimeout = requestTimeout;
+        this.objectMapper = objectMapper;
+        // Shares the threads of the AI client instead of starting another pool
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .executor(aiResponseExecutor)
+                .build();
+    }
+
+    @Override
+    public String channel() {
+        return CHANNEL;
+    }
+
+    /**
+     * Extract the messages of a webhook payload, status notifications are skipped
+     * @param payload Body of a webhook request
+     * @return Normalized messages in the order they were received
+     */
+    public static List<InboundMessage> parseWebhook(JsonNode payload) {
+        List<InboundMessage> messages = new ArrayList<>();
+        for (JsonNode entry : payload.path("entry")) {
+            for (JsonNode change : entry.path("changes")) {
+                JsonNode value = change.path("value");
+                String phoneNumberId = value.path("metadata").path("phone_number_id").asText(null);
+                for (JsonNode message : value.path("messages")) {
+                    messages.add(toInboundMessage(message, phoneNumberId));
+                }
+            }
+        }
+        return messages;
+    }
+
+    private static InboundMessage toInboundMessage(JsonNode message, String phoneNumberId) {
+        String from = message.path("from").asText();
+        String whatsAppType = message.path("type").asText("unknown");
+        JsonNode content = message.path(whatsAppType);
+
+        String type;
+        switch (whatsAppType) {
+            case "text":
+                type = "text";
+                break;
+            case "image":
+                type = "photo";
+                break;
+            case "audio":
+                type = content.path("voice").asBoolean() ? "voice" : "audio";
+                break;
+            case "contacts":
+                type = "contact";
+                break;
+            case "document":
+            case "video":
+            case "sticker":
+            case "location":
+                type = whatsAppType;
+                break;
+            default:
+                type = "unknown";
+                break;
+        }
+
+        InboundMessage.Media media = null;
+        if (content.hasNonNull("id")) {
+            media = new InboundMessage.Media(content.path("id").asText(), content.path("mime_type").asText(null), null);
+        }
+
+        return new InboundMessage(CHANNEL, from, from, phoneNumberId, message.path("id").asText(null), type,
+                content.path("body").asText(null), content.path("caption").asText(null), media);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendText(InboundMessage to, String text) {
+        CompletableFuture<Void> sent = CompletableFuture.completedFuture(null);
+        for (String part : MessageText.split(text, MAX_MESSAGE_LENGTH)) {
+            ObjectNode body = newMessage(to, "text");
+            body.putObject("text")
+                    .put("preview_url", true)
+                    .put("body", part);
+            // Parts are sent one after the other so they arrive in order
+            sent = sent.thenCompose(previous -> postJson("/" + to.accountId() + "/messages", body).thenAccept(response -> { }));
+        }
+        return sent;
+    }
+
+    /**
+     * Upload the PDF as media, streaming it from memory or its temporary file,
+     * then send it as a document message
+     */
+    @Override
+    public CompletableFuture<Void> sendPdf(InboundMessage to, PdfData pdfData, String filename, String caption) {
+        MultipartBody upload = new MultipartBody()
+                .addField("messaging_product", "whatsapp")
+                .addField("type", "application/pdf")
+                .addFile("file", filename, "application/pdf", () -> {
+                    try {
+                        return pdfData.openStream();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        HttpRequest request = newRequest("/" + to.accountId() + "/media")
+                .header("Content-Type", upload.getContentType())
+                .POST(upload.build())
+                .build();
+
+        return send(request).thenCompose(media -> {
+            ObjectNode body = newMessage(to, "document");
+            ObjectNode document = body.putObject("document")
+                    .put("id", media.path("id").asText())
+                    .put("filename", filename);
+            if (caption != null) {
+                document.put("caption", caption);
+            }
+            return postJson("/" + to.accountId() + "/messages", body);
+        }).thenAccept(response -> { });
+    }
+
+    /**
+     * Resolve the download URL of a media id and open it, both requests need the access token
+     */
+    @Override
+    public InputStream openMedia(InboundMessage.Media media) {
+        try {
+            HttpResponse<byte[]> lookup = httpClient.send(newRequest("/" + media.id()).GET().build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            checkStatus(lookup.statusCode(), lookup.body());
+            String url = objectMapper.readTree(lookup.body()).path("url").asText();
+
+            HttpResponse<InputStream> download = httpClient.send(HttpRequest.newBuilder(URI.create(url))
+                            .timeout(requestTimeout)
+                            .header("Authorization", "Bearer " + accessToken)
+                            .GET()
+                            .build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            if (download.statusCode() >= 300) {
+                download.body().close();
+                throw new IOException("WhatsApp media download returned HTTP " + download.statusCode());
+            }
+            return download.body();
+        } catch (IOException e) {
+            logger.error("Error downloading WhatsApp media: {}", e.getMessage());
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while downloading WhatsApp media", e);
+        }
+    }
+
+    /**
+     * Mark a message as read and show the typing indicator. Failures are only logged
+     * so they never disrupt the reply.
+     */
+    public void markAsRead(InboundMessage message) {
+        if (message.accountId() == null || message.messageId() == null) {
+            return;
+        }
+        ObjectNode body = objectMapper.createObjectNode()
+                .put("messaging_product", "whatsapp")
+                .put("status", "read")
+                .put("message_id", message.messageId());
+        body.putObject("typing_indicator").put("type", "text");
+        postJson("/" + message.accountId() + "/messages", body)
+                .exceptionally(e -> {
+                    logger.warn("Error marking WhatsApp message {} as read: {}", message.messageId(), e.getMessage());
+                    return null;
+                });
+    }
+
+    private ObjectNode newMessage(InboundMessage to, String type) {
+        return objectMapper.createObjectNode()
+                .put("messaging_product", "whatsapp")
+                .put("recipient_type", "individual")
+                .put("to", to.chatId())
+                .put("type", type);
+    }
+
+    private CompletableFuture<JsonNode> postJson(String path, JsonNode body) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(body);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return send(newRequest(path)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json))
+                .build());
+    }
+
+    private CompletableFuture<JsonNode> send(HttpRequest request) {
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    try {
+                        checkStatus(response.statusCode(), response.body());
+                        return objectMapper.readTree(response.body());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    private HttpRequest.Builder newRequest(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(requestTimeout)
+                .header("Authorization", "Bearer " + accessToken);
+    }
+
+    private static void checkStatus(int statusCode, byte[] body) throws IOException {
+        if (statusCode >= 300) {
+            throw new IOException("WhatsApp API returned HTTP " + statusCode + ": " + new String(body, StandardCharsets.UTF_8));
+        }
+    }
+}
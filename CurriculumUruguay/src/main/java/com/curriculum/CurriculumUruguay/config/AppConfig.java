@@ -1,14 +1,61 @@
 package com.curriculum.CurriculumUruguay.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.client.RestTemplate;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
 public class AppConfig {
 
+    /**
+     * Threads of the async AI client, also used to decode streamed responses
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService aiResponseExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ai-response-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Client of every call to the AI service. Prefers HTTP/2 and falls back to
+     * HTTP/1.1 when the agent doesn't support it; connections are kept alive and
+     * reused across calls. The connections a call may use are leased from the
+     * AiConnectionPool, which bounds and meters them.
+     */
+    @Bean
+    public HttpClient aiAsyncHttpClient(
+            ExecutorService aiResponseExecutor,
+            @Value("${ai.service.connect-timeout:5s}") Duration connectTimeout,
+            @Value("${ai.service.http2:true}") boolean http2) {
+        return HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .executor(aiResponseExecutor)
+                .build();
+    }
+
+    /**
+     * Options of the Telegram client. The thread count bounds how many sends the
+     * outbound queue can have in flight with executeAsync. The API URL can point to
+     * a local Bot API server or a stand-in for load tests.
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public DefaultBotOptions botOptions(@Value("${telegram.sender.max-threads:8}") int maxThreads,
+                                        @Value("${telegram.api.url:https://api.telegram.org}") String apiUrl) {
+        DefaultBotOptions botOptions = new DefaultBotOptions();
+        botOptions.setMaxThreads(maxThreads);
+        botOptions.setBaseUrl(apiUrl + "/bot");
+        return botOptions;
     }
 }
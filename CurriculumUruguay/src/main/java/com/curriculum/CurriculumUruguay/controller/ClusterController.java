@@ -0,0 +1,90 @@
+package com.curriculum.CurriculumUruguay.controller;
+
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.service.ClusterRouter;
+import com.curriculum.CurriculumUruguay.service.MessagePipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Endpoints between the instances of a cluster: the ingress accepts worker
+ * heartbeats and leave notices, workers accept the messages forwarded to them
+ */
+@RestController
+public class ClusterController {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterController.class);
+
+    /**
+     * @param url Base URL of the worker
+     */
+    public record WorkerRequest(String url) {
+    }
+
+    private final ClusterRouter clusterRouter;
+
+    private final MessagePipeline messagePipeline;
+
+    private final boolean worker;
+
+    public ClusterController(ClusterRouter clusterRouter, MessagePipeline messagePipeline,
+                             @Value("${bot.cluster.role:standalone}") String role) {
+        this.clusterRouter = clusterRouter;
+        this.messagePipeline = messagePipeline;
+        this.worker = ClusterRouter.ROLE_WORKER.equals(role);
+    }
+
+    /**
+     * Messages forwarded by the ingress, handled in the order they are listed
+     */
+    @PostMapping("/cluster/messages")
+    public ResponseEntity<Void> onMessages(@RequestHeader(name = ClusterRouter.SECRET_HEADER, required = false) String secret,
+                                           @RequestBody List<InboundMessage> messages) {
+        if (!worker) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!clusterRouter.isAuthorized(secret)) {
+            logger.warn("Rejected forwarded messages with invalid cluster secret");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        for (InboundMessage message : messages) {
+            messagePipeline.submit(message);
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping("/cluster/workers")
+    public ResponseEntity<Void> onHeartbeat(@RequestHeader(name = ClusterRouter.SECRET_HEADER, required = false) String secret,
+                                            @RequestBody WorkerRequest request) {
+        if (!clusterRouter.isIngress()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!clusterRouter.isAuthorized(secret) || request.url() == null || request.url().isBlank()) {
+            logger.warn("Rejected cluster heartbeat from {}", request.url());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        clusterRouter.register(request.url());
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping("/cluster/workers/leave")
+    public ResponseEntity<Void> onLeave(@RequestHeader(name = ClusterRouter.SECRET_HEADER, required = false) String secret,
+                                        @RequestBody WorkerRequest request) {
+        if (!clusterRouter.isIngress()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!clusterRouter.isAuthorized(secret)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        clusterRouter.deregister(request.url());
+        return ResponseEntity.ok().build();
+    }
+}
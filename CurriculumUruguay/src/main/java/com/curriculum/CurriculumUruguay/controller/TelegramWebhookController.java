@@ -0,0 +1,49 @@
+package com.curriculum.CurriculumUruguay.controller;
+
+import com.curriculum.CurriculumUruguay.Bot;
+import com.curriculum.CurriculumUruguay.util.Secrets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Receives updates pushed by Telegram when the bot runs in webhook mode and hands
+ * them to the same dispatch path used by long polling
+ */
+@RestController
+@ConditionalOnProperty(name = "telegram.bot.mode", havingValue = "webhook")
+public class TelegramWebhookController {
+    private static final Logger logger = LoggerFactory.getLogger(TelegramWebhookController.class);
+
+    static final String SECRET_TOKEN_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final Bot bot;
+
+    private final String secretToken;
+
+    public TelegramWebhookController(Bot bot, @Value("${telegram.webhook.secret-token}") String secretToken) {
+        this.bot = bot;
+        this.secretToken = secretToken;
+    }
+
+    @PostMapping("${telegram.webhook.path:/telegram/webhook}")
+    public ResponseEntity<Void> onUpdate(@RequestHeader(name = SECRET_TOKEN_HEADER, required = false) String token,
+                                         @RequestBody Update update) {
+        if (!Secrets.secretMatches(secretToken, token)) {
+            logger.warn("Rejected webhook request with invalid secret token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        // Dispatching is asynchronous, Telegram gets its answer right away
+        bot.onUpdateReceived(update);
+        return ResponseEntity.ok().build();
+    }
+}
@@ -0,0 +1,116 @@
+package com.curriculum.CurriculumUruguay.controller;
+
+import com.curriculum.CurriculumUruguay.channel.WhatsAppAdapter;
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.service.MessagePipeline;
+import com.curriculum.CurriculumUruguay.util.Secrets;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Receives WhatsApp Cloud API webhooks and hands their messages to the shared pipeline
+ */
+@RestController
+@ConditionalOnProperty(name = "whatsapp.enabled", havingValue = "true")
+public class WhatsAppWebhookController {
+    private static final Logger logger = LoggerFactory.getLogger(WhatsAppWebhookController.class);
+
+    static final String SIGNATURE_HEADER = "X-Hub-Signature-256";
+
+    private final WhatsAppAdapter whatsAppAdapter;
+
+    private final MessagePipeline messagePipeline;
+
+    private final ObjectMapper objectMapper;
+
+    private final String verifyToken;
+
+    private final byte[] appSecret;
+
+    public WhatsAppWebhookController(WhatsAppAdapter whatsAppAdapter, MessagePipeline messagePipeline,
+                                     ObjectMapper objectMapper,
+                                     @Value("${whatsapp.verify-token}") String verifyToken,
+                                     @Value("${whatsapp.app-secret:}") String appSecret) {
+        this.whatsAppAdapter = whatsAppAdapter;
+        this.messagePipeline = messagePipeline;
+        this.objectMapper = objectMapper;
+        this.verifyToken = verifyToken;
+        // Unsigned requests could be forged by anyone, so the channel doesn't start without the secret
+        if (appSecret.isBlank()) {
+            throw new IllegalStateException("whatsapp.app-secret is required when whatsapp.enabled=true");
+        }
+        this.appSecret = appSecret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Subscription check Meta performs when the webhook is configured
+     */
+    @GetMapping("${whatsapp.webhook.path:/whatsapp/webhook}")
+    public ResponseEntity<String> verify(@RequestParam(name = "hub.mode", required = false) String mode,
+                                         @RequestParam(name = "hub.verify_token", required = false) String token,
+                                         @RequestParam(name = "hub.challenge", required = false) String challenge) {
+        if ("subscribe".equals(mode) && Secrets.secretMatches(verifyToken, token)) {
+            return ResponseEntity.ok(challenge);
+        }
+        logger.warn("Rejected WhatsApp webhook verification");
+        return ResponseEntity.badRequest().build();
+    }
+
+    @PostMapping("${whatsapp.webhook.path:/whatsapp/webhook}")
+    public ResponseEntity<Void> onMessage(@RequestHeader(name = SIGNATURE_HEADER, required = false) String signature,
+                                          @RequestBody byte[] body) {
+        // The payload is signed with the app secret, unsigned requests are refused
+        if (!isValidSignature(signature, body)) {
+            logger.warn("Rejected WhatsApp webhook request with invalid signature");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        List<InboundMessage> messages;
+        try {
+            messages = WhatsAppAdapter.parseWebhook(objectMapper.readTree(body));
+        } catch (IOException e) {
+            logger.warn("Rejected malformed WhatsApp webhook payload: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        // Dispatching is asynchronous, Meta gets its answer right away
+        for (InboundMessage message : messages) {
+            whatsAppAdapter.markAsRead(message);
+            messagePipeline.submit(whatsAppAdapter, message);
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    private boolean isValidSignature(String signature, byte[] body) {
+        if (signature == null || !signature.startsWith("sha256=")) {
+            return false;
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(appSecret, "HmacSHA256"));
+            byte[] expected = mac.doFinal(body);
+            return Secrets.secretMatches(expected, HexFormat.of().parseHex(signature.substring("sha256=".length())));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
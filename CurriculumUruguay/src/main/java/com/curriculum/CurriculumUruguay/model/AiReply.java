@@ -0,0 +1,38 @@
+package com.curriculum.CurriculumUruguay.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Reply of the AI service, the content of the "message" object in its JSON response
+ * @param message Text to send back to the user
+ * @param status Status of the conversation reported by the agent
+ * @param pdfFilename Filename of the generated curriculum, if any
+ * @param pdfData Generated curriculum, decoded from the Base64 pdfData field, if any
+ * @param cv Curriculum as structured data for the bot to render, if any
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record AiReply(String message, String status, String pdfFilename, PdfData pdfData, CvData cv) {
+
+    @JsonCreator
+    public AiReply {
+    }
+
+    public AiReply(String message, String status, String pdfFilename, PdfData pdfData) {
+        this(message, status, pdfFilename, pdfData, null);
+    }
+
+    /**
+     * @return true if the reply carries a PDF document
+     */
+    public boolean hasPdf() {
+        return pdfData != null;
+    }
+
+    /**
+     * @return true if the reply carries a curriculum to render
+     */
+    public boolean hasCv() {
+        return cv != null;
+    }
+}
@@ -0,0 +1,44 @@
+package com.curriculum.CurriculumUruguay.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * Content of a curriculum sent by the agent as structured data, rendered to PDF by
+ * the bot instead of being generated by the agent. Every field is optional.
+ * @param name Full name
+ * @param title Profession or position sought
+ * @param email Contact email
+ * @param phone Contact phone
+ * @param location City or country of residence
+ * @param summary Professional profile
+ * @param experience Jobs, most recent first
+ * @param education Degrees and courses, most recent first
+ * @param skills Skills, one per item
+ * @param languages Languages and level, one per item
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record CvData(String name, String title, String email, String phone, String location, String summary,
+                     List<Experience> experience, List<Education> education, List<String> skills,
+                     List<String> languages) {
+
+    /**
+     * @param role Position held
+     * @param company Employer
+     * @param period Dates, as written by the agent
+     * @param description Responsibilities and achievements
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Experience(String role, String company, String period, String description) {
+    }
+
+    /**
+     * @param degree Degree or course
+     * @param institution School, university or institute
+     * @param period Dates, as written by the agent
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Education(String degree, String institution, String period) {
+    }
+}
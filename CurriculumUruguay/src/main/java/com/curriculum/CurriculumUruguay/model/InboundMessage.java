@@ -0,0 +1,33 @@
+package com.curriculum.CurriculumUruguay.model;
+
+/**
+ * A message received on any channel, normalized so the same pipeline can answer it
+ * @param channel Channel the message arrived on, e.g. "telegram" or "whatsapp"
+ * @param userId Sender id within the channel, also sent to the AI service as "from"
+ * @param chatId Conversation to reply to
+ * @param accountId Bot account that received the message (WhatsApp phone number id), if the channel has several
+ * @param messageId Id of the message within the channel
+ * @param type Event type: text, photo, document, voice, audio, video, video_note, sticker, location, contact or unknown
+ * @param text Text of a text message
+ * @param caption Caption of a media message
+ * @param media Attached media, if any
+ */
+public record InboundMessage(String channel, String userId, String chatId, String accountId, String messageId,
+                             String type, String text, String caption, Media media) {
+
+    /**
+     * Reference to media stored by the channel, downloaded only when needed
+     * @param id Channel specific media id
+     * @param mimeType Content type, if the channel reports it
+     * @param size Size in bytes, if the channel reports it
+     */
+    public record Media(String id, String mimeType, Long size) {
+    }
+
+    /**
+     * @return Key that identifies the sender across channels, messages with the same key are handled in order
+     */
+    public String conversationKey() {
+        return channel + ":" + userId;
+    }
+}
@@ -0,0 +1,79 @@
+package com.curriculum.CurriculumUruguay.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Append-only record of a message received from a user, for analytics.
+ * Rows are inserted in JDBC batches by the interaction log, the entity
+ * declares the table for schema generation and queries.
+ */
+@Entity
+@Table(name = "interaction_log", indexes = @Index(name = "idx_interaction_log_user", columnList = "channel, user_id"))
+public class Interaction {
+
+    /**
+     * Insert used by the batch writer
+     */
+    public static final String INSERT_SQL =
+            "INSERT INTO interaction_log (received_at, channel, user_id, event_type, message_id) VALUES (?, ?, ?, ?, ?)";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "received_at", nullable = false)
+    private Instant receivedAt;
+
+    @Column(name = "channel", nullable = false, length = 32)
+    private String channel;
+
+    @Column(name = "user_id", nullable = false, length = 64)
+    private String userId;
+
+    @Column(name = "event_type", nullable = false, length = 32)
+    private String eventType;
+
+    @Column(name = "message_id", length = 128)
+    private String messageId;
+
+    protected Interaction() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Instant getReceivedAt() {
+        return receivedAt;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * Event queued by the update path before it is written
+     */
+    public record Event(Instant receivedAt, String channel, String userId, String eventType, String messageId) {
+    }
+}
@@ -0,0 +1,236 @@
+package com.curriculum.CurriculumUruguay.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.exc.StreamReadException;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Decoded PDF sent by the AI service. Small documents are kept in memory, larger ones
+ * are spilled to a temporary file which is deleted when this object is closed.
+ */
+@JsonDeserialize(using = PdfData.Deserializer.class)
+public final class PdfData implements AutoCloseable {
+
+    /**
+     * Reader attribute with the maximum number of bytes kept in memory before spilling to disk
+     */
+    public static final String MEMORY_THRESHOLD_ATTRIBUTE = "pdfMemoryThreshold";
+
+    private static final int DEFAULT_MEMORY_THRESHOLD = 256 * 1024;
+
+    private final byte[] data;
+    private final Path file;
+    private final long size;
+    private final String sha256;
+
+    private PdfData(byte[] data, Path file, long size, String sha256) {
+        this.data = data;
+        this.file = file;
+        this.size = size;
+        this.sha256 = sha256;
+    }
+
+    /**
+     * @param data PDF content
+     * @return PDF held in memory
+     */
+    public static PdfData of(byte[] data) {
+        MessageDigest digest = newDigest();
+        digest.update(data);
+        return new PdfData(data, null, data.length, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    /**
+     * Write a PDF, in memory up to the threshold and to a temporary file after that
+     * @param memoryThreshold Maximum number of bytes kept in memory
+     * @param content Writes the PDF content
+     * @return PDF holding what was written
+     */
+    public static PdfData write(int memoryThreshold, Content content) throws IOException {
+        SpillingOutputStream out = new SpillingOutputStream(memoryThreshold);
+        try (out) {
+            content.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            out.discard();
+            throw e;
+        }
+        return out.toPdfData();
+    }
+
+    /**
+     * Producer of PDF content for {@link #write(int, Content)}
+     */
+    @FunctionalInterface
+    public interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * @return Size of the decoded PDF in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return Hex encoded SHA-256 of the PDF content, identifies identical documents
+     */
+    public String sha256() {
+        return sha256;
+    }
+
+    /**
+     * @return true if the content was spilled to a temporary file
+     */
+    public boolean isOnDisk() {
+        return file != null;
+    }
+
+    /**
+     * @return New stream over the PDF content
+     */
+    public InputStream openStream() throws IOException {
+        return file != null ? Files.newInputStream(file) : new ByteArrayInputStream(data);
+    }
+
+    /**
+     * Delete the temporary file, if any
+     */
+    @Override
+    public void close() {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PdfData[size=" + size + ", onDisk=" + isOnDisk() + "]";
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Thrown when the pdfData field is not valid Base64
+     */
+    public static class InvalidPdfDataException extends JsonMappingException {
+        public InvalidPdfDataException(JsonParser parser, Throwable cause) {
+            super(parser, "Invalid Base64 data for PDF: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Decodes the Base64 pdfData string incrementally from the parser's token stream,
+     * the encoded string is never materialized.
+     */
+    public static class Deserializer extends JsonDeserializer<PdfData> {
+        @Override
+        public PdfData deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.currentToken() != JsonToken.VALUE_STRING) {
+                return (PdfData) context.handleUnexpectedToken(PdfData.class, parser);
+            }
+            Object attribute = context.getAttribute(MEMORY_THRESHOLD_ATTRIBUTE);
+            int threshold = attribute instanceof Number number ? number.intValue() : DEFAULT_MEMORY_THRESHOLD;
+
+            SpillingOutputStream out = new SpillingOutputStream(threshold);
+            try (out) {
+                parser.readBinaryValue(context.getBase64Variant(), out);
+            } catch (IllegalArgumentException | StreamReadException e) {
+                out.discard();
+                throw new InvalidPdfDataException(parser, e);
+            } catch (IOException | RuntimeException e) {
+                out.discard();
+                throw e;
+            }
+            return out.toPdfData();
+        }
+    }
+
+    /**
+     * Buffers in memory up to a threshold and continues in a temporary file after that
+     */
+    private static final class SpillingOutputStream extends OutputStream {
+        private final int threshold;
+        private final MessageDigest digest = newDigest();
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private Path file;
+        private OutputStream fileOut;
+        private long size;
+
+        private SpillingOutputStream(int threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            if (fileOut == null && size + length > threshold) {
+                file = Files.createTempFile("curriculum-", ".pdf");
+                fileOut = Files.newOutputStream(file);
+                memory.writeTo(fileOut);
+                memory = null;
+            }
+            if (fileOut != null) {
+                fileOut.write(buffer, offset, length);
+            } else {
+                memory.write(buffer, offset, length);
+            }
+            digest.update(buffer, offset, length);
+            size += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileOut != null) {
+                fileOut.close();
+            }
+        }
+
+        private void discard() {
+            try {
+                close();
+                if (file != null) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException ignored) {
+                // Best effort cleanup, the original error is more relevant
+            }
+        }
+
+        private PdfData toPdfData() {
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            return file != null ? new PdfData(null, file, size, sha256)
+                    : new PdfData(memory.toByteArray(), null, size, sha256);
+        }
+    }
+}
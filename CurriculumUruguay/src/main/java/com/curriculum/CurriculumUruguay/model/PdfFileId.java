@@ -0,0 +1,47 @@
+package com.curriculum.CurriculumUruguay.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Telegram file_id of a PDF that was already uploaded, keyed by the SHA-256 of its content
+ */
+@Entity
+@Table(name = "pdf_file_ids")
+public class PdfFileId {
+
+    @Id
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Column(name = "file_id", nullable = false)
+    private String fileId;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    protected PdfFileId() {
+    }
+
+    public PdfFileId(String contentHash, String fileId) {
+        this.contentHash = contentHash;
+        this.fileId = fileId;
+        this.createdAt = Instant.now();
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
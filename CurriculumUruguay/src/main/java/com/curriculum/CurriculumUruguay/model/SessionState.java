@@ -0,0 +1,52 @@
+package com.curriculum.CurriculumUruguay.model;
+
+import java.time.Instant;
+
+/**
+ * Immutable snapshot of a user's CV building session
+ * @param key Conversation key, see {@link InboundMessage#conversationKey()}
+ * @param currentStep Step of the conversation, null before the first message
+ * @param lastAiStatus Status reported by the agent in its last reply
+ * @param lastPdfHash SHA-256 of the last PDF sent to the user
+ * @param lastPdfFilename Filename of the last PDF sent to the user
+ * @param updatedAt Time of the last change
+ * @param stored false while the session is known not to exist in the database yet
+ */
+public record SessionState(String key, String currentStep, String lastAiStatus, String lastPdfHash,
+                           String lastPdfFilename, Instant updatedAt, boolean stored) {
+
+    /**
+     * Steps recorded by the message pipeline
+     */
+    public static final String STEP_STARTED = "started";
+    public static final String STEP_IN_PROGRESS = "in_progress";
+    public static final String STEP_CV_DELIVERED = "cv_delivered";
+
+    /**
+     * @param key Conversation key
+     * @param stored Whether a row may already exist in the database
+     * @return A session without any state
+     */
+    public static SessionState empty(String key, boolean stored) {
+        return new SessionState(key, null, null, null, null, null, stored);
+    }
+
+    public SessionState withStep(String step) {
+        return new SessionState(key, step, lastAiStatus, lastPdfHash, lastPdfFilename, Instant.now(), stored);
+    }
+
+    public SessionState withAiStatus(String status) {
+        return new SessionState(key, currentStep, status, lastPdfHash, lastPdfFilename, Instant.now(), stored);
+    }
+
+    public SessionState withPdf(String hash, String filename) {
+        return new SessionState(key, currentStep, lastAiStatus, hash, filename, Instant.now(), stored);
+    }
+
+    /**
+     * @return The same state marked as present in the database
+     */
+    public SessionState asStored() {
+        return stored ? this : new SessionState(key, currentStep, lastAiStatus, lastPdfHash, lastPdfFilename, updatedAt, true);
+    }
+}
@@ -0,0 +1,48 @@
+package com.curriculum.CurriculumUruguay.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Highest update id received from a source, shared by the instances of the bot so
+ * updates delivered again after a restart are recognized as duplicates
+ */
+@Entity
+@Table(name = "update_watermarks")
+public class UpdateWatermark {
+
+    @Id
+    @Column(name = "source", length = 64)
+    private String source;
+
+    @Column(name = "last_update_id", nullable = false)
+    private long lastUpdateId;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    protected UpdateWatermark() {
+    }
+
+    public UpdateWatermark(String source, long lastUpdateId) {
+        this.source = source;
+        this.lastUpdateId = lastUpdateId;
+        this.updatedAt = Instant.now();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public long getLastUpdateId() {
+        return lastUpdateId;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+}
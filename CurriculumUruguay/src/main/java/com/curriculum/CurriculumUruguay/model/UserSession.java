@@ -0,0 +1,96 @@
+package com.curriculum.CurriculumUruguay.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+
+/**
+ * Persisted CV building session of a user, keyed by its conversation key.
+ * Sessions known to be new are inserted without looking them up first.
+ */
+@Entity
+@Table(name = "user_sessions")
+public class UserSession implements Persistable<String> {
+
+    @Id
+    @Column(name = "session_key", length = 128)
+    private String sessionKey;
+
+    @Column(name = "current_step", length = 32)
+    private String currentStep;
+
+    @Column(name = "last_ai_status", length = 64)
+    private String lastAiStatus;
+
+    @Column(name = "last_pdf_hash", length = 64)
+    private String lastPdfHash;
+
+    @Column(name = "last_pdf_filename")
+    private String lastPdfFilename;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    @Transient
+    private boolean stored = true;
+
+    protected UserSession() {
+    }
+
+    public UserSession(SessionState state) {
+        this.sessionKey = state.key();
+        this.currentStep = state.currentStep();
+        this.lastAiStatus = state.lastAiStatus();
+        this.lastPdfHash = state.lastPdfHash();
+        this.lastPdfFilename = state.lastPdfFilename();
+        this.updatedAt = state.updatedAt() != null ? state.updatedAt() : Instant.now();
+        this.stored = state.stored();
+    }
+
+    public SessionState toState() {
+        return new SessionState(sessionKey, currentStep, lastAiStatus, lastPdfHash, lastPdfFilename, updatedAt, true);
+    }
+
+    @Override
+    public String getId() {
+        return sessionKey;
+    }
+
+    @Override
+    public boolean isNew() {
+        return !stored;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markStored() {
+        this.stored = true;
+    }
+
+    public String getCurrentStep() {
+        return currentStep;
+    }
+
+    public String getLastAiStatus() {
+        return lastAiStatus;
+    }
+
+    public String getLastPdfHash() {
+        return lastPdfHash;
+    }
+
+    public String getLastPdfFilename() {
+        return lastPdfFilename;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+}
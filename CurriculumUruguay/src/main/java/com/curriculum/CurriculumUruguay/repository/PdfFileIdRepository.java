@@ -0,0 +1,7 @@
+package com.curriculum.CurriculumUruguay.repository;
+
+import com.curriculum.CurriculumUruguay.model.PdfFileId;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface PdfFileIdRepository extends JpaRepository<PdfFileId, String> {
+}
@@ -0,0 +1,23 @@
+package com.curriculum.CurriculumUruguay.repository;
+
+import com.curriculum.CurriculumUruguay.model.UpdateWatermark;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+public interface UpdateWatermarkRepository extends JpaRepository<UpdateWatermark, String> {
+
+    /**
+     * Move the watermark forward, never backwards, so instances can share it
+     * @return Number of rows updated, 0 if the watermark doesn't exist or is already higher
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE UpdateWatermark w SET w.lastUpdateId = :updateId, w.updatedAt = :now "
+            + "WHERE w.source = :source AND w.lastUpdateId < :updateId")
+    int advance(@Param("source") String source, @Param("updateId") long updateId, @Param("now") Instant now);
+}
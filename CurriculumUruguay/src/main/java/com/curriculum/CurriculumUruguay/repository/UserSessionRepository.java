@@ -0,0 +1,7 @@
+package com.curriculum.CurriculumUruguay.repository;
+
+import com.curriculum.CurriculumUruguay.model.UserSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface UserSessionRepository extends JpaRepository<UserSession, String> {
+}
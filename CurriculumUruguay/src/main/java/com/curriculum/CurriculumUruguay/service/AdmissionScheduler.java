@@ -0,0 +1,272 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.AiReply;
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.util.AimdLimit;
+import com.curriculum.CurriculumUruguay.util.WeightedFairQueue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Admission control for the calls to the AI agent. Each call is given a cost class
+ * from its message type and the conversation's last agent status: a text, a photo
+ * that is downloaded and uploaded to /image, or a text answered with a generated
+ * PDF. Calls beyond the concurrency limit wait in one queue per class, served by
+ * weighted fair queueing on the measured cost of each class, so a text isn't
+ * stuck behind a backlog of photos and PDFs.
+ * <p>
+ * The limit isn't fixed: it grows while the agent answers each class about as
+ * fast as it does unloaded and shrinks as soon as its latency rises, calls fail
+ * or the bulkhead rejects them, so the calls the agent can't take yet wait here,
+ * where texts can overtake, instead of in the agent's own queue.
+ */
+@Service
+public class AdmissionScheduler {
+
+    public enum CostClass {
+        TEXT, PHOTO, PDF;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    // Cost of a class until its latency has been measured
+    private static final long[] INITIAL_COST_NANOS = {
+            TimeUnit.SECONDS.toNanos(2), TimeUnit.SECONDS.toNanos(8), TimeUnit.SECONDS.toNanos(15)
+    };
+    // Weight of the latest sample in the short term latency of a class
+    private static final double LATENCY_SMOOTHING = 0.2;
+    // Growth of the baseline latency per sample, so it follows an agent that became slower for good
+    private static final double BASELINE_DRIFT = 1.001;
+
+    private final boolean enabled;
+    private final Set<String> pdfStatuses;
+    private final int maxQueued;
+    private final double latencyTolerance;
+    private final LongSupplier clock;
+
+    private final AimdLimit limit;
+    private final WeightedFairQueue<Job> queue;
+    private final ClassStats[] stats = new ClassStats[CostClass.values().length];
+    private int inFlight;
+
+    @Autowired
+    public AdmissionScheduler(@Value("${bot.scheduler.enabled:false}") boolean enabled,
+                              @Value("${bot.scheduler.initial-limit:10}") int initialLimit,
+                              @Value("${bot.scheduler.min-limit:2}") int minLimit,
+                              @Value("${bot.scheduler.max-limit:40}") int maxLimit,
+                              @Value("${bot.scheduler.backoff-ratio:0.9}") double backoffRatio,
+                              @Value("${bot.scheduler.latency-tolerance:1.5}") double latencyTolerance,
+                              @Value("${bot.scheduler.max-queued:1000}") int maxQueued,
+                              @Value("${bot.scheduler.weight.text:4}") double textWeight,
+                              @Value("${bot.scheduler.weight.photo:1}") double photoWeight,
+                              @Value("${bot.scheduler.weight.pdf:1}") double pdfWeight,
+                              @Value("${bot.scheduler.pdf-statuses:completed}") String[] pdfStatuses,
+                              MeterRegistry meterRegistry) {
+        this(enabled, new AimdLimit(initialLimit, minLimit, maxLimit, backoffRatio), latencyTolerance, maxQueued,
+                new double[] {textWeight, photoWeight, pdfWeight}, Set.of(pdfStatuses), meterRegistry, System::nanoTime);
+    }
+
+    /**
+     * @param clock Source of the current time in nanoseconds, simulations pass a virtual clock
+     */
+    AdmissionScheduler(boolean enabled, AimdLimit limit, double latencyTolerance, int maxQueued, double[] weights,
+                       Set<String> pdfStatuses, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.enabled = enabled;
+        this.limit = limit;
+        this.latencyTolerance = latencyTolerance;
+        this.maxQueued = maxQueued;
+        this.pdfStatuses = pdfStatuses;
+        this.clock = clock;
+        this.queue = new WeightedFairQueue<>(weights);
+
+        for (CostClass costClass : CostClass.values()) {
+            stats[costClass.ordinal()] = new ClassStats(costClass, meterRegistry);
+        }
+        Gauge.builder("bot.scheduler.limit", limit, AimdLimit::get)
+                .description("Calls to the AI agent allowed in flight at once")
+                .register(meterRegistry);
+        Gauge.builder("bot.scheduler.in-flight", this, AdmissionScheduler::getInFlight)
+                .description("Calls to the AI agent in flight")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param message Message about to be sent to the agent
+     * @param lastAiStatus Status of the agent's last reply in the conversation, null if none
+     * @return Cost class of the agent call for the message
+     */
+    public CostClass classify(InboundMessage message, String lastAiStatus) {
+        if ("photo".equals(message.type())) {
+            return CostClass.PHOTO;
+        }
+        // After these statuses the agent's next answer usually carries a PDF it generated
+        return lastAiStatus != null && pdfStatuses.contains(lastAiStatus) ? CostClass.PDF : CostClass.TEXT;
+    }
+
+    /**
+     * Start a call to the agent now if the limit allows it, otherwise once it is
+     * its turn. Calls are started on the thread completing an earlier call and must
+     * not block.
+     * @param costClass Class of the call
+     * @param call Starts the call
+     * @return Future completed with the agent reply, or {@link AiResilience#TRY_LATER_REPLY}
+     * when too many calls are waiting
+     */
+    public CompletableFuture<AiReply> submit(CostClass costClass, Supplier<CompletableFuture<AiReply>> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        ClassStats classStats = stats[costClass.ordinal()];
+        Job job = new Job(classStats, call, clock.getAsLong());
+        synchronized (this) {
+            if (queue.isEmpty() && inFlight < limit.get()) {
+                job.inFlight = ++inFlight;
+            } else if (queue.size() >= maxQueued) {
+                classStats.rejected.increment();
+                return CompletableFuture.completedFuture(AiResilience.TRY_LATER_REPLY);
+            } else {
+                queue.add(costClass.ordinal(), job, classStats.cost());
+                return job.result;
+            }
+        }
+        start(job);
+        return job.result;
+    }
+
+    private void start(Job job) {
+        job.startedAt = clock.getAsLong();
+        job.stats.waitTimer.record(job.startedAt - job.submittedAt, TimeUnit.NANOSECONDS);
+        CompletableFuture<AiReply> call;
+        try {
+            call = job.call.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((reply, error) -> {
+            complete(job, reply, error);
+            if (error != null) {
+                job.result.completeExceptionally(error);
+            } else {
+                job.result.complete(reply);
+            }
+        });
+    }
+
+    private void complete(Job job, AiReply reply, Throwable error) {
+        long now = clock.getAsLong();
+        List<Job> next = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            // A rejected or failed call says the agent has no room, its latency says nothing:
+            // only replies feed the latency, an instant refusal would lower the baseline
+            boolean refused = error != null || reply == AiResilience.TRY_LATER_REPLY;
+            boolean congested = refused || job.stats.record(now - job.startedAt, latencyTolerance);
+            limit.onSample(job.startedAt, now, congested, job.inFlight);
+            while (inFlight < limit.get() && !queue.isEmpty()) {
+                Job queued = queue.poll();
+                queued.inFlight = ++inFlight;
+                next.add(queued);
+            }
+        }
+        next.forEach(this::start);
+    }
+
+    /**
+     * @return Calls to the agent in flight
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return Calls waiting for their turn
+     */
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * @return Current concurrency limit
+     */
+    public int getLimit() {
+        return limit.get();
+    }
+
+    private static final class Job {
+        private final ClassStats stats;
+        private final Supplier<CompletableFuture<AiReply>> call;
+        private final long submittedAt;
+        private final CompletableFuture<AiReply> result = new CompletableFuture<>();
+        private long startedAt;
+        private int inFlight;
+
+        private Job(ClassStats stats, Supplier<CompletableFuture<AiReply>> call, long submittedAt) {
+            this.stats = stats;
+            this.call = call;
+            this.submittedAt = submittedAt;
+        }
+    }
+
+    /**
+     * Latency of the calls of one class, guarded by the scheduler's lock. Each class
+     * is compared with its own baseline, a PDF taking longer than a text isn't congestion.
+     */
+    private final class ClassStats {
+        private final Timer waitTimer;
+        private final Counter rejected;
+        private final CostClass costClass;
+        private double latency;
+        private double baseline;
+
+        private ClassStats(CostClass costClass, MeterRegistry meterRegistry) {
+            this.costClass = costClass;
+            this.waitTimer = Timer.builder("bot.scheduler.wait")
+                    .description("Time calls to the AI agent waited for their turn")
+                    .tag("class", costClass.tag)
+                    .register(meterRegistry);
+            this.rejected = Counter.builder("bot.scheduler.rejected")
+                    .description("Calls to the AI agent rejected because too many were waiting")
+                    .tag("class", costClass.tag)
+                    .register(meterRegistry);
+            Gauge.builder("bot.scheduler.queued", AdmissionScheduler.this, scheduler -> scheduler.queuedOf(costClass))
+                    .description("Calls to the AI agent waiting for their turn")
+                    .tag("class", costClass.tag)
+                    .register(meterRegistry);
+        }
+
+        /**
+         * @return true if the short term latency exceeds the baseline by more than the tolerance
+         */
+        boolean record(long latencyNanos, double tolerance) {
+            latency = latency == 0 ? latencyNanos : latency + LATENCY_SMOOTHING * (latencyNanos - latency);
+            baseline = baseline == 0 ? latency : Math.min(baseline * BASELINE_DRIFT, latency);
+            return latency > tolerance * baseline;
+        }
+
+        double cost() {
+            return latency == 0 ? INITIAL_COST_NANOS[costClass.ordinal()] : latency;
+        }
+    }
+
+    private synchronized int queuedOf(CostClass costClass) {
+        return queue.size(costClass.ordinal());
+    }
+}
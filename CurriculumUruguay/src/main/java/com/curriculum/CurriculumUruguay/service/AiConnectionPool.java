@@ -0,0 +1,169 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounds the connections the AI client uses, like a pooled connection manager: a call
+ * leases a connection of its route (scheme, host and port) before it is sent and
+ * returns it once the response body has been read. Over HTTP/1.1 a lease is one
+ * kept-alive socket, over HTTP/2 one stream of the shared connection. Calls beyond
+ * the per-route or total limit wait in arrival order, at most the connection request
+ * timeout. Leased, pending and available connections are exposed as bot.ai.pool.* gauges.
+ */
+@Component
+public class AiConnectionPool {
+
+    private final int maxTotal;
+    private final int maxPerRoute;
+    private final long requestTimeoutMillis;
+
+    // Guarded by this
+    private final Map<String, Integer> leasedPerRoute = new HashMap<>();
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private int leased;
+
+    public AiConnectionPool(@Value("${ai.service.pool.max-total:50}") int maxTotal,
+                            @Value("${ai.service.pool.max-per-route:20}") int maxPerRoute,
+                            @Value("${ai.service.connection-request-timeout:10s}") Duration requestTimeout,
+                            MeterRegistry meterRegistry) {
+        if (maxTotal < 1 || maxPerRoute < 1) {
+            throw new IllegalArgumentException("ai.service.pool limits must be positive");
+        }
+        this.maxTotal = maxTotal;
+        this.maxPerRoute = maxPerRoute;
+        this.requestTimeoutMillis = requestTimeout.toMillis();
+
+        Gauge.builder("bot.ai.pool.leased", this, AiConnectionPool::getLeased)
+                .description("Connections to the AI agent in use by a call")
+                .register(meterRegistry);
+        Gauge.builder("bot.ai.pool.pending", this, AiConnectionPool::getPending)
+                .description("Calls to the AI agent waiting for a connection")
+                .register(meterRegistry);
+        Gauge.builder("bot.ai.pool.available", this, AiConnectionPool::getAvailable)
+                .description("Connections to the AI agent that can still be leased")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Lease a connection of the route of a URI without blocking the caller
+     * @return Future completed with the lease once a connection is free, or failed
+     * with {@link PoolTimeoutException} when none was free within the timeout
+     */
+    public CompletableFuture<Lease> acquire(URI uri) {
+        String route = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+        Waiter waiter;
+        synchronized (this) {
+            if (waiters.isEmpty() && hasCapacity(route)) {
+                return CompletableFuture.completedFuture(lease(route));
+            }
+            waiter = new Waiter(route);
+            waiters.addLast(waiter);
+        }
+        CompletableFuture.delayedExecutor(requestTimeoutMillis, TimeUnit.MILLISECONDS).execute(() -> {
+            boolean waiting;
+            synchronized (this) {
+                waiting = waiters.remove(waiter);
+            }
+            if (waiting) {
+                waiter.future.completeExceptionally(new PoolTimeoutException(route, requestTimeoutMillis));
+            }
+        });
+        return waiter.future;
+    }
+
+    private boolean hasCapacity(String route) {
+        return leased < maxTotal && leasedPerRoute.getOrDefault(route, 0) < maxPerRoute;
+    }
+
+    private Lease lease(String route) {
+        leased++;
+        leasedPerRoute.merge(route, 1, Integer::sum);
+        return new Lease(route);
+    }
+
+    private void release(String route) {
+        Waiter next = null;
+        Lease handedOver = null;
+        synchronized (this) {
+            leased--;
+            leasedPerRoute.merge(route, -1, (a, b) -> a + b == 0 ? null : a + b);
+            // The oldest waiter whose route has room gets the connection
+            for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+                Waiter waiter = it.next();
+                if (hasCapacity(waiter.route)) {
+                    it.remove();
+                    next = waiter;
+                    handedOver = lease(waiter.route);
+                    break;
+                }
+            }
+        }
+        // Completed outside the lock, the caller sends its request from here.
+        // A waiter cancelled meanwhile gives the connection back
+        if (next != null && !next.future.complete(handedOver)) {
+            handedOver.release();
+        }
+    }
+
+    public synchronized int getLeased() {
+        return leased;
+    }
+
+    public synchronized int getPending() {
+        return waiters.size();
+    }
+
+    public synchronized int getAvailable() {
+        return maxTotal - leased;
+    }
+
+    /**
+     * A leased connection, released once
+     */
+    public final class Lease {
+        private final String route;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(String route) {
+            this.route = route;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                AiConnectionPool.this.release(route);
+            }
+        }
+    }
+
+    private static final class Waiter {
+        private final String route;
+        private final CompletableFuture<Lease> future = new CompletableFuture<>();
+
+        private Waiter(String route) {
+            this.route = route;
+        }
+    }
+
+    /**
+     * No connection to the agent became free within the connection request timeout
+     */
+    public static class PoolTimeoutException extends RuntimeException {
+        public PoolTimeoutException(String route, long timeoutMillis) {
+            super("No connection to " + route + " free within " + timeoutMillis + " ms");
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.AiReply;
+import com.curriculum.CurriculumUruguay.util.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Protects the bot from a slow or failing AI agent. Each endpoint has its own
+ * circuit breaker and bulkhead; when either rejects a call the user immediately
+ * gets a "try later" reply instead of waiting for a timeout. Calls that failed
+ * before the agent could process them are retried with jittered exponential
+ * backoff, and /text calls can optionally be hedged with a second request when
+ * the first one is slow.
+ */
+@Component
+public class AiResilience {
+    private static final Logger logger = LoggerFactory.getLogger(AiResilience.class);
+
+    /**
+     * Reply sent while the agent is unavailable, shared so rejecting a call costs nothing
+     */
+    public static final AiReply TRY_LATER_REPLY = new AiReply(
+            "El asistente no está disponible en este momento. Por favor intenta nuevamente en unos minutos.",
+            "unavailable", null, null);
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final Duration openDuration;
+    private final int maxConcurrent;
+    private final int maxAttempts;
+    private final Duration retryBaseDelay;
+    private final Duration retryMaxDelay;
+    private final boolean hedgeEnabled;
+    private final Duration hedgeDelay;
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    public AiResilience(@Value("${ai.service.circuit-breaker.window-size:20}") int windowSize,
+                        @Value("${ai.service.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                        @Value("${ai.service.circuit-breaker.failure-rate:0.5}") double failureRateThreshold,
+                        @Value("${ai.service.circuit-breaker.open-duration:30s}") Duration openDuration,
+                        @Value("${ai.service.bulkhead.max-concurrent:20}") int maxConcurrent,
+                        @Value("${ai.service.retry.max-attempts:3}") int maxAttempts,
+                        @Value("${ai.service.retry.base-delay:200ms}") Duration retryBaseDelay,
+                        @Value("${ai.service.retry.max-delay:2s}") Duration retryMaxDelay,
+                        @Value("${ai.service.hedge.enabled:false}") boolean hedgeEnabled,
+                        @Value("${ai.service.hedge.delay:3s}") Duration hedgeDelay,
+                        MeterRegistry meterRegistry) {
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDuration = openDuration;
+        this.maxConcurrent = maxConcurrent;
+        this.maxAttempts = maxAttempts;
+        this.retryBaseDelay = retryBaseDelay;
+        this.retryMaxDelay = retryMaxDelay;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgeDelay = hedgeDelay;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Run an asynchronous call to the agent
+     * @param endpoint Agent endpoint, each one has its own breaker and bulkhead
+     * @param hedge true if the call is safe to send twice
+     * @param attempt Starts one attempt, called again for retries and hedged requests
+     * @return Future completed with the agent reply, or {@link #TRY_LATER_REPLY} when the call was rejected
+     */
+    public CompletableFuture<AiReply> execute(String endpoint, boolean hedge, Supplier<CompletableFuture<AiReply>> attempt) {
+        Endpoint ep = endpoint(endpoint);
+        if (!acquire(ep)) {
+            return CompletableFuture.completedFuture(TRY_LATER_REPLY);
+        }
+        return withRetry(ep, () -> hedge && hedgeEnabled ? hedged(ep, attempt) : attempt.get(), 1)
+                .whenComplete((reply, error) -> release(ep, error));
+    }
+
+    /**
+     * @return State of the breaker of an endpoint
+     */
+    public CircuitBreaker.State getState(String endpoint) {
+        return endpoint(endpoint).breaker.getState();
+    }
+
+    private boolean acquire(Endpoint ep) {
+        if (!ep.bulkhead.tryAcquire()) {
+            ep.count("bulkhead_rejected");
+            logger.warn("AI /{} bulkhead full, answering without calling the agent", ep.name);
+            return false;
+        }
+        if (!ep.breaker.tryAcquire()) {
+            ep.bulkhead.release();
+            ep.count("short_circuited");
+            logger.warn("AI /{} circuit open, answering without calling the agent", ep.name);
+            return false;
+        }
+        return true;
+    }
+
+    private void release(Endpoint ep, Throwable error) {
+        ep.bulkhead.release();
+        if (error != null && isAgentFailure(unwrap(error))) {
+            ep.breaker.onFailure();
+        } else {
+            ep.breaker.onSuccess();
+        }
+    }
+
+    private CompletableFuture<AiReply> withRetry(Endpoint ep, Supplier<CompletableFuture<AiReply>> attempt, int attemptNumber) {
+        CompletableFuture<AiReply> call;
+        try {
+            call = attempt.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        return call.handle((reply, error) -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(reply);
+            }
+            if (attemptNumber >= maxAttempts || !isRetryable(unwrap(error))) {
+                return CompletableFuture.<AiReply>failedFuture(unwrap(error));
+            }
+            long delay = backoffMillis(attemptNumber);
+            ep.count("retry");
+            logger.warn("AI /{} attempt {} failed ({}), retrying in {} ms", ep.name, attemptNumber, unwrap(error).getMessage(), delay);
+            return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> withRetry(ep, attempt, attemptNumber + 1));
+        }).thenCompose(future -> future);
+    }
+
+    /**
+     * Full jitter: a random delay up to the exponential backoff, so retries of many
+     * users don't hit a recovering agent at the same moment
+     */
+    private long backoffMillis(int attemptNumber) {
+        long cap = Math.min(retryMaxDelay.toMillis(), retryBaseDelay.toMillis() << Math.min(attemptNumber - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * Send a second request if the first one hasn't answered within the hedge delay,
+     * the first successful reply wins and the other one is discarded
+     */
+    private CompletableFuture<AiReply> hedged(Endpoint ep, Supplier<CompletableFuture<AiReply>> attempt) {
+        CompletableFuture<AiReply> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        race(attempt.get(), result, pending);
+        CompletableFuture.delayedExecutor(hedgeDelay.toMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+            // Only hedge while the first request is still running
+            if (!result.isDone() && pending.getAndUpdate(n -> n == 0 ? 0 : n + 1) > 0) {
+                ep.count("hedge");
+                logger.info("AI /{} slower than {} ms, sending hedged request", ep.name, hedgeDelay.toMillis());
+                try {
+                    race(attempt.get(), result, pending);
+                } catch (RuntimeException e) {
+                    race(CompletableFuture.failedFuture(e), result, pending);
+                }
+            }
+        });
+        return result;
+    }
+
+    private static void race(CompletableFuture<AiReply> call, CompletableFuture<AiReply> result, AtomicInteger pending) {
+        call.whenComplete((reply, error) -> {
+            if (error == null) {
+                if (!result.complete(reply) && reply != null && reply.pdfData() != null) {
+                    // The losing reply is dropped, release its PDF
+                    reply.pdfData().close();
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
+            }
+        });
+    }
+
+    /**
+     * Failures where the agent never received the request, so sending it again is safe:
+     * the connection was never established, or the agent refused the request with 503 and
+     * a Retry-After. A 502 or 504 comes from a proxy that may have passed the request on.
+     */
+    private static boolean isRetryable(Throwable error) {
+        if (error instanceof ConnectException || error instanceof HttpConnectTimeoutException) {
+            return true;
+        }
+        return error instanceof AiService.AiStatusException statusError
+                && statusError.getStatusCode() == 503 && statusError.hasRetryAfter();
+    }
+
+    /**
+     * Failures that say the agent is unhealthy, as opposed to a bad request or reply
+     */
+    private static boolean isAgentFailure(Throwable error) {
+        if (error instanceof AiService.AiStatusException statusError) {
+            return statusError.getStatusCode() >= 500;
+        }
+        // Includes connect and response timeouts of the async client
+        return error instanceof IOException;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause.getClass() == RuntimeException.class
+                || cause instanceof UncheckedIOException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private Endpoint endpoint(String name) {
+        return endpoints.computeIfAbsent(name, Endpoint::new);
+    }
+
+    private final class Endpoint {
+        private final String name;
+        private final CircuitBreaker breaker;
+        private final Semaphore bulkhead;
+
+        private Endpoint(String name) {
+            this.name = name;
+            this.breaker = new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold,
+                    openDuration.toNanos(), System::nanoTime);
+            this.bulkhead = new Semaphore(maxConcurrent);
+            Gauge.builder("bot.ai.circuit.state", breaker, b -> b.getState().ordinal())
+                    .description("Circuit breaker state of an AI endpoint: 0 closed, 1 open, 2 half open")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            Gauge.builder("bot.ai.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                    .description("Free concurrent call slots of an AI endpoint")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+        }
+
+        private void count(String event) {
+            Counter.builder("bot.ai.resilience")
+                    .description("Calls to the AI agent rejected, retried or hedged")
+                    .tag("endpoint", name)
+                    .tag("event", event)
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+}
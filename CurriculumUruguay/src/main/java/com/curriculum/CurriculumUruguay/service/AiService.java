@@ -3,156 +3,298 @@ package com.curriculum.CurriculumUruguay.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.filter.FilteringParserDelegate;
+import com.fasterxml.jackson.core.filter.JsonPointerBasedFilter;
+import com.fasterxml.jackson.core.filter.TokenFilter;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
+import com.curriculum.CurriculumUruguay.model.AiReply;
+import com.curriculum.CurriculumUruguay.model.PdfData;
+import com.curriculum.CurriculumUruguay.util.MultipartBody;
+
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.Base64;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 
 @Service
 public class AiService {
     private static final Logger logger = LoggerFactory.getLogger(AiService.class);
 
+    /**
+     * Request header asking the agent for the curriculum as structured data in a
+     * "cv" object instead of a Base64 PDF, sent when bot.pdf.render.enabled is set
+     */
+    public static final String CV_FORMAT_HEADER = "X-Cv-Format";
+
+    private static final AiReply EMPTY_REPLY = new AiReply(null, null, null, null);
+
+    private static final TokenFilter MESSAGE_FILTER = new JsonPointerBasedFilter("/message");
+
     @Value("${ai.service.url}")
     private String agentUrl;
 
-    private final RestTemplate restTemplate;
+    @Value("${ai.service.response-timeout:120s}")
+    private Duration responseTimeout;
+
+    @Value("${ai.service.read-timeout:120s}")
+    private Duration readTimeout;
+
+    @Value("${bot.pdf.render.enabled:false}")
+    private boolean renderPdfLocally;
+
+    private final HttpClient asyncHttpClient;
 
-    public AiService(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
+    private final AiConnectionPool connectionPool;
+
+    private final ObjectMapper objectMapper;
+
+    private final ObjectReader replyReader;
+
+    private final Executor responseExecutor;
+
+    private final PipelineMetrics pipelineMetrics;
+
+    private final PayloadLogSampler payloadLogSampler;
+
+    private final AiResilience resilience;
+
+    public AiService(HttpClient aiAsyncHttpClient, AiConnectionPool connectionPool, ObjectMapper objectMapper,
+                     ExecutorService aiResponseExecutor, PipelineMetrics pipelineMetrics,
+                     PayloadLogSampler payloadLogSampler, AiResilience resilience,
+                     @Value("${bot.pdf.memory-threshold-bytes:262144}") int pdfMemoryThreshold) {
+        this.asyncHttpClient = aiAsyncHttpClient;
+        this.connectionPool = connectionPool;
+        this.objectMapper = objectMapper;
+        this.responseExecutor = aiResponseExecutor;
+        this.pipelineMetrics = pipelineMetrics;
+        this.payloadLogSampler = payloadLogSampler;
+        this.resilience = resilience;
+        // Shared, thread-safe reader of the nested "message" object, PDFs larger than
+        // the threshold are decoded to a temporary file
+        this.replyReader = objectMapper.readerFor(AiReply.class)
+                .withAttribute(PdfData.MEMORY_THRESHOLD_ATTRIBUTE, pdfMemoryThreshold);
     }
 
     /**
-     * Send text message to AI service
+     * Send text message to AI service without blocking the calling thread
      * @param from User identifier
      * @param userMessage Text message from user
-     * @return Response from AI service
+     * @return Future completed with the response from AI service
      */
-    public Map<String, Object> sendTextToAi(String from, String userMessage) {
-        logger.info("---------- sendTextToAi ---------- input from: {}, message: {}", from, userMessage);
-        
+    public CompletableFuture<AiReply> sendTextToAiAsync(String from, String userMessage) {
+        logger.info("---------- sendTextToAiAsync ---------- input from: {}", from);
+
         Map<String, String> requestData = new HashMap<>();
         requestData.put("from", from);
         requestData.put("userMessage", userMessage);
-        
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        
-        HttpEntity<Map<String, String>> requestEntity = new HttpEntity<>(requestData, headers);
-        
-        try {
-            // First, make the request and get the raw response entity without type conversion
-            ResponseEntity<byte[]> response = restTemplate.exchange(
-                agentUrl + "/text",
-                HttpMethod.POST,
-                requestEntity,
-                byte[].class
-            );
-
-            // Create a response map to return
-            Map<String, Object> responseMap = new HashMap<>();
-
-            // Handle JSON response - parse the byte array back to a Map
-            try {
-                String jsonString = new String(response.getBody());
-                ObjectMapper mapper = new ObjectMapper();
-                responseMap = mapper.readValue(jsonString, new TypeReference<Map<String, Object>>() {});
-            } catch (IOException e) {
-                logger.error("Error parsing JSON response: {}", e.getMessage(), e);
-                responseMap.put("message", "Error parsing JSON response");
-            }
-
-            logger.info("---------- sendTextToAi ---------- responseMap: {}", responseMap);
 
-            // Extract nested "message" map
-            Map<String, Object> messageMap = (Map<String, Object>) responseMap.get("message");
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(requestData);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new RuntimeException("Error sending text to AI", e));
+        }
 
-            String messageText = (String) messageMap.get("message");
-            String status = (String) messageMap.get("status");
-            String pdfFilename = (String) messageMap.get("pdfFilename");
+        HttpRequest request = newRequest("/text")
+                .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json))
+                .build();
+        // The agent answers the same text the same way, so a slow call can be hedged
+        return resilience.execute("text", true, () -> sendAsync(request, "text", "text"));
+    }
 
-            logger.info("---------- sendTextToAi ---------- status: {}", status);
-            logger.info("---------- sendTextToAi ---------- pdfFilename: {}", pdfFilename);
-            logger.info("---------- sendTextToAi ---------- messageText: {}", messageText);
-            return responseMap;
-        } catch (Exception e) {
-            logger.error("Error sending text to AI: {}", e.getMessage(), e);
-            throw new RuntimeException("Error sending text to AI", e);
+    /**
+     * Send image to AI service without blocking the calling thread
+     * @param from User identifier
+     * @param userMessage Optional caption or message
+     * @param imageData Image data
+     * @return Future completed with the response from AI service
+     */
+    public CompletableFuture<AiReply> sendImageToAiAsync(String from, String userMessage, byte[] imageData) {
+        if (imageData == null || imageData.length == 0) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Image data is empty or null"));
         }
+        return sendImageToAiAsync(from, userMessage, () -> new ByteArrayInputStream(imageData));
     }
 
     /**
-     * Send image to AI service
+     * Send image to AI service streaming its content into the multipart body,
+     * the image is never held in memory as a whole
      * @param from User identifier
      * @param userMessage Optional caption or message
-     * @param imageData Image data
-     * @return Response from AI service
+     * @param imageStream Opens the image content when the request body is written
+     * @return Future completed with the response from AI service
+     */
+    public CompletableFuture<AiReply> sendImageToAiAsync(String from, String userMessage,
+                                                                     Supplier<? extends InputStream> imageStream) {
+        return sendImageToAiAsync(from, userMessage, "image.jpg", MediaType.IMAGE_JPEG_VALUE, imageStream);
+    }
+
+    /**
+     * Send image to AI service streaming its content into the multipart body
+     * @param from User identifier
+     * @param userMessage Optional caption or message
+     * @param filename Filename of the image part
+     * @param contentType Content type of the image part
+     * @param imageStream Opens the image content when the request body is written
+     * @return Future completed with the response from AI service
+     */
+    public CompletableFuture<AiReply> sendImageToAiAsync(String from, String userMessage, String filename,
+                                                         String contentType, Supplier<? extends InputStream> imageStream) {
+        logger.info("---------- sendImageToAiAsync ---------- input from: {}", from);
+
+        MultipartBody body = new MultipartBody()
+                .addField("from", from)
+                .addField("userMessage", userMessage != null && !userMessage.isEmpty() ? userMessage : "This is the profile image")
+                .addFile("image", filename, contentType, imageStream);
+
+        HttpRequest request = newRequest("/image")
+                .header("Content-Type", body.getContentType())
+                .POST(body.build())
+                .build();
+        return resilience.execute("image", false, () -> sendAsync(request, "image", "photo"));
+    }
+
+    private HttpRequest.Builder newRequest(String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(agentUrl + path))
+                .timeout(responseTimeout)
+                .header("Accept", MediaType.APPLICATION_JSON_VALUE)
+                .header("Accept-Encoding", "gzip");
+        return renderPdfLocally ? builder.header(CV_FORMAT_HEADER, "json") : builder;
+    }
+
+    /**
+     * Send a request and decode the reply while the body streams in. Decoding blocks
+     * on the body stream so it runs on the response executor, not on the caller.
+     * The call holds a connection of the pool until its body has been read, a body
+     * still streaming after the read timeout is closed and the call fails.
+     * The call is timed as stage "ai.text" or "ai.image" until the response headers arrive
+     * and the streamed decode, including any PDF, as stage "decode".
      */
-    public Map<String, Object> sendImageToAi(String from, String userMessage, byte[] imageData) {
-        logger.info("---------- sendImageToAi ---------- input from: {}, message: {}", from, userMessage);
-        
-        // Log image data presence and size
-        if (imageData == null) {
-            logger.error("Image data is null");
-        } else {
-            logger.info("Image data is present, size: {} bytes", imageData.length);
+    private CompletableFuture<AiReply> sendAsync(HttpRequest request, String endpoint, String eventType) {
+        return connectionPool.acquire(request.uri())
+                .thenCompose(lease -> {
+                    CompletableFuture<AiReply> reply;
+                    try {
+                        reply = exchange(request, endpoint, eventType);
+                    } catch (RuntimeException e) {
+                        reply = CompletableFuture.failedFuture(e);
+                    }
+                    return reply.whenComplete((ignored, error) -> lease.release());
+                })
+                .whenComplete((reply, error) -> {
+                    if (error != null) {
+                        logger.error("Error sending {} to AI: {}", endpoint, error.getMessage());
+                    } else if (payloadLogSampler.shouldLog(logger)) {
+                        logger.debug("---------- {} ---------- Response: {}", endpoint, reply);
+                    }
+                });
+    }
+
+    private CompletableFuture<AiReply> exchange(HttpRequest request, String endpoint, String eventType) {
+        CompletableFuture<HttpResponse<InputStream>> call = pipelineMetrics.time("ai." + endpoint, eventType,
+                asyncHttpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()));
+        return call.thenApplyAsync(response -> {
+            try (InputStream body = response.body()) {
+                if (response.statusCode() >= 400) {
+                    throw new AiStatusException(endpoint, response.statusCode(),
+                            response.headers().firstValue("Retry-After").isPresent());
+                }
+                // Closing the stream wakes up the decoder blocked on a stalled body
+                CompletableFuture<Void> readDeadline = CompletableFuture.runAsync(() -> closeQuietly(body),
+                        CompletableFuture.delayedExecutor(readTimeout.toMillis(), TimeUnit.MILLISECONDS));
+                try {
+                    return pipelineMetrics.time("decode", eventType, () -> {
+                        try {
+                            return readReply(isGzip(response) ? new GZIPInputStream(body) : body);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } finally {
+                    readDeadline.cancel(false);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, responseExecutor);
+    }
+
+    private static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException e) {
+            logger.debug("Error closing AI response body: {}", e.getMessage());
         }
-        
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-        
-        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-        body.add("from", from);
-        
-        // Add userMessage if available
-        if (userMessage != null && !userMessage.isEmpty()) {
-            body.add("userMessage", userMessage);
-        } else {
-            body.add("userMessage", "This is the profile image");
+    }
+
+    private static boolean isGzip(HttpResponse<?> response) {
+        return response.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
+    }
+
+    /**
+     * Decode the "message" object of an AI service response. A response without it
+     * decodes to an empty reply, answered with the generic message.
+     */
+    private AiReply readReply(InputStream body) throws IOException {
+        try (JsonParser parser = new FilteringParserDelegate(replyReader.createParser(body),
+                MESSAGE_FILTER, TokenFilter.Inclusion.ONLY_INCLUDE_ALL, false)) {
+            JsonToken token = parser.nextToken();
+            AiReply reply = token == null || token == JsonToken.VALUE_NULL ? EMPTY_REPLY : replyReader.readValue(parser);
+            // The parser stops after the reply, a body closed before its end closes
+            // the connection instead of returning it to the client's pool
+            if (token != null) {
+                body.transferTo(OutputStream.nullOutputStream());
+            }
+            return reply;
         }
-        
-        // Add image data using ByteArrayResource instead of HttpEntity
-        if (imageData != null && imageData.length > 0) {
-            ByteArrayResource imageResource = new ByteArrayResource(imageData) {
-                @Override
-                public String getFilename() {
-                    return "image.jpg"; // Provide a filename for the multipart request
-                }
-            };
-            body.add("image", imageResource);
-            logger.info("Added image to request as ByteArrayResource");
-        } else {
-            logger.error("Cannot add image to request: image data is empty or null");
+    }
+
+    /**
+     * The AI service answered with an error status
+     */
+    public static class AiStatusException extends RuntimeException {
+        private final int statusCode;
+        private final boolean retryAfter;
+
+        public AiStatusException(String endpoint, int statusCode, boolean retryAfter) {
+            super("AI service /" + endpoint + " returned HTTP " + statusCode);
+            this.statusCode = statusCode;
+            this.retryAfter = retryAfter;
         }
-        
-        HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
-        
-        // Log request details
-        logger.info("Request headers: {}", headers);
-        logger.info("Request body contains keys: {}", body.keySet());
-        
-        try {
-            ResponseEntity<Map> response = restTemplate.exchange(
-                agentUrl + "/image",
-                HttpMethod.POST,
-                requestEntity,
-                Map.class
-            );
-            
-            logger.info("---------- sendImageToAi ---------- Response: {}", response.getBody());
-            return response.getBody();
-        } catch (Exception e) {
-            logger.error("Error sending image to AI: {}", e.getMessage(), e);
-            throw new RuntimeException("Error sending image to AI", e);
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * @return Whether the agent asked to try again later with a Retry-After header
+         */
+        public boolean hasRetryAfter() {
+            return retryAfter;
         }
     }
 }
@@ -0,0 +1,141 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker side of the clustered mode: announces this instance to the ingress with
+ * periodic heartbeats once it is ready to handle messages, and tells the ingress
+ * it is leaving when it shuts down so its conversations move to other workers.
+ */
+@Service
+public class ClusterMember {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterMember.class);
+
+    private final boolean worker;
+    private final String ingressUrl;
+    private final String advertisedUrl;
+    private final Duration heartbeatInterval;
+    private final String secret;
+    private final Environment environment;
+    private final ObjectMapper objectMapper;
+
+    private HttpClient httpClient;
+    private ScheduledExecutorService heartbeats;
+    private volatile String url;
+    private volatile boolean joined;
+
+    public ClusterMember(@Value("${bot.cluster.role:standalone}") String role,
+                         @Value("${bot.cluster.ingress-url:}") String ingressUrl,
+                         @Value("${bot.cluster.advertised-url:}") String advertisedUrl,
+                         @Value("${bot.cluster.heartbeat-interval:2s}") Duration heartbeatInterval,
+                         @Value("${bot.cluster.secret:}") String secret,
+                         Environment environment,
+                         ObjectMapper objectMapper) {
+        this.worker = ClusterRouter.ROLE_WORKER.equals(role);
+        this.ingressUrl = ingressUrl;
+        this.advertisedUrl = advertisedUrl;
+        this.heartbeatInterval = heartbeatInterval;
+        this.secret = secret;
+        this.environment = environment;
+        this.objectMapper = objectMapper;
+        if (worker && ingressUrl.isEmpty()) {
+            throw new IllegalStateException("bot.cluster.ingress-url is required for bot.cluster.role=worker");
+        }
+    }
+
+    /**
+     * Start the heartbeats once the server accepts requests
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void join() {
+        if (!worker) {
+            return;
+        }
+        url = !advertisedUrl.isEmpty() ? advertisedUrl
+                : "http://localhost:" + environment.getProperty("local.server.port", "8081");
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(heartbeatInterval)
+                .build();
+        heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+        logger.info("Joining cluster at {} as {}", ingressUrl, url);
+    }
+
+    private void heartbeat() {
+        boolean accepted = post("/cluster/workers");
+        if (accepted != joined) {
+            joined = accepted;
+            if (accepted) {
+                logger.info("Registered with cluster ingress {}", ingressUrl);
+            } else {
+                logger.warn("Cluster ingress {} is unreachable, retrying every {}", ingressUrl, heartbeatInterval);
+            }
+        }
+    }
+
+    private boolean post(String path) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(ingressUrl + path))
+                    .timeout(heartbeatInterval)
+                    .header("Content-Type", "application/json")
+                    .header(ClusterRouter.SECRET_HEADER, secret)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(Map.of("url", url))))
+                    .build();
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() / 100 == 2;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            logger.debug("Error calling cluster ingress {}: {}", ingressUrl, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return true once the ingress accepted a heartbeat
+     */
+    public boolean isJoined() {
+        return joined;
+    }
+
+    /**
+     * Stop the heartbeats and tell the ingress to forward no more messages here,
+     * as soon as shutdown starts so the messages in progress are the last ones
+     */
+    @EventListener(ContextClosedEvent.class)
+    @PreDestroy
+    public synchronized void leave() {
+        if (heartbeats == null || heartbeats.isShutdown()) {
+            return;
+        }
+        heartbeats.shutdownNow();
+        joined = false;
+        if (post("/cluster/workers/leave")) {
+            logger.info("Left cluster ingress {}", ingressUrl);
+        }
+    }
+}
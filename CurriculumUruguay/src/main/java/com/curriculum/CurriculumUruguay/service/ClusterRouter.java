@@ -0,0 +1,419 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.util.ConsistentHashRing;
+import com.curriculum.CurriculumUruguay.util.Secrets;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Ingress side of the clustered mode: the single instance receiving updates,
+ * through long polling or webhooks, forwards every message to the worker instance
+ * that owns its conversation instead of handling it. Conversations are assigned by
+ * a consistent hash of their key, so each user's messages go to one worker in
+ * order and its session stays in that worker's cache.
+ * <p>
+ * Workers join by sending heartbeats and are removed when they leave, stop sending
+ * heartbeats or fail to accept messages; the messages queued for a removed worker
+ * are forwarded again to the new owners, ahead of any message that arrives for
+ * their conversations meanwhile. A batch the worker may have received is never sent
+ * elsewhere, so a message isn't answered twice. A conversation keeps its worker
+ * while it is active even if the ring changes, so a joining worker only takes over
+ * new or idle conversations and an answer in progress elsewhere isn't overtaken.
+ */
+@Service
+public class ClusterRouter {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterRouter.class);
+
+    public static final String ROLE_INGRESS = "ingress";
+    public static final String ROLE_WORKER = "worker";
+
+    /**
+     * Header carrying bot.cluster.secret on requests between instances
+     */
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private final boolean ingress;
+    private final String secret;
+    private final int virtualNodes;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final Duration requestTimeout;
+    private final long workerTimeoutNanos;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+
+    private final Map<String, WorkerLink> workers = new ConcurrentHashMap<>();
+    // Removed workers whose undelivered messages haven't been rerouted yet
+    private final Map<String, WorkerLink> draining = new ConcurrentHashMap<>();
+    private volatile ConsistentHashRing<String> ring;
+    // Worker of each active conversation
+    private final Cache<String, String> assignments;
+    private final ScheduledExecutorService membership;
+
+    private final Counter sent;
+    private final Counter rerouted;
+    private final Counter dropped;
+    private final Counter unconfirmed;
+    private final Timer forwardTimer;
+
+    public ClusterRouter(@Value("${bot.cluster.role:standalone}") String role,
+                         @Value("${bot.cluster.secret:}") String secret,
+                         @Value("${bot.cluster.virtual-nodes:128}") int virtualNodes,
+                         @Value("${bot.cluster.batch-size:100}") int batchSize,
+                         @Value("${bot.cluster.queue-capacity:10000}") int queueCapacity,
+                         @Value("${bot.cluster.request-timeout:5s}") Duration requestTimeout,
+                         @Value("${bot.cluster.worker-timeout:10s}") Duration workerTimeout,
+                         @Value("${bot.cluster.affinity-ttl:2m}") Duration affinityTtl,
+                         ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry) {
+        this.ingress = ROLE_INGRESS.equals(role);
+        // Without it any host could join as a worker and receive every user's messages
+        if ((ingress || ROLE_WORKER.equals(role)) && secret.isBlank()) {
+            throw new IllegalStateException("bot.cluster.secret is required when bot.cluster.role=" + role);
+        }
+        this.secret = secret;
+        this.virtualNodes = virtualNodes;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.requestTimeout = requestTimeout;
+        this.workerTimeoutNanos = workerTimeout.toNanos();
+        this.objectMapper = objectMapper;
+        this.ring = new ConsistentHashRing<>(List.of(), virtualNodes);
+        this.assignments = Caffeine.newBuilder().expireAfterAccess(affinityTtl).build();
+
+        Gauge.builder("bot.cluster.workers", workers, Map::size)
+                .description("Workers messages are forwarded to")
+                .register(meterRegistry);
+        this.sent = forwarded("sent", meterRegistry);
+        this.rerouted = forwarded("rerouted", meterRegistry);
+        this.dropped = forwarded("dropped", meterRegistry);
+        this.unconfirmed = forwarded("unconfirmed", meterRegistry);
+        this.forwardTimer = Timer.builder("bot.cluster.forward")
+                .description("Latency of forwarding a batch of messages to a worker")
+                .register(meterRegistry);
+
+        if (ingress) {
+            this.httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(requestTimeout)
+                    .build();
+            this.membership = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cluster-membership");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long checkMillis = Math.max(100, workerTimeout.toMillis() / 2);
+            membership.scheduleWithFixedDelay(this::expireWorkers, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+            logger.info("Cluster ingress started, waiting for workers");
+        } else {
+            this.httpClient = null;
+            this.membership = null;
+        }
+    }
+
+    private static Counter forwarded(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("bot.cluster.forwarded")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return true if this instance forwards messages to workers instead of handling them
+     */
+    public boolean isIngress() {
+        return ingress;
+    }
+
+    /**
+     * @return true if the secret sent by another instance matches
+     */
+    public boolean isAuthorized(String presented) {
+        return Secrets.secretMatches(secret, presented);
+    }
+
+    /**
+     * Queue a message for the worker owning its conversation, never blocks
+     * @return false if no worker is available or its queue is full
+     */
+    public boolean forward(InboundMessage message) {
+        return forward(message, null);
+    }
+
+    /**
+     * @param rerouting Removed worker whose messages are being rerouted, not an owner anymore
+     */
+    private boolean forward(InboundMessage message, WorkerLink rerouting) {
+        String key = message.conversationKey();
+        // A worker may be removed between the lookup and the offer, the ring has changed by then
+        for (int attempt = 0; attempt < 3; attempt++) {
+            WorkerLink link = ownerOf(key, rerouting);
+            if (link == null) {
+                return false;
+            }
+            if (link.offer(message)) {
+                return true;
+            }
+            if (!link.closed) {
+                logger.warn("Forward queue of worker {} is full", link.url);
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private WorkerLink ownerOf(String key, WorkerLink rerouting) {
+        String assigned = assignments.getIfPresent(key);
+        WorkerLink link = null;
+        if (assigned != null) {
+            // Conversations of a removed worker wait behind the messages it didn't get
+            link = draining.get(assigned);
+            if (link == null || link == rerouting) {
+                link = workers.get(assigned);
+            }
+        }
+        if (link != null) {
+            return link;
+        }
+        ConsistentHashRing<String> current = ring;
+        if (current.isEmpty()) {
+            return null;
+        }
+        link = workers.get(current.nodeFor(key));
+        if (link != null) {
+            assignments.put(key, link.url);
+        }
+        return link;
+    }
+
+    /**
+     * Add a worker or record its heartbeat
+     * @param url Base URL of the worker
+     */
+    public void register(String url) {
+        boolean[] joined = new boolean[1];
+        WorkerLink link = workers.computeIfAbsent(url, key -> {
+            joined[0] = true;
+            return new WorkerLink(key);
+        });
+        link.lastSeen = System.nanoTime();
+        if (joined[0]) {
+            rebuildRing();
+            link.start();
+            logger.info("Worker {} joined the cluster, {} workers", url, workers.size());
+        }
+    }
+
+    /**
+     * Remove a worker, the messages queued for it are forwarded to the new owners
+     * @param url Base URL of the worker
+     */
+    public void deregister(String url) {
+        WorkerLink link = workers.get(url);
+        if (link != null) {
+            remove(link, "left");
+        }
+    }
+
+    private void remove(WorkerLink link, String reason) {
+        if (!workers.remove(link.url, link)) {
+            return;
+        }
+        draining.put(link.url, link);
+        rebuildRing();
+        link.closed = true;
+        logger.info("Worker {} {}, {} workers", link.url, reason, workers.size());
+    }
+
+    private void rebuildRing() {
+        synchronized (workers) {
+            ring = new ConsistentHashRing<>(workers.keySet().stream().sorted().toList(), virtualNodes);
+        }
+    }
+
+    private void expireWorkers() {
+        long now = System.nanoTime();
+        for (WorkerLink link : workers.values()) {
+            if (now - link.lastSeen > workerTimeoutNanos) {
+                remove(link, "stopped sending heartbeats");
+            }
+        }
+    }
+
+    /**
+     * Forward messages a removed worker didn't get, in their original order
+     */
+    private void reroute(List<InboundMessage> messages, WorkerLink removed) {
+        for (InboundMessage message : messages) {
+            if (forward(message, removed)) {
+                rerouted.increment();
+            } else {
+                dropped.increment();
+                logger.warn("No worker available, dropping message {} from user {}", message.messageId(), message.userId());
+            }
+        }
+    }
+
+    /**
+     * @return Messages waiting to be forwarded
+     */
+    public int getQueued() {
+        return Stream.concat(workers.values().stream(), draining.values().stream())
+                .mapToInt(link -> link.queue.size())
+                .sum();
+    }
+
+    /**
+     * @return Base URLs of the current workers
+     */
+    public List<String> getWorkers() {
+        return ring.getNodes();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (membership == null) {
+            return;
+        }
+        membership.shutdownNow();
+        for (WorkerLink link : workers.values()) {
+            link.closed = true;
+        }
+    }
+
+    /**
+     * Queue of the messages for one worker, sent in order in batches by a dedicated thread
+     */
+    private final class WorkerLink {
+        private final String url;
+        private final BlockingQueue<InboundMessage> queue = new LinkedBlockingQueue<>(queueCapacity);
+        private final Thread sender;
+        private volatile boolean closed;
+        // Guarded by this, set once the messages this worker didn't get have been rerouted
+        private boolean drained;
+        private volatile long lastSeen;
+
+        private WorkerLink(String url) {
+            this.url = url;
+            this.sender = new Thread(this::run, "cluster-forward-" + url.replaceFirst("^https?://", ""));
+            sender.setDaemon(true);
+        }
+
+        void start() {
+            sender.start();
+        }
+
+        /**
+         * Once the worker is removed messages are still queued, behind the ones it didn't
+         * get, until those have been rerouted
+         */
+        synchronized boolean offer(InboundMessage message) {
+            return !drained && queue.offer(message);
+        }
+
+        private void run() {
+            List<InboundMessage> batch = new ArrayList<>(batchSize);
+            try {
+                while (!closed) {
+                    InboundMessage first = queue.poll(200, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    Delivery delivery = send(batch);
+                    if (delivery != Delivery.DELIVERED) {
+                        remove(this, "failed to accept messages");
+                        if (delivery == Delivery.UNKNOWN) {
+                            // The worker may be answering them, sent again they could be answered twice
+                            unconfirmed.increment(batch.size());
+                            logger.warn("Dropping {} messages worker {} may have received", batch.size(), url);
+                            batch.clear();
+                        }
+                        break;
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Whatever this worker didn't get goes to the new owners. Holding the lock keeps
+            // newer messages of the same conversations waiting until these are queued first
+            synchronized (this) {
+                queue.drainTo(batch);
+                if (!batch.isEmpty() && membership != null && !membership.isShutdown()) {
+                    reroute(batch, this);
+                }
+                drained = true;
+                draining.remove(url, this);
+            }
+        }
+
+        private Delivery send(List<InboundMessage> batch) {
+            Timer.Sample sample = Timer.start();
+            try {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/cluster/messages"))
+                        .timeout(requestTimeout)
+                        .header("Content-Type", "application/json")
+                        .header(SECRET_HEADER, secret)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(batch)))
+                        .build();
+                HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() / 100 != 2) {
+                    logger.warn("Worker {} answered HTTP {} to {} messages", url, response.statusCode(), batch.size());
+                    // A worker rejects a request before handling any of its messages
+                    return response.statusCode() / 100 == 4 ? Delivery.REFUSED : Delivery.UNKNOWN;
+                }
+                sent.increment(batch.size());
+                return Delivery.DELIVERED;
+            } catch (ConnectException | HttpConnectTimeoutException e) {
+                logger.warn("Worker {} unreachable, {} messages not sent: {}", url, batch.size(), e.getMessage());
+                return Delivery.REFUSED;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Delivery.UNKNOWN;
+            } catch (Exception e) {
+                logger.warn("Error forwarding {} messages to worker {}: {}", batch.size(), url, e.getMessage());
+                return Delivery.UNKNOWN;
+            } finally {
+                sample.stop(forwardTimer);
+            }
+        }
+    }
+
+    /**
+     * Outcome of forwarding a batch: the worker accepted it, certainly didn't handle
+     * any of it, or may have handled it
+     */
+    private enum Delivery {
+        DELIVERED, REFUSED, UNKNOWN
+    }
+}
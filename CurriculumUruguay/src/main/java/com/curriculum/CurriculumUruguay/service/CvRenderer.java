@@ -0,0 +1,136 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.CvData;
+import com.curriculum.CurriculumUruguay.model.PdfData;
+import com.curriculum.CurriculumUruguay.util.PdfFonts;
+import com.curriculum.CurriculumUruguay.util.PdfTemplate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders the curriculum locally when the agent sends it as structured data
+ * instead of a Base64 PDF. The template is compiled and the fonts are read once
+ * on startup; documents are rendered on a small CPU bound pool, in memory or to a
+ * temporary file past the PDF memory threshold, and uploaded from there like the
+ * PDFs generated by the agent.
+ */
+@Service
+public class CvRenderer {
+    private static final Logger logger = LoggerFactory.getLogger(CvRenderer.class);
+
+    private final boolean enabled;
+    private final int memoryThreshold;
+    private final PdfTemplate template;
+    private final PdfFonts fonts;
+    private final ThreadPoolExecutor cpuPool;
+
+    private final Timer renderTimer;
+    private final DistributionSummary renderedBytes;
+    private final Counter rejected;
+
+    public CvRenderer(@Value("${bot.pdf.render.enabled:false}") boolean enabled,
+                      @Value("${bot.pdf.render.template:classpath:cv-template.txt}") Resource template,
+                      @Value("${bot.pdf.render.font:}") String font,
+                      @Value("${bot.pdf.render.bold-font:}") String boldFont,
+                      @Value("${bot.pdf.render.threads:0}") int threads,
+                      @Value("${bot.pdf.render.max-queued:32}") int maxQueued,
+                      @Value("${bot.pdf.memory-threshold-bytes:262144}") int memoryThreshold,
+                      MeterRegistry meterRegistry) throws IOException {
+        this.enabled = enabled;
+        this.memoryThreshold = memoryThreshold;
+        this.renderTimer = Timer.builder("bot.pdf.render")
+                .description("CPU time spent rendering a curriculum sent as data")
+                .register(meterRegistry);
+        this.renderedBytes = DistributionSummary.builder("bot.pdf.render.bytes")
+                .description("Size of the rendered curriculum PDFs")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("bot.pdf.render.rejected")
+                .description("Curriculums not rendered because the rendering pool was full")
+                .register(meterRegistry);
+
+        if (!enabled) {
+            this.template = null;
+            this.fonts = null;
+            this.cpuPool = null;
+            return;
+        }
+        this.template = PdfTemplate.compile(template.getContentAsString(StandardCharsets.UTF_8), CvData.class);
+        this.fonts = font.isEmpty() ? PdfFonts.standard()
+                : PdfFonts.trueType(Path.of(font), Path.of(boldFont.isEmpty() ? font : boldFont));
+
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.cpuPool = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueued), runnable -> {
+            Thread thread = new Thread(runnable, "pdf-render-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Local PDF rendering enabled: template={}, embeddedFonts={}, threads={}",
+                template.getDescription(), fonts.isEmbedded(), poolSize);
+    }
+
+    /**
+     * @return true if the agent is asked for structured curriculums, rendered here
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Render a curriculum on the rendering pool
+     * @return Future completed with the PDF, the caller closes it once sent
+     */
+    public CompletableFuture<PdfData> render(CvData cv) {
+        try {
+            return CompletableFuture.supplyAsync(() -> renderNow(cv), cpuPool);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            logger.warn("PDF rendering pool is full, curriculum not rendered");
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Render a curriculum on the calling thread, package-private for benchmarks
+     */
+    PdfData renderNow(CvData cv) {
+        long start = System.nanoTime();
+        try {
+            PdfData pdf = PdfData.write(memoryThreshold, out -> template.render(cv, fonts, out));
+            renderedBytes.record(pdf.size());
+            return pdf;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            renderTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (cpuPool != null) {
+            cpuPool.shutdownNow();
+        }
+    }
+}
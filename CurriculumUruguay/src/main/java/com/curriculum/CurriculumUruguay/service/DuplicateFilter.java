@@ -0,0 +1,145 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.model.UpdateWatermark;
+import com.curriculum.CurriculumUruguay.repository.UpdateWatermarkRepository;
+import com.curriculum.CurriculumUruguay.util.RecentKeys;
+import com.curriculum.CurriculumUruguay.util.UpdateIdWindow;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drops updates and messages that were already received, e.g. after a restart, a
+ * retried poll or a webhook delivered again, before any download or AI call starts.
+ * Telegram update_ids are tracked in a bit window, messages of every channel by a
+ * hash of their chat and message id. Optionally the highest update_id is persisted
+ * so it survives restarts and is shared with the other instances.
+ */
+@Service
+public class DuplicateFilter {
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateFilter.class);
+
+    private static final String WATERMARK_SOURCE = "telegram";
+
+    private final boolean enabled;
+    private final UpdateIdWindow updateIds;
+    private final RecentKeys messageKeys;
+
+    private final UpdateWatermarkRepository repository;
+    private final ScheduledExecutorService watermarkWriter;
+    private long savedWatermark = Long.MIN_VALUE;
+
+    public DuplicateFilter(@Value("${bot.dedup.enabled:true}") boolean enabled,
+                           @Value("${bot.dedup.update-window:65536}") int updateWindow,
+                           @Value("${bot.dedup.message-window:16384}") int messageWindow,
+                           @Value("${bot.dedup.watermark.enabled:false}") boolean watermarkEnabled,
+                           @Value("${bot.dedup.watermark.interval:5s}") Duration watermarkInterval,
+                           ObjectProvider<UpdateWatermarkRepository> repository) {
+        this.enabled = enabled;
+        this.updateIds = new UpdateIdWindow(updateWindow);
+        this.messageKeys = new RecentKeys(messageWindow);
+        this.repository = watermarkEnabled ? repository.getIfAvailable() : null;
+
+        if (this.repository != null) {
+            loadWatermark();
+            this.watermarkWriter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "update-watermark-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = watermarkInterval.toMillis();
+            watermarkWriter.scheduleWithFixedDelay(this::saveWatermark, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.watermarkWriter = null;
+        }
+        logger.info("Duplicate filter started: enabled={}, persistentWatermark={}", enabled, this.repository != null);
+    }
+
+    /**
+     * @param updateId Telegram update_id
+     * @return false if the update was already received
+     */
+    public boolean acceptUpdate(Integer updateId) {
+        return !enabled || updateId == null || updateIds.markSeen(updateId);
+    }
+
+    /**
+     * @param message Normalized message
+     * @return false if a message with the same chat and id was already received
+     */
+    public boolean acceptMessage(InboundMessage message) {
+        if (!enabled || message.messageId() == null) {
+            return true;
+        }
+        return messageKeys.add(hash(message.channel(), message.chatId(), message.messageId()));
+    }
+
+    /**
+     * 64-bit FNV-1a of the parts, collisions are negligible for the number of keys remembered
+     */
+    static long hash(String... parts) {
+        long hash = 0xcbf29ce484222325L;
+        for (String part : parts) {
+            byte[] bytes = (part != null ? part : "").getBytes(StandardCharsets.UTF_8);
+            for (byte b : bytes) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            // Separator so ("ab", "c") and ("a", "bc") differ
+            hash ^= 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void loadWatermark() {
+        try {
+            repository.findById(WATERMARK_SOURCE).ifPresent(watermark -> {
+                updateIds.setFloor(watermark.getLastUpdateId());
+                savedWatermark = watermark.getLastUpdateId();
+                logger.info("Updates up to {} are treated as already received", watermark.getLastUpdateId());
+            });
+        } catch (Exception e) {
+            logger.warn("Error reading update watermark from database: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Persist the highest update_id received if it moved since the last save
+     */
+    synchronized void saveWatermark() {
+        long highest = updateIds.highest();
+        if (highest <= savedWatermark) {
+            return;
+        }
+        try {
+            if (repository.advance(WATERMARK_SOURCE, highest, Instant.now()) == 0 && !repository.existsById(WATERMARK_SOURCE)) {
+                repository.save(new UpdateWatermark(WATERMARK_SOURCE, highest));
+            }
+            savedWatermark = highest;
+        } catch (Exception e) {
+            logger.warn("Error saving update watermark to database: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (watermarkWriter == null) {
+            return;
+        }
+        watermarkWriter.shutdown();
+        watermarkWriter.awaitTermination(5, TimeUnit.SECONDS);
+        saveWatermark();
+    }
+}
@@ -0,0 +1,300 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Shrinks images before they are sent to the AI service. Images are downscaled to
+ * a maximum dimension and re-encoded as JPEG, which also drops any metadata the
+ * original carried. Dimensions are read from the header first, images with more
+ * pixels than the limit are never decoded. Decoding and encoding run on a small
+ * CPU bound pool; when the pool is saturated the original image is sent unchanged.
+ * Off by default: every image is buffered on the heap to be decoded, while Telegram
+ * already offers each photo at a size near the target and it is streamed unchanged.
+ */
+@Service
+public class ImagePreprocessor {
+    private static final Logger logger = LoggerFactory.getLogger(ImagePreprocessor.class);
+
+    public static final String JPEG = "image/jpeg";
+    public static final String PNG = "image/png";
+    public static final String GIF = "image/gif";
+    public static final String WEBP = "image/webp";
+    public static final String UNKNOWN = "application/octet-stream";
+
+    private final boolean enabled;
+    private final int maxDimension;
+    private final long maxPixels;
+    private final float quality;
+
+    private final ThreadPoolExecutor cpuPool;
+    private final ExecutorService ioExecutor;
+
+    private final Timer processTimer;
+    private final DistributionSummary bytesSaved;
+    private final Counter skipped;
+
+    public ImagePreprocessor(@Value("${bot.image.preprocess.enabled:false}") boolean enabled,
+                             @Value("${bot.image.preprocess.max-dimension:1280}") int maxDimension,
+                             @Value("${bot.image.preprocess.max-pixels:50000000}") long maxPixels,
+                             @Value("${bot.image.preprocess.jpeg-quality:0.85}") float quality,
+                             @Value("${bot.image.preprocess.threads:0}") int threads,
+                             @Value("${bot.image.preprocess.max-queued:64}") int maxQueued,
+                             ExecutorService aiResponseExecutor, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxDimension = maxDimension;
+        this.maxPixels = maxPixels;
+        this.quality = quality;
+        this.ioExecutor = aiResponseExecutor;
+
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.cpuPool = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueued), runnable -> {
+            Thread thread = new Thread(runnable, "image-preprocess-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.processTimer = Timer.builder("bot.image.preprocess")
+                .description("CPU time spent resizing and re-encoding an image")
+                .register(meterRegistry);
+        this.bytesSaved = DistributionSummary.builder("bot.image.bytes.saved")
+                .description("Bytes removed from an image before it is sent to the AI service")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.skipped = Counter.builder("bot.image.preprocess.skipped")
+                .description("Images sent unchanged because the preprocessing pool was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * An image ready to be uploaded
+     * @param data Encoded image
+     * @param contentType Detected content type
+     */
+    public record PreparedImage(byte[] data, String contentType) {
+
+        /**
+         * @return Filename with the extension of the content type
+         */
+        public String filename() {
+            switch (contentType) {
+                case PNG:
+                    return "image.png";
+                case GIF:
+                    return "image.gif";
+                case WEBP:
+                    return "image.webp";
+                default:
+                    return "image.jpg";
+            }
+        }
+    }
+
+    /**
+     * @return false if images should be streamed to the AI service unchanged
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Download an image and shrink it
+     * @param source Opens the original image, read on an IO thread
+     * @return Future completed with the image to upload
+     */
+    public CompletableFuture<PreparedImage> prepare(Supplier<? extends InputStream> source) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (InputStream in = source.get()) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, ioExecutor).thenCompose(original -> {
+            try {
+                return CompletableFuture.supplyAsync(() -> process(original), cpuPool);
+            } catch (RejectedExecutionException e) {
+                skipped.increment();
+                logger.warn("Image preprocessing pool is full, sending original image");
+                return CompletableFuture.completedFuture(new PreparedImage(original, detectContentType(original)));
+            }
+        });
+    }
+
+    /**
+     * Resize and re-encode an image on the calling thread. Formats ImageIO can't
+     * decode and images over the pixel limit are returned unchanged with their
+     * detected content type.
+     */
+    PreparedImage process(byte[] original) {
+        long start = System.nanoTime();
+        String contentType = detectContentType(original);
+        try {
+            BufferedImage image = decode(original, contentType);
+            if (image == null) {
+                return new PreparedImage(original, contentType);
+            }
+
+            // Re-encoded even when it grows, so the metadata of the original never leaves the bot
+            byte[] encoded = encodeJpeg(toRgb(downscale(image, maxDimension)), quality);
+            bytesSaved.record(Math.max(0, original.length - encoded.length));
+            logger.info("Image preprocessed: {}x{} {} {} bytes -> {} bytes", image.getWidth(), image.getHeight(),
+                    contentType, original.length, encoded.length);
+            return new PreparedImage(encoded, JPEG);
+        } catch (IOException e) {
+            logger.warn("Error preprocessing image, sending it unchanged: {}", e.getMessage());
+            return new PreparedImage(original, contentType);
+        } finally {
+            processTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Decode an image, checking its dimensions from the header first so a small file
+     * can't expand into a huge bitmap
+     * @return The image, or null if it can't be decoded or has too many pixels
+     */
+    private BufferedImage decode(byte[] original, String contentType) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(original))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                logger.info("Image of type {} can't be decoded, sending it unchanged", contentType);
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    logger.warn("Image of type {} has {}x{} pixels, over the limit, sending it unchanged",
+                            contentType, reader.getWidth(0), reader.getHeight(0));
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Detect the content type from the leading bytes instead of trusting the filename
+     */
+    public static String detectContentType(byte[] data) {
+        if (data.length >= 3 && (data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xD8 && (data[2] & 0xFF) == 0xFF) {
+            return JPEG;
+        }
+        if (data.length >= 8 && (data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+            return PNG;
+        }
+        if (data.length >= 6 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F' && data[3] == '8') {
+            return GIF;
+        }
+        if (data.length >= 12 && data[0] == 'R' && data[1] == 'I' && data[2] == 'F' && data[3] == 'F'
+                && data[8] == 'W' && data[9] == 'E' && data[10] == 'B' && data[11] == 'P') {
+            return WEBP;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Scale down in halving steps so large reductions keep their detail with bilinear filtering
+     */
+    private static BufferedImage downscale(BufferedImage image, int maxDimension) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int longest = Math.max(width, height);
+        if (longest <= maxDimension) {
+            return image;
+        }
+        double scale = (double) maxDimension / longest;
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+        BufferedImage current = image;
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            current = draw(current, width, height);
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    /**
+     * JPEG has no alpha channel, transparent areas are flattened onto white
+     */
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        return draw(image, image.getWidth(), image.getHeight());
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(imageOut);
+            // No metadata is passed, so EXIF, GPS and comments of the original are not copied
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cpuPool.shutdownNow();
+    }
+}
@@ -0,0 +1,205 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.util.SegmentJournal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable record of the messages being handled. A message is appended to a local
+ * memory-mapped journal when it arrives, before the webhook request that carried it
+ * is answered, and acknowledged once its reply has been sent. Messages still
+ * pending when the process stopped are handed back to the pipeline on startup, so
+ * a restart while waiting on the AI service doesn't lose them.
+ * <p>
+ * Appends only copy into the mapped file and survive a JVM crash right away; a
+ * background thread forces the journal to disk every sync interval, batching the
+ * fsyncs of all messages received meanwhile, and deletes segments whose messages
+ * were all answered.
+ */
+@Service
+public class InboundJournal {
+    private static final Logger logger = LoggerFactory.getLogger(InboundJournal.class);
+
+    private final SegmentJournal journal;
+    private final ObjectMapper objectMapper;
+    private final ScheduledExecutorService maintenance;
+    private final List<InboundMessage> recovered = new ArrayList<>();
+
+    // Journaled messages of each conversation in arrival order, they are answered in that order
+    private final Map<String, Deque<Pending>> conversations = new ConcurrentHashMap<>();
+
+    private final Timer appendTimer;
+
+    public InboundJournal(@Value("${bot.journal.enabled:false}") boolean enabled,
+                          @Value("${bot.journal.directory:data/journal}") Path directory,
+                          @Value("${bot.journal.segment-size-bytes:16777216}") int segmentSize,
+                          @Value("${bot.journal.sync-interval:10ms}") Duration syncInterval,
+                          @Value("${bot.journal.compaction-interval:30s}") Duration compactionInterval,
+                          ObjectMapper objectMapper,
+                          MeterRegistry meterRegistry) throws IOException {
+        this.objectMapper = objectMapper;
+        this.appendTimer = Timer.builder("bot.journal.append")
+                .description("Latency of appending a received message to the journal")
+                .register(meterRegistry);
+        if (!enabled) {
+            this.journal = null;
+            this.maintenance = null;
+            return;
+        }
+
+        this.journal = new SegmentJournal(directory, segmentSize);
+        for (SegmentJournal.Entry entry : journal.pending()) {
+            InboundMessage message = objectMapper.readValue(entry.payload(), InboundMessage.class);
+            track(message, entry.seq());
+            recovered.add(message);
+        }
+        Gauge.builder("bot.journal.pending", journal, SegmentJournal::pendingCount)
+                .description("Journaled messages not answered yet")
+                .register(meterRegistry);
+        Gauge.builder("bot.journal.segments", journal, SegmentJournal::segmentCount)
+                .description("Segment files of the journal")
+                .register(meterRegistry);
+
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long syncNanos = syncInterval.toNanos();
+        maintenance.scheduleWithFixedDelay(this::sync, syncNanos, syncNanos, TimeUnit.NANOSECONDS);
+        long compactionMillis = compactionInterval.toMillis();
+        maintenance.scheduleWithFixedDelay(this::compact, compactionMillis, compactionMillis, TimeUnit.MILLISECONDS);
+        logger.info("Inbound journal opened at {}: {} unanswered messages to replay", directory, recovered.size());
+    }
+
+    public boolean isEnabled() {
+        return journal != null;
+    }
+
+    /**
+     * Record a received message, it stays pending until {@link #complete} is called for it
+     * or for a later message of the same conversation
+     * @param message Normalized message
+     * @return false if the message couldn't be journaled, it is handled anyway
+     */
+    public boolean append(InboundMessage message) {
+        if (journal == null) {
+            return false;
+        }
+        Timer.Sample sample = Timer.start();
+        try {
+            long seq = journal.append(objectMapper.writeValueAsBytes(message));
+            track(message, seq);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Error journaling message {} from user {}: {}", message.messageId(), message.userId(), e.getMessage());
+            return false;
+        } finally {
+            sample.stop(appendTimer);
+        }
+    }
+
+    private void track(InboundMessage message, long seq) {
+        Deque<Pending> pending = conversations.computeIfAbsent(message.conversationKey(), key -> new ArrayDeque<>());
+        synchronized (pending) {
+            pending.addLast(new Pending(message.messageId(), seq));
+        }
+    }
+
+    /**
+     * Acknowledge a message once it has been answered, together with the earlier
+     * messages of its conversation: they were answered before it or merged into it
+     * @param message Message that was answered
+     */
+    public void complete(InboundMessage message) {
+        if (journal == null) {
+            return;
+        }
+        Deque<Pending> pending = conversations.get(message.conversationKey());
+        if (pending == null) {
+            return;
+        }
+        List<Long> answered = new ArrayList<>();
+        synchronized (pending) {
+            if (pending.stream().noneMatch(entry -> entry.messageId().equals(message.messageId()))) {
+                return;
+            }
+            Pending entry;
+            do {
+                entry = pending.pollFirst();
+                answered.add(entry.seq());
+            } while (!entry.messageId().equals(message.messageId()));
+            if (pending.isEmpty()) {
+                conversations.remove(message.conversationKey(), pending);
+            }
+        }
+        for (long seq : answered) {
+            journal.ack(seq);
+        }
+    }
+
+    /**
+     * @return Messages that were unanswered when the process stopped, in arrival order
+     */
+    public List<InboundMessage> getRecovered() {
+        return recovered;
+    }
+
+    private void sync() {
+        try {
+            journal.sync();
+        } catch (RuntimeException e) {
+            logger.warn("Error syncing journal: {}", e.getMessage());
+        }
+    }
+
+    private void compact() {
+        try {
+            int deleted = journal.compact();
+            if (deleted > 0) {
+                logger.debug("Journal compaction deleted {} segments", deleted);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Error compacting journal: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (journal == null) {
+            return;
+        }
+        maintenance.shutdown();
+        maintenance.awaitTermination(5, TimeUnit.SECONDS);
+        try {
+            journal.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record Pending(String messageId, long seq) {
+    }
+}
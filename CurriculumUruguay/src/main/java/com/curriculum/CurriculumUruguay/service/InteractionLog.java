@@ -0,0 +1,158 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.model.Interaction;
+import com.curriculum.CurriculumUruguay.util.MpscRingBuffer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Append-only log of user interactions. The update path only puts an event in a
+ * lock-free ring buffer; a background thread drains it and inserts the events in
+ * JDBC batches when the database is enabled. When the buffer is full events are
+ * dropped and counted instead of slowing down message handling.
+ */
+@Service
+public class InteractionLog {
+    private static final Logger logger = LoggerFactory.getLogger(InteractionLog.class);
+
+    private final MpscRingBuffer<Interaction.Event> buffer;
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final ScheduledExecutorService writer;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final Counter accepted;
+    private final Counter dropped;
+    private final Counter written;
+    private final Counter failed;
+    private final Timer writeTimer;
+
+    public InteractionLog(@Value("${bot.interaction-log.capacity:65536}") int capacity,
+                          @Value("${bot.interaction-log.batch-size:500}") int batchSize,
+                          @Value("${bot.interaction-log.flush-interval:500ms}") Duration flushInterval,
+                          ObjectProvider<DataSource> dataSource,
+                          MeterRegistry meterRegistry) {
+        DataSource available = dataSource.getIfAvailable();
+        this.jdbcTemplate = available != null ? new JdbcTemplate(available) : null;
+        this.buffer = new MpscRingBuffer<>(capacity);
+        this.batchSize = batchSize;
+
+        Gauge.builder("bot.interaction.log.queue.depth", buffer, MpscRingBuffer::size)
+                .description("Interaction events waiting to be written")
+                .register(meterRegistry);
+        this.accepted = events("accepted", meterRegistry);
+        this.dropped = events("dropped", meterRegistry);
+        this.written = events("written", meterRegistry);
+        this.failed = events("failed", meterRegistry);
+        this.writeTimer = Timer.builder("bot.interaction.log.write")
+                .description("Latency of batched interaction inserts")
+                .register(meterRegistry);
+
+        if (jdbcTemplate != null) {
+            this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "interaction-log-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = flushInterval.toMillis();
+            writer.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.writer = null;
+        }
+        logger.info("Interaction log started: capacity={}, persistent={}", buffer.capacity(), jdbcTemplate != null);
+    }
+
+    private static Counter events(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("bot.interaction.log.events")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record a message received from a user, never blocks
+     * @param message Normalized message
+     * @return false if the event was dropped because the buffer is full
+     */
+    public boolean record(InboundMessage message) {
+        if (writer == null) {
+            // Without a database the interaction only goes to the application log
+            logger.info("User interaction: channel={}, userId={}, eventType={}", message.channel(), message.userId(), message.type());
+            return true;
+        }
+        Interaction.Event event = new Interaction.Event(Instant.now(), message.channel(), message.userId(),
+                message.type(), message.messageId());
+        if (!buffer.offer(event)) {
+            dropped.increment();
+            return false;
+        }
+        accepted.increment();
+        // Wake the writer early once a full batch is waiting
+        if (buffer.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            writer.execute(this::flush);
+        }
+        return true;
+    }
+
+    /**
+     * Write every buffered event, runs on the writer thread. A batch the database
+     * rejects is dropped and counted, the log is best effort.
+     */
+    synchronized void flush() {
+        flushRequested.set(false);
+        List<Interaction.Event> batch = new ArrayList<>(batchSize);
+        while (buffer.drain(batch::add, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<Interaction.Event> batch) {
+        Timer.Sample sample = Timer.start();
+        try {
+            jdbcTemplate.batchUpdate(Interaction.INSERT_SQL, batch, batch.size(), (statement, event) -> {
+                statement.setTimestamp(1, Timestamp.from(event.receivedAt()));
+                statement.setString(2, event.channel());
+                statement.setString(3, event.userId());
+                statement.setString(4, event.eventType());
+                statement.setString(5, event.messageId());
+            });
+            written.increment(batch.size());
+        } catch (Exception e) {
+            failed.increment(batch.size());
+            logger.warn("Error writing {} interactions to database: {}", batch.size(), e.getMessage());
+        }
+        sample.stop(writeTimer);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+        // Write the events still buffered, producers have stopped by now
+        flush();
+    }
+}
@@ -0,0 +1,206 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Merges text messages a user sends in quick succession into a single message, so
+ * a CV detail split over several messages costs one AI call and gets one reply.
+ * A batch is dispatched once no message arrived for the debounce window, or at the
+ * latest after the maximum wait. Until the dispatched batch actually starts, e.g.
+ * while the AI call for a previous message of the user is still running, new
+ * messages keep joining it.
+ */
+@Service
+public class MessageCoalescer {
+    private static final Logger logger = LoggerFactory.getLogger(MessageCoalescer.class);
+
+    /**
+     * Hands a batch to the dispatcher
+     */
+    @FunctionalInterface
+    public interface Dispatch {
+        /**
+         * @param merged Called when the batch starts, returns its messages merged into one
+         * @return false if the batch was rejected
+         */
+        boolean dispatch(Supplier<InboundMessage> merged);
+    }
+
+    private final boolean enabled;
+    private final long windowNanos;
+    private final long maxWaitNanos;
+    private final int maxMessages;
+
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final Counter merged;
+
+    public MessageCoalescer(@Value("${bot.coalesce.enabled:false}") boolean enabled,
+                            @Value("${bot.coalesce.window:1500ms}") Duration window,
+                            @Value("${bot.coalesce.max-wait:5s}") Duration maxWait,
+                            @Value("${bot.coalesce.max-messages:10}") int maxMessages,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        this.maxWaitNanos = Math.max(window.toNanos(), maxWait.toNanos());
+        this.maxMessages = maxMessages;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.merged = Counter.builder("bot.coalesce.merged")
+                .description("Text messages merged into a message sent earlier")
+                .register(meterRegistry);
+        logger.info("Message coalescing: enabled={}, window={}, maxWait={}", enabled, window, maxWait);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Add a text message to the open batch of its conversation, or start a new batch
+     * @param message Text message
+     * @param dispatch Used to dispatch the batch if this message starts it
+     */
+    public void add(InboundMessage message, Dispatch dispatch) {
+        String key = message.conversationKey();
+        long now = System.nanoTime();
+        Batch[] full = new Batch[1];
+        batches.compute(key, (k, batch) -> {
+            if (batch == null) {
+                batch = new Batch(key, dispatch, now);
+            } else {
+                merged.increment();
+            }
+            synchronized (batch) {
+                batch.messages.add(message);
+                if (batch.messages.size() >= maxMessages) {
+                    // Full, later messages start a new batch
+                    full[0] = batch;
+                    return null;
+                }
+                if (!batch.dispatched) {
+                    schedule(batch, Math.min(now + windowNanos, batch.startedAt + maxWaitNanos) - now);
+                }
+            }
+            return batch;
+        });
+        if (full[0] != null) {
+            fire(full[0]);
+        }
+    }
+
+    /**
+     * Close the batch of a conversation so it goes before a message that can't be
+     * merged, a batch still waiting for its window is dispatched right away
+     * @param key Conversation key
+     */
+    public void seal(String key) {
+        Batch batch = batches.remove(key);
+        if (batch != null) {
+            fire(batch);
+        }
+    }
+
+    /**
+     * Dispatch every open batch without waiting for its window, used when shutting down
+     */
+    public void flush() {
+        for (String key : List.copyOf(batches.keySet())) {
+            seal(key);
+        }
+    }
+
+    private void schedule(Batch batch, long delayNanos) {
+        if (batch.timer != null) {
+            batch.timer.cancel(false);
+        }
+        batch.timer = scheduler.schedule(() -> fire(batch), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Dispatch the batch once, it stays open for new messages until it starts
+     */
+    private void fire(Batch batch) {
+        synchronized (batch) {
+            if (batch.dispatched) {
+                return;
+            }
+            batch.dispatched = true;
+            if (batch.timer != null) {
+                batch.timer.cancel(false);
+            }
+        }
+        if (!batch.dispatch.dispatch(() -> take(batch))) {
+            // Rejected, messages that joined meanwhile were already answered as busy
+            take(batch);
+        }
+    }
+
+    /**
+     * Close the batch and merge its messages, called when the batch starts
+     */
+    private InboundMessage take(Batch batch) {
+        // Joins happen while the batch is in the map, removing it ends them
+        batches.remove(batch.key, batch);
+        List<InboundMessage> messages;
+        synchronized (batch) {
+            messages = new ArrayList<>(batch.messages);
+        }
+        return merge(messages);
+    }
+
+    /**
+     * @return The last message with the texts of all messages, one per line
+     */
+    static InboundMessage merge(List<InboundMessage> messages) {
+        InboundMessage last = messages.get(messages.size() - 1);
+        if (messages.size() == 1) {
+            return last;
+        }
+        String text = messages.stream().map(InboundMessage::text).collect(Collectors.joining("\n"));
+        return new InboundMessage(last.channel(), last.userId(), last.chatId(), last.accountId(), last.messageId(),
+                last.type(), text, last.caption(), last.media());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private static final class Batch {
+        private final String key;
+        private final Dispatch dispatch;
+        private final long startedAt;
+        private final List<InboundMessage> messages = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+        private boolean dispatched;
+
+        private Batch(String key, Dispatch dispatch, long startedAt) {
+            this.key = key;
+            this.dispatch = dispatch;
+            this.startedAt = startedAt;
+        }
+    }
+}
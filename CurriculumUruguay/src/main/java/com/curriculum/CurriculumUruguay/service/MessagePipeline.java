@@ -0,0 +1,418 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.channel.ChannelAdapter;
+import com.curriculum.CurriculumUruguay.model.AiReply;
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.model.PdfData;
+import com.curriculum.CurriculumUruguay.model.SessionState;
+import com.curriculum.CurriculumUruguay.util.SizeLimitedInputStream;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Channel independent handling of inbound messages: text and images go to the AI
+ * service and its reply is sent back through the adapter the message came from.
+ * Messages of the same sender are handled in order by the {@link UpdateDispatcher}.
+ */
+@Service
+public class MessagePipeline {
+    private static final Logger logger = LoggerFactory.getLogger(MessagePipeline.class);
+
+    private static final String BUSY_MESSAGE =
+            "Estoy atendiendo muchas solicitudes en este momento. Por favor intenta nuevamente en unos minutos.";
+
+    private static final String IMAGE_TOO_LARGE_MESSAGE =
+            "Lo siento, la imagen es demasiado grande. Por favor envía una imagen más pequeña.";
+
+    private static final String INVALID_PDF_MESSAGE =
+            "Lo siento, los datos del PDF no son válidos. Por favor intenta nuevamente.";
+
+    private final AiService aiService;
+
+    private final UpdateDispatcher updateDispatcher;
+
+    private final PipelineMetrics pipelineMetrics;
+
+    private final PayloadLogSampler payloadLogSampler;
+
+    private final ImagePreprocessor imagePreprocessor;
+
+    private final SessionStore sessionStore;
+
+    private final InteractionLog interactionLog;
+
+    private final DuplicateFilter duplicateFilter;
+
+    private final MessageCoalescer messageCoalescer;
+
+    private final ResponseCache responseCache;
+
+    private final InboundJournal inboundJournal;
+
+    private final ClusterRouter clusterRouter;
+
+    private final AdmissionScheduler admissionScheduler;
+
+    private final CvRenderer cvRenderer;
+
+    private final ObjectProvider<ChannelAdapter> channelAdapters;
+
+    private final long maxImageBytes;
+
+    public MessagePipeline(AiService aiService, UpdateDispatcher updateDispatcher, PipelineMetrics pipelineMetrics,
+                           PayloadLogSampler payloadLogSampler, ImagePreprocessor imagePreprocessor,
+                           SessionStore sessionStore, InteractionLog interactionLog,
+                           DuplicateFilter duplicateFilter, MessageCoalescer messageCoalescer,
+                           ResponseCache responseCache, InboundJournal inboundJournal,
+                           ClusterRouter clusterRouter, AdmissionScheduler admissionScheduler,
+                           CvRenderer cvRenderer, ObjectProvider<ChannelAdapter> channelAdapters,
+                           @Value("${bot.image.max-bytes:10485760}") long maxImageBytes) {
+        this.aiService = aiService;
+        this.imagePreprocessor = imagePreprocessor;
+        this.sessionStore = sessionStore;
+        this.interactionLog = interactionLog;
+        this.duplicateFilter = duplicateFilter;
+        this.messageCoalescer = messageCoalescer;
+        this.responseCache = responseCache;
+        this.inboundJournal = inboundJournal;
+        this.clusterRouter = clusterRouter;
+        this.admissionScheduler = admissionScheduler;
+        this.cvRenderer = cvRenderer;
+        this.channelAdapters = channelAdapters;
+        this.updateDispatcher = updateDispatcher;
+        this.pipelineMetrics = pipelineMetrics;
+        this.payloadLogSampler = payloadLogSampler;
+        this.maxImageBytes = maxImageBytes;
+    }
+
+    /**
+     * Queue a message for handling without blocking the caller
+     * @param adapter Channel the message arrived on, replies are sent through it
+     * @param message Normalized message
+     * @return false if the message was rejected because the bot is overloaded
+     */
+    public boolean submit(ChannelAdapter adapter, InboundMessage message) {
+        // A message delivered again must not trigger a second AI call
+        if (!duplicateFilter.acceptMessage(message)) {
+            logger.info("Message {} from user {} was already received, ignoring", message.messageId(), message.userId());
+            pipelineMetrics.countUpdate(message.channel(), message.type(), PipelineMetrics.DUPLICATE);
+            return true;
+        }
+
+        // The worker owning the conversation journals and answers it
+        if (clusterRouter != null && clusterRouter.isIngress()) {
+            if (clusterRouter.forward(message)) {
+                return true;
+            }
+            pipelineMetrics.countUpdate(message.channel(), message.type(), PipelineMetrics.REJECTED);
+            adapter.sendText(message, BUSY_MESSAGE);
+            return false;
+        }
+
+        // Kept until answered, before the caller acknowledges the update
+        inboundJournal.append(message);
+
+        // Queued for the background writer, never waits on the database
+        interactionLog.record(message);
+
+        return enqueue(adapter, message);
+    }
+
+    /**
+     * Queue a message forwarded by the cluster ingress, replies are sent through
+     * the adapter of the channel it arrived on
+     * @return false if the message was rejected because the bot is overloaded
+     */
+    public boolean submit(InboundMessage message) {
+        ChannelAdapter adapter = adapterFor(message);
+        if (adapter == null) {
+            logger.warn("Channel {} is disabled, dropping message {} from user {}", message.channel(),
+                    message.messageId(), message.userId());
+            return false;
+        }
+        return submit(adapter, message);
+    }
+
+    private ChannelAdapter adapterFor(InboundMessage message) {
+        return channelAdapters.orderedStream()
+                .filter(candidate -> candidate.channel().equals(message.channel()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Hand the messages that were unanswered when the process stopped back to the
+     * workers, once every channel adapter is available and before new updates are received
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void replayJournal() {
+        List<InboundMessage> recovered = inboundJournal.getRecovered();
+        if (recovered.isEmpty()) {
+            return;
+        }
+        logger.info("Replaying {} messages unanswered before the restart", recovered.size());
+        for (InboundMessage message : recovered) {
+            ChannelAdapter adapter = adapterFor(message);
+            if (adapter == null) {
+                logger.warn("Channel {} is disabled, dropping message {} from user {}", message.channel(),
+                        message.messageId(), message.userId());
+                inboundJournal.complete(message);
+                continue;
+            }
+            // The channel may deliver it again, that copy is dropped
+            duplicateFilter.acceptMessage(message);
+            enqueue(adapter, message);
+        }
+        recovered.clear();
+    }
+
+    private boolean enqueue(ChannelAdapter adapter, InboundMessage message) {
+        Timer.Sample received = pipelineMetrics.start();
+
+        if (messageCoalescer.isEnabled()) {
+            if (isCoalescable(message)) {
+                // Dispatched once the user stops typing, merged with the texts that follow
+                messageCoalescer.add(message, merged -> {
+                    if (dispatch(adapter, message, () -> process(adapter, merged.get(), received))) {
+                        return true;
+                    }
+                    // The texts merged so far were answered as busy too
+                    inboundJournal.complete(merged.get());
+                    return false;
+                });
+                return true;
+            }
+            // Texts the user sent before go first
+            messageCoalescer.seal(message.conversationKey());
+        }
+        return dispatch(adapter, message, () -> process(adapter, message, received));
+    }
+
+    private boolean dispatch(ChannelAdapter adapter, InboundMessage message, Supplier<CompletableFuture<Void>> task) {
+        if (!updateDispatcher.dispatchAsync(message.conversationKey(), task)) {
+            pipelineMetrics.countUpdate(message.channel(), message.type(), PipelineMetrics.REJECTED);
+            adapter.sendText(message, BUSY_MESSAGE);
+            inboundJournal.complete(message);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Plain text can be merged, commands and media are handled on their own
+     */
+    private static boolean isCoalescable(InboundMessage message) {
+        return "text".equals(message.type()) && message.text() != null && !message.text().startsWith("/");
+    }
+
+    /**
+     * Process a message on a dispatcher worker
+     * @param received Started when the message arrived, stopped once it has been handled
+     * @return Future completed once the reply has been sent
+     */
+    private CompletableFuture<Void> process(ChannelAdapter adapter, InboundMessage message, Timer.Sample received) {
+        CompletableFuture<Void> processing;
+        try {
+            // Process different types of messages
+            switch (message.type()) {
+                case "text":
+                    processing = handleTextMessage(adapter, message);
+                    break;
+                case "photo":
+                    processing = handlePhotoMessage(adapter, message);
+                    break;
+                case "document":
+                    // For now, just inform the user that we don't process documents
+                    processing = adapter.sendText(message, "Lo siento, actualmente no procesamos documentos. Por favor envía texto o una imagen.");
+                    break;
+                default:
+                    // For unsupported message types, send a default response
+                    processing = adapter.sendText(message, "Lo siento, no puedo procesar este tipo de mensaje. Por favor envía texto o una imagen.");
+                    break;
+            }
+        } catch (Exception e) {
+            processing = CompletableFuture.failedFuture(e);
+        }
+
+        // Record the outcome before the error reply turns a failure into a completed future
+        return processing.whenComplete((result, error) -> {
+            String outcome = error == null ? PipelineMetrics.SUCCESS : PipelineMetrics.ERROR;
+            pipelineMetrics.stop(received, "update", message.type(), outcome);
+            pipelineMetrics.countUpdate(message.channel(), message.type(), outcome);
+        }).exceptionallyCompose(e -> {
+            if (hasCause(e, PdfData.InvalidPdfDataException.class)) {
+                logger.error("Invalid Base64 data for PDF: {}", e.getMessage());
+                return adapter.sendText(message, INVALID_PDF_MESSAGE);
+            }
+            logger.error("Error processing message: {}", e.getMessage(), e);
+            return adapter.sendText(message, "Lo siento, ocurrió un error al procesar tu mensaje. Por favor intenta nuevamente.");
+        }).whenComplete((result, error) -> inboundJournal.complete(message));
+    }
+
+    /**
+     * Handle text messages
+     */
+    private CompletableFuture<Void> handleTextMessage(ChannelAdapter adapter, InboundMessage message) {
+        String text = message.text();
+
+        if (text.equals("/start")) {
+            sessionStore.update(message.conversationKey(), session -> session.withStep(SessionState.STEP_STARTED));
+        }
+
+        logger.info("Processing text message from user {}", message.userId());
+        if (payloadLogSampler.shouldLog(logger)) {
+            logger.debug("Text message from user {}: {}", message.userId(), text);
+        }
+
+        // Commands and cached answers skip the AI service, otherwise the reply is processed once it arrives
+        return responseCache.reply(text, () -> admit(message, () -> aiService.sendTextToAiAsync(message.userId(), text)))
+                .thenCompose(aiResponse -> pipelineMetrics.time("send", message.type(), processAiResponse(adapter, message, aiResponse)));
+    }
+
+    /**
+     * Handle photo messages
+     */
+    private CompletableFuture<Void> handlePhotoMessage(ChannelAdapter adapter, InboundMessage message) {
+        InboundMessage.Media media = message.media();
+
+        logger.info("Processing photo message from user {}", message.userId());
+
+        // Reject images that are too large before downloading anything
+        if (media.size() != null && media.size() > maxImageBytes) {
+            logger.info("Photo from user {} is too large: {} bytes", message.userId(), media.size());
+            return adapter.sendText(message, IMAGE_TOO_LARGE_MESSAGE);
+        }
+
+        Supplier<InputStream> photo = () -> new SizeLimitedInputStream(
+                pipelineMetrics.time("download", message.type(), () -> adapter.openMedia(media)), maxImageBytes);
+
+        // The download and the upload take their turn with the AI call
+        CompletableFuture<AiReply> aiCall = admit(message, () -> {
+            if (imagePreprocessor.isEnabled()) {
+                // Shrink the photo first, it has to be downloaded completely to be decoded
+                return pipelineMetrics.time("preprocess", message.type(), imagePreprocessor.prepare(photo))
+                        .thenCompose(image -> aiService.sendImageToAiAsync(message.userId(), message.caption(),
+                                image.filename(), image.contentType(), () -> new ByteArrayInputStream(image.data())));
+            }
+            // Stream the photo from the channel straight into the request to the AI service
+            return aiService.sendImageToAiAsync(message.userId(), message.caption(), photo);
+        });
+        return aiCall
+                .thenCompose(aiResponse -> pipelineMetrics.time("send", message.type(), processAiResponse(adapter, message, aiResponse)))
+                .exceptionallyCompose(e -> {
+                    if (hasCause(e, SizeLimitedInputStream.SizeLimitExceededException.class)) {
+                        logger.info("Photo from user {} exceeded the maximum size while downloading", message.userId());
+                        return adapter.sendText(message, IMAGE_TOO_LARGE_MESSAGE);
+                    }
+                    if (hasCause(e, PdfData.InvalidPdfDataException.class)) {
+                        logger.error("Invalid Base64 data for PDF: {}", e.getMessage());
+                        return adapter.sendText(message, INVALID_PDF_MESSAGE);
+                    }
+                    logger.error("Error processing photo: {}", e.getMessage(), e);
+                    return adapter.sendText(message, "Lo siento, ocurrió un error al procesar tu imagen. Por favor intenta nuevamente.");
+                });
+    }
+
+    /**
+     * Run an AI call through the admission scheduler, classed by the message type and
+     * the last status the agent reported in the conversation
+     */
+    private CompletableFuture<AiReply> admit(InboundMessage message, Supplier<CompletableFuture<AiReply>> call) {
+        if (!admissionScheduler.isEnabled()) {
+            return call.get();
+        }
+        String lastAiStatus = sessionStore.get(message.conversationKey()).lastAiStatus();
+        return admissionScheduler.submit(admissionScheduler.classify(message, lastAiStatus), call);
+    }
+
+    /**
+     * Process the response from the AI service, package-private for benchmarks
+     * @return Future completed once the replies have been sent
+     */
+    CompletableFuture<Void> processAiResponse(ChannelAdapter adapter, InboundMessage message, AiReply aiReply) {
+        if (aiReply == null) {
+            return adapter.sendText(message, "Lo siento, no pude obtener una respuesta del servicio. Por favor intenta nuevamente.");
+        }
+        if (!ResponseCache.COMMAND_STATUS.equals(aiReply.status())) {
+            sessionStore.update(message.conversationKey(),
+                    session -> session.withStep(SessionState.STEP_IN_PROGRESS).withAiStatus(aiReply.status()));
+        }
+
+        // Send PDF if available
+        if (aiReply.hasPdf()) {
+            PdfData pdfData = aiReply.pdfData();
+            logger.info("PDF data received: {}", pdfData);
+
+            if (pdfData.size() == 0) {
+                logger.warn("PDF data is empty");
+                pdfData.close();
+                return CompletableFuture.completedFuture(null);
+            }
+
+            return deliverPdf(adapter, message, aiReply, CompletableFuture.completedFuture(pdfData));
+        }
+
+        // Render the curriculum the agent sent as data
+        if (aiReply.hasCv() && cvRenderer.isEnabled()) {
+            return deliverPdf(adapter, message, aiReply,
+                    pipelineMetrics.time("render", message.type(), cvRenderer.render(aiReply.cv())));
+        }
+        return sendReplyText(adapter, message, aiReply);
+    }
+
+    /**
+     * Send a PDF with the text of the reply as caption
+     * @param pdf Future completed with the PDF, closed once the channel has it
+     */
+    private CompletableFuture<Void> deliverPdf(ChannelAdapter adapter, InboundMessage message, AiReply aiReply,
+                                               CompletableFuture<PdfData> pdf) {
+        String filename = aiReply.pdfFilename() != null ? aiReply.pdfFilename() : "curriculum.pdf";
+
+        // Send the PDF, the temporary file is released once the channel has it
+        return pdf.thenCompose(pdfData -> adapter.sendPdf(message, pdfData, filename, aiReply.message())
+                        .whenComplete((result, error) -> pdfData.close())
+                        .thenRun(() -> sessionStore.update(message.conversationKey(),
+                                session -> session.withStep(SessionState.STEP_CV_DELIVERED).withPdf(pdfData.sha256(), filename))))
+                .exceptionallyCompose(e -> {
+                    logger.error("Error processing PDF data: {}", e.getMessage(), e);
+                    return adapter.sendText(message, "Lo siento, ocurrió un error al procesar el PDF. Por favor intenta nuevamente.")
+                            .thenCompose(sent -> sendReplyText(adapter, message, aiReply));
+                });
+    }
+
+    /**
+     * Send the text of an AI reply
+     */
+    private CompletableFuture<Void> sendReplyText(ChannelAdapter adapter, InboundMessage message, AiReply aiReply) {
+        // Send text message if available
+        if (aiReply.message() != null) {
+            return adapter.sendText(message, aiReply.message());
+        }
+        // If the response format is unexpected, send a generic message
+        return adapter.sendText(message, "He recibido tu mensaje, pero no pude procesar la respuesta correctamente.");
+    }
+
+    private static boolean hasCause(Throwable error, Class<? extends Throwable> type) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
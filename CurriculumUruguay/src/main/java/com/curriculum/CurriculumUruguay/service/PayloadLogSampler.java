@@ -0,0 +1,32 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a full message or response payload is logged. Payloads are only
+ * logged at debug level and only for a sampled fraction of requests, so enabling
+ * it in production doesn't flood the logs with user content.
+ */
+@Component
+public class PayloadLogSampler {
+
+    private final double sampleRate;
+
+    public PayloadLogSampler(@Value("${bot.logging.payload.sample-rate:0}") double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @param logger Logger the payload would be written to
+     * @return true if this payload should be logged
+     */
+    public boolean shouldLog(Logger logger) {
+        return sampleRate > 0
+                && logger.isDebugEnabled()
+                && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+}
@@ -0,0 +1,118 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.PdfFileId;
+import com.curriculum.CurriculumUruguay.repository.PdfFileIdRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Content addressed cache of Telegram file_ids for PDFs that were already uploaded,
+ * so identical documents are re-sent by reference instead of uploading them again.
+ * Entries live in a bounded in-memory LRU and, when the database is enabled, are
+ * also persisted so they survive restarts.
+ */
+@Service
+public class PdfFileIdCache {
+    private static final Logger logger = LoggerFactory.getLogger(PdfFileIdCache.class);
+
+    private final Map<String, String> fileIds;
+    private final PdfFileIdRepository repository;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public PdfFileIdCache(@Value("${bot.pdf.file-id-cache.max-entries:1000}") int maxEntries,
+                          ObjectProvider<PdfFileIdRepository> repository,
+                          MeterRegistry meterRegistry) {
+        this.fileIds = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.repository = repository.getIfAvailable();
+        logger.info("PDF file_id cache started: maxEntries={}, persistent={}", maxEntries, this.repository != null);
+
+        Gauge.builder("bot.pdf.file.id.cache.size", this, PdfFileIdCache::size)
+                .description("PDF file_ids held in memory")
+                .register(meterRegistry);
+        this.hits = Counter.builder("bot.pdf.file.id.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("bot.pdf.file.id.cache.requests").tag("result", "miss").register(meterRegistry);
+    }
+
+    /**
+     * Look up the file_id of a previously uploaded PDF
+     * @param contentHash SHA-256 of the PDF content
+     * @return The Telegram file_id or null if the PDF was never uploaded
+     */
+    public String get(String contentHash) {
+        String fileId;
+        synchronized (fileIds) {
+            fileId = fileIds.get(contentHash);
+        }
+        if (fileId == null && repository != null) {
+            try {
+                fileId = repository.findById(contentHash).map(PdfFileId::getFileId).orElse(null);
+                if (fileId != null) {
+                    synchronized (fileIds) {
+                        fileIds.put(contentHash, fileId);
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn("Error reading PDF file_id from database: {}", e.getMessage());
+            }
+        }
+        (fileId != null ? hits : misses).increment();
+        return fileId;
+    }
+
+    /**
+     * Remember the file_id Telegram assigned to an uploaded PDF
+     * @param contentHash SHA-256 of the PDF content
+     * @param fileId Telegram file_id from the SendDocument response
+     */
+    public void put(String contentHash, String fileId) {
+        synchronized (fileIds) {
+            fileIds.put(contentHash, fileId);
+        }
+        if (repository != null) {
+            try {
+                repository.save(new PdfFileId(contentHash, fileId));
+            } catch (Exception e) {
+                logger.warn("Error saving PDF file_id to database: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Forget a file_id that Telegram no longer accepts
+     * @param contentHash SHA-256 of the PDF content
+     */
+    public void evict(String contentHash) {
+        synchronized (fileIds) {
+            fileIds.remove(contentHash);
+        }
+        if (repository != null) {
+            try {
+                repository.deleteById(contentHash);
+            } catch (Exception e) {
+                logger.warn("Error deleting PDF file_id from database: {}", e.getMessage());
+            }
+        }
+    }
+
+    private int size() {
+        synchronized (fileIds) {
+            return fileIds.size();
+        }
+    }
+}
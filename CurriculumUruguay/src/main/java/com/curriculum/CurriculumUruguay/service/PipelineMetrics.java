@@ -0,0 +1,94 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Timers and counters for the stages an update goes through: receive, classify,
+ * file download, AI call, reply decode and send. Every stage is recorded on the same
+ * histogram tagged by stage, event type and outcome so percentiles can be compared.
+ */
+@Component
+public class PipelineMetrics {
+
+    public static final String STAGE_TIMER = "bot.pipeline.stage";
+    public static final String UPDATES_COUNTER = "bot.updates";
+
+    public static final String SUCCESS = "success";
+    public static final String ERROR = "error";
+    public static final String REJECTED = "rejected";
+    public static final String DUPLICATE = "duplicate";
+
+    private final MeterRegistry meterRegistry;
+
+    public PipelineMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return Sample to pass to {@link #stop} when the stage ends
+     */
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    /**
+     * Record a stage that started with {@link #start}
+     */
+    public void stop(Timer.Sample sample, String stage, String eventType, String outcome) {
+        sample.stop(stageTimer(stage, eventType, outcome));
+    }
+
+    /**
+     * Time a synchronous stage, exceptions are recorded with the error outcome and rethrown
+     */
+    public <T> T time(String stage, String eventType, Supplier<T> work) {
+        Timer.Sample sample = start();
+        try {
+            T result = work.get();
+            stop(sample, stage, eventType, SUCCESS);
+            return result;
+        } catch (RuntimeException e) {
+            stop(sample, stage, eventType, ERROR);
+            throw e;
+        }
+    }
+
+    /**
+     * Time an asynchronous stage from now until the future completes
+     * @return The same future, for chaining
+     */
+    public <T> CompletableFuture<T> time(String stage, String eventType, CompletableFuture<T> future) {
+        Timer.Sample sample = start();
+        future.whenComplete((result, error) -> stop(sample, stage, eventType, error == null ? SUCCESS : ERROR));
+        return future;
+    }
+
+    /**
+     * Count an update by channel and type once its handling finished or was rejected
+     */
+    public void countUpdate(String channel, String eventType, String outcome) {
+        Counter.builder(UPDATES_COUNTER)
+                .description("Inbound messages handled")
+                .tag("channel", channel)
+                .tag("event_type", eventType)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private Timer stageTimer(String stage, String eventType, String outcome) {
+        return Timer.builder(STAGE_TIMER)
+                .description("Latency of each stage of the update pipeline")
+                .tag("stage", stage)
+                .tag("event_type", eventType)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,153 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.AiReply;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Answers text messages whose reply doesn't depend on the conversation without
+ * calling the AI service: bot commands get configured static replies, and replies
+ * the agent marks as cacheable through their status (e.g. FAQ answers) are kept
+ * for the normalized question with a TTL and a size bound.
+ */
+@Service
+public class ResponseCache {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    /**
+     * Status of the replies to bot commands
+     */
+    public static final String COMMAND_STATUS = "command";
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final boolean enabled;
+    private final Set<String> cacheableStatuses;
+    private final int maxQuestionLength;
+    private final Map<String, AiReply> commands = new HashMap<>();
+    private final Cache<String, CachedReply> replies;
+
+    private final Counter commandHits;
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer saved;
+
+    public ResponseCache(@Value("${bot.response-cache.enabled:true}") boolean enabled,
+                         @Value("${bot.response-cache.max-entries:1000}") long maxEntries,
+                         @Value("${bot.response-cache.ttl:1h}") Duration ttl,
+                         @Value("${bot.response-cache.cacheable-statuses:faq,static}") String[] cacheableStatuses,
+                         @Value("${bot.response-cache.max-question-length:200}") int maxQuestionLength,
+                         @Value("${bot.responses.start:¡Hola! Soy tu asistente para crear tu curriculum. Cuéntame sobre tu experiencia, estudios y habilidades, o envíame una foto de tu CV actual.}") String startReply,
+                         @Value("${bot.responses.help:Escríbeme los datos de tu experiencia laboral, estudios y habilidades y voy armando tu curriculum. También puedes enviarme una foto de un CV existente. Cuando esté listo te lo envío en PDF.}") String helpReply,
+                         MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.cacheableStatuses = Set.of(cacheableStatuses);
+        this.maxQuestionLength = maxQuestionLength;
+        commands.put("/start", new AiReply(startReply, COMMAND_STATUS, null, null));
+        commands.put("/help", new AiReply(helpReply, COMMAND_STATUS, null, null));
+        this.replies = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, replies, "ai.responses");
+        this.commandHits = requests("command", meterRegistry);
+        this.hits = requests("hit", meterRegistry);
+        this.misses = requests("miss", meterRegistry);
+        Gauge.builder("bot.response.cache.hit.ratio", this, ResponseCache::hitRatio)
+                .description("Share of text messages answered without calling the AI service")
+                .register(meterRegistry);
+        this.saved = Timer.builder("bot.response.cache.saved")
+                .description("AI service latency avoided by answering from the cache")
+                .register(meterRegistry);
+        logger.info("Response cache started: enabled={}, cacheableStatuses={}", enabled, this.cacheableStatuses);
+    }
+
+    private static Counter requests(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("bot.response.cache.requests")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reply to a text message from the cache, or through the AI service on a miss
+     * @param text Message text
+     * @param aiCall Calls the AI service
+     * @return Future completed with the reply
+     */
+    public CompletableFuture<AiReply> reply(String text, Supplier<CompletableFuture<AiReply>> aiCall) {
+        String command = text.trim().split("[\\s@]", 2)[0].toLowerCase(Locale.ROOT);
+        AiReply commandReply = commands.get(command);
+        if (commandReply != null) {
+            commandHits.increment();
+            return CompletableFuture.completedFuture(commandReply);
+        }
+        if (!enabled || text.length() > maxQuestionLength) {
+            return aiCall.get();
+        }
+
+        String key = normalize(text);
+        CachedReply cached = replies.getIfPresent(key);
+        if (cached != null) {
+            hits.increment();
+            saved.record(cached.latencyNanos(), TimeUnit.NANOSECONDS);
+            return CompletableFuture.completedFuture(cached.reply());
+        }
+        misses.increment();
+
+        long startedAt = System.nanoTime();
+        return aiCall.get().thenApply(reply -> {
+            if (isCacheable(reply)) {
+                replies.put(key, new CachedReply(reply, System.nanoTime() - startedAt));
+            }
+            return reply;
+        });
+    }
+
+    /**
+     * Only text replies the agent marked as independent of the conversation are kept
+     */
+    private boolean isCacheable(AiReply reply) {
+        return reply != null && !reply.hasPdf() && !reply.hasCv() && reply.message() != null
+                && reply.status() != null && cacheableStatuses.contains(reply.status());
+    }
+
+    /**
+     * Questions that differ only in case, accents, punctuation or spacing share a key
+     */
+    static String normalize(String text) {
+        String withoutAccents = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(withoutAccents.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private double hitRatio() {
+        double answered = hits.count() + commandHits.count();
+        double total = answered + misses.count();
+        return total == 0 ? 0 : answered / total;
+    }
+
+    private record CachedReply(AiReply reply, long latencyNanos) {
+    }
+}
@@ -0,0 +1,206 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.SessionState;
+import com.curriculum.CurriculumUruguay.model.UserSession;
+import com.curriculum.CurriculumUruguay.repository.UserSessionRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+/**
+ * Per-user CV building state: current step, last status reported by the agent and
+ * last PDF sent. Sessions are served from a bounded in-memory cache. When the
+ * database is enabled, changes are written behind in batches by a background thread
+ * so message handling never waits on an insert, and cache misses are read from the
+ * database.
+ */
+@Service
+public class SessionStore {
+    private static final Logger logger = LoggerFactory.getLogger(SessionStore.class);
+
+    private final Cache<String, SessionState> sessions;
+    private final UserSessionRepository repository;
+
+    // Latest state of every session changed since the last flush
+    private final Map<String, SessionState> pending = new ConcurrentHashMap<>();
+    // Sessions this writer inserted. A change computed before its insert succeeded can
+    // still be pending with stored=false, so whether to update is decided at flush time
+    private final Cache<String, Boolean> written;
+    private final int batchSize;
+    private final ScheduledExecutorService writer;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final MeterRegistry meterRegistry;
+
+    public SessionStore(@Value("${bot.session.cache.max-entries:10000}") long maxEntries,
+                        @Value("${bot.session.cache.expire-after-access:2h}") Duration expireAfterAccess,
+                        @Value("${bot.session.write-behind.interval:1s}") Duration flushInterval,
+                        @Value("${bot.session.write-behind.batch-size:100}") int batchSize,
+                        ObjectProvider<UserSessionRepository> repository,
+                        MeterRegistry meterRegistry) {
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+        this.written = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .build();
+        this.repository = repository.getIfAvailable();
+        this.batchSize = batchSize;
+        this.meterRegistry = meterRegistry;
+
+        CaffeineCacheMetrics.monitor(meterRegistry, sessions, "sessions");
+        Gauge.builder("bot.session.pending", pending, Map::size)
+                .description("Session changes waiting to be written to the database")
+                .register(meterRegistry);
+
+        if (this.repository != null) {
+            this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "session-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = flushInterval.toMillis();
+            writer.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.writer = null;
+        }
+        logger.info("Session store started: maxEntries={}, persistent={}", maxEntries, this.repository != null);
+    }
+
+    /**
+     * Get the session of a user, reading it from the database if it isn't cached
+     * @param key Conversation key
+     * @return The session, empty for users seen for the first time
+     */
+    public SessionState get(String key) {
+        return sessions.get(key, this::load);
+    }
+
+    /**
+     * Change the session of a user. The new state is visible immediately and
+     * written to the database later.
+     * @param key Conversation key
+     * @param change Function from the current state to the new one
+     * @return The new state
+     */
+    public SessionState update(String key, UnaryOperator<SessionState> change) {
+        SessionState updated = sessions.asMap().compute(key,
+                (k, current) -> change.apply(current != null ? current : load(k)));
+        if (writer != null) {
+            pending.put(key, updated);
+            if (pending.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+                writer.execute(this::flush);
+            }
+        }
+        return updated;
+    }
+
+    private SessionState load(String key) {
+        // A change may be waiting to be written after the session left the cache
+        SessionState unwritten = pending.get(key);
+        if (unwritten != null) {
+            return unwritten;
+        }
+        if (repository == null) {
+            return SessionState.empty(key, false);
+        }
+        try {
+            return repository.findById(key).map(UserSession::toState).orElseGet(() -> SessionState.empty(key, false));
+        } catch (Exception e) {
+            logger.warn("Error reading session from database: {}", e.getMessage());
+            // The row may exist, so the next write has to check for it
+            return SessionState.empty(key, true);
+        }
+    }
+
+    /**
+     * Write pending changes to the database in batches. Runs on the writer thread,
+     * changes of a failed batch are kept and retried on the next flush.
+     */
+    void flush() {
+        flushRequested.set(false);
+        if (repository == null || pending.isEmpty()) {
+            return;
+        }
+
+        List<SessionState> batch = new ArrayList<>(batchSize);
+        for (Map.Entry<String, SessionState> entry : pending.entrySet()) {
+            // Only take the entry if it didn't change meanwhile, newer changes stay pending
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                SessionState state = entry.getValue();
+                batch.add(written.getIfPresent(state.key()) != null ? state.asStored() : state);
+            }
+            if (batch.size() == batchSize) {
+                write(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    private void write(List<SessionState> batch) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = PipelineMetrics.SUCCESS;
+        try {
+            repository.saveAll(batch.stream().map(UserSession::new).toList());
+            // Later changes of these sessions update the rows instead of inserting them
+            for (SessionState state : batch) {
+                written.put(state.key(), Boolean.TRUE);
+                sessions.asMap().computeIfPresent(state.key(), (k, current) -> current.asStored());
+                pending.computeIfPresent(state.key(), (k, current) -> current.asStored());
+            }
+        } catch (Exception e) {
+            outcome = PipelineMetrics.ERROR;
+            logger.warn("Error writing {} sessions to database: {}", batch.size(), e.getMessage());
+            for (SessionState state : batch) {
+                pending.putIfAbsent(state.key(), state);
+            }
+        }
+        sample.stop(Timer.builder("bot.session.write")
+                .description("Latency of batched session writes")
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+
+    /**
+     * @return Number of sessions with changes not yet written
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+        // Write what is left so sessions survive the restart
+        flush();
+    }
+}
@@ -0,0 +1,300 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.util.MessageText;
+import com.curriculum.CurriculumUruguay.util.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Outbound queue for everything the bot sends to Telegram.
+ * Enforces Telegram's global and per-chat rate limits with token buckets, keeps
+ * messages of one chat in order, retries after the delay Telegram asks for on
+ * 429 responses and sends to different chats in parallel with executeAsync.
+ * All queue state is confined to a single scheduler thread.
+ */
+@Service
+public class TelegramSender {
+    private static final Logger logger = LoggerFactory.getLogger(TelegramSender.class);
+
+    /**
+     * Maximum length of a Telegram text message
+     */
+    public static final int MAX_MESSAGE_LENGTH = 4096;
+
+    private final ObjectProvider<DefaultAbsSender> botProvider;
+    private final double chatBurst;
+    private final double chatRate;
+    private final int maxRetries;
+
+    private final TokenBucket globalBucket;
+    private final Map<Long, ChatQueue> chats = new LinkedHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> wakeup;
+    private long wakeupAt = Long.MAX_VALUE;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final MeterRegistry meterRegistry;
+    private final Counter rateLimited;
+    private final Counter retryAfter;
+
+    public TelegramSender(ObjectProvider<DefaultAbsSender> botProvider,
+                          @Value("${telegram.sender.global-rate:30}") double globalRate,
+                          @Value("${telegram.sender.chat-rate:1}") double chatRate,
+                          @Value("${telegram.sender.chat-burst:3}") double chatBurst,
+                          @Value("${telegram.sender.max-retries:5}") int maxRetries,
+                          MeterRegistry meterRegistry) {
+        this.botProvider = botProvider;
+        this.chatBurst = chatBurst;
+        this.chatRate = chatRate;
+        this.maxRetries = maxRetries;
+        this.globalBucket = new TokenBucket(globalRate, globalRate, System.nanoTime());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "telegram-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("bot.telegram.send.queue.depth", queued, AtomicInteger::get)
+                .description("Telegram API calls waiting to be sent")
+                .register(meterRegistry);
+        this.rateLimited = Counter.builder("bot.telegram.send.throttled").tag("reason", "rate_limit")
+                .description("Sends delayed by the local rate limits")
+                .register(meterRegistry);
+        this.retryAfter = Counter.builder("bot.telegram.send.throttled").tag("reason", "retry_after")
+                .description("Sends rescheduled because Telegram answered 429")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue a text message, messages longer than Telegram's limit are split in order
+     * @param chatId Chat to send to
+     * @param text Message text
+     * @return Future completed with the last message sent, or failed with the first part
+     * that couldn't be sent, the parts after it are dropped
+     */
+    public CompletableFuture<Message> sendText(Long chatId, String text) {
+        CompletableFuture<Message> sent = CompletableFuture.completedFuture(null);
+        for (String part : MessageText.split(text, MAX_MESSAGE_LENGTH)) {
+            SendMessage sendMessage = SendMessage.builder()
+                    .chatId(chatId.toString())
+                    .text(part)
+                    .build();
+            sent = sent.thenCompose(previous -> execute(chatId, sendMessage));
+        }
+        return sent;
+    }
+
+    /**
+     * Queue an API call for a chat
+     * @param chatId Chat the call belongs to, calls of the same chat are sent in order
+     * @param method Telegram API method
+     * @return Future completed with Telegram's answer
+     */
+    public <T extends Serializable> CompletableFuture<T> execute(Long chatId, BotApiMethod<T> method) {
+        return submit(chatId, method.getMethod(), () -> botProvider.getObject().executeAsync(method));
+    }
+
+    /**
+     * Queue a document upload
+     * @param chatId Chat to send to
+     * @param document Builds the request, called again for every attempt so streams can be reopened
+     * @return Future completed with the message sent
+     */
+    public CompletableFuture<Message> sendDocument(Long chatId, Supplier<SendDocument> document) {
+        return submit(chatId, "sendDocument", () -> botProvider.getObject().executeAsync(document.get()));
+    }
+
+    private <T> CompletableFuture<T> submit(Long chatId, String method, ApiCall<T> call) {
+        Job<T> job = new Job<>(method, call);
+        queued.incrementAndGet();
+        scheduler.execute(() -> {
+            chats.computeIfAbsent(chatId, id -> new ChatQueue(chatBurst, chatRate)).jobs.addLast(job);
+            drain();
+        });
+        return job.result;
+    }
+
+    /**
+     * Start every job whose chat and the global bucket allow it, then sleep until
+     * the earliest moment another one could start
+     */
+    private void drain() {
+        long now = System.nanoTime();
+        long nextAttempt = Long.MAX_VALUE;
+        List<Long> sent = new ArrayList<>();
+
+        Iterator<Map.Entry<Long, ChatQueue>> iterator = chats.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, ChatQueue> entry = iterator.next();
+            ChatQueue chat = entry.getValue();
+            if (chat.inFlight) {
+                continue;
+            }
+            if (chat.jobs.isEmpty()) {
+                if (chat.bucket.isFull(now)) {
+                    iterator.remove();
+                }
+                continue;
+            }
+            if (now < chat.notBefore) {
+                nextAttempt = Math.min(nextAttempt, chat.notBefore);
+                continue;
+            }
+            long wait = Math.max(chat.bucket.nanosUntilAvailable(now), globalBucket.nanosUntilAvailable(now));
+            if (wait > 0) {
+                Job<?> head = chat.jobs.peekFirst();
+                if (!head.throttled) {
+                    head.throttled = true;
+                    rateLimited.increment();
+                }
+                nextAttempt = Math.min(nextAttempt, now + wait);
+                continue;
+            }
+            chat.bucket.consume();
+            globalBucket.consume();
+            start(chat, chat.jobs.peekFirst());
+            sent.add(entry.getKey());
+        }
+
+        // Chats that just sent move to the back so others get the next global tokens
+        for (Long chatId : sent) {
+            chats.put(chatId, chats.remove(chatId));
+        }
+        scheduleWakeup(nextAttempt, now);
+    }
+
+    private <T> void start(ChatQueue chat, Job<T> job) {
+        chat.inFlight = true;
+        long startedAt = System.nanoTime();
+        CompletableFuture<T> call;
+        try {
+            call = job.call.start();
+        } catch (TelegramApiException | RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((result, error) -> scheduler.execute(() -> complete(chat, job, result, error, startedAt)));
+    }
+
+    private <T> void complete(ChatQueue chat, Job<T> job, T result, Throwable error, long startedAt) {
+        chat.inFlight = false;
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+
+        if (cause instanceof TelegramApiRequestException requestError
+                && Integer.valueOf(429).equals(requestError.getErrorCode())
+                && job.attempts < maxRetries) {
+            int retryAfterSeconds = requestError.getParameters() != null && requestError.getParameters().getRetryAfter() != null
+                    ? requestError.getParameters().getRetryAfter() : 1;
+            job.attempts++;
+            chat.notBefore = System.nanoTime() + TimeUnit.SECONDS.toNanos(retryAfterSeconds);
+            retryAfter.increment();
+            logger.warn("Telegram rate limit hit on {}, retrying in {}s (attempt {})", job.method, retryAfterSeconds, job.attempts);
+        } else {
+            chat.jobs.pollFirst();
+            queued.decrementAndGet();
+            Timer.builder("bot.telegram.send")
+                    .description("Latency of Telegram API calls")
+                    .tag("method", job.method)
+                    .tag("outcome", cause == null ? "success" : "error")
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            if (cause == null) {
+                job.result.complete(result);
+            } else {
+                logger.error("Error executing {}: {}", job.method, cause.getMessage());
+                job.result.completeExceptionally(cause);
+            }
+        }
+        drain();
+    }
+
+    private void scheduleWakeup(long at, long now) {
+        if (at == Long.MAX_VALUE || (wakeup != null && !wakeup.isDone() && wakeupAt <= at)) {
+            return;
+        }
+        if (wakeup != null) {
+            wakeup.cancel(false);
+        }
+        wakeupAt = at;
+        wakeup = scheduler.schedule(this::wakeUp, at - now, TimeUnit.NANOSECONDS);
+    }
+
+    private void wakeUp() {
+        // This wakeup is running, the drain must be free to schedule the next one
+        wakeup = null;
+        wakeupAt = Long.MAX_VALUE;
+        drain();
+    }
+
+    /**
+     * @return Number of calls waiting or in flight
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private static final class ChatQueue {
+        private final ArrayDeque<Job<?>> jobs = new ArrayDeque<>();
+        private final TokenBucket bucket;
+        private boolean inFlight;
+        private long notBefore = Long.MIN_VALUE;
+
+        private ChatQueue(double burst, double rate) {
+            this.bucket = new TokenBucket(burst, rate, System.nanoTime());
+        }
+    }
+
+    @FunctionalInterface
+    private interface ApiCall<T> {
+        CompletableFuture<T> start() throws TelegramApiException;
+    }
+
+    private static final class Job<T> {
+        private final String method;
+        private final ApiCall<T> call;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private int attempts;
+        private boolean throttled;
+
+        private Job(String method, ApiCall<T> call) {
+            this.method = method;
+            this.call = call;
+        }
+    }
+}
@@ -3,14 +3,11 @@ package com.curriculum.CurriculumUruguay.service;
 import com.curriculum.CurriculumUruguay.Bot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.telegram.telegrambots.meta.api.methods.GetFile;
-import org.telegram.telegrambots.meta.api.objects.File;
-import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.api.objects.PhotoSize;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -22,6 +19,9 @@ public class TelegramService {
     private static final Logger logger = LoggerFactory.getLogger(TelegramService.class);
     
     private final Bot telegramBot;
+
+    @Value("${telegram.api.url:https://api.telegram.org}")
+    private String apiUrl;
     
     public TelegramService(Bot telegramBot) {
         this.telegramBot = telegramBot;
@@ -46,13 +46,8 @@ public class TelegramService {
     public void sendPdf(Long userId, byte[] pdfData, String filename) {
         logger.info("Sending PDF to user {}: {}", userId, filename);
         
-        try (InputStream inputStream = new ByteArrayInputStream(pdfData)) {
-            InputFile document = new InputFile(inputStream, filename);
-            telegramBot.sendPdf(userId, document);
-        } catch (IOException e) {
-            logger.error("Error sending PDF: {}", e.getMessage(), e);
-            throw new RuntimeException("Error sending PDF", e);
-        }
+        // The upload is queued, the bytes are read again on every attempt
+        telegramBot.sendPdfWithCaption(userId, pdfData, filename, "Aquí está tu curriculum");
     }
     
     /**
@@ -75,7 +70,7 @@ public class TelegramService {
             String filePath = telegramBot.getFile(fileId);
             
             // Get the file URL
-            String fileUrl = "https://api.telegram.org/file/bot" + telegramBot.getBotToken() + "/" + filePath;
+            String fileUrl = apiUrl + "/file/bot" + telegramBot.getBotToken() + "/" + filePath;
             
             // Download the file
             URL url = new URL(fileUrl);
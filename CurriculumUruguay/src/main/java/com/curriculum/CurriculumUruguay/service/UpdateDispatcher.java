@@ -0,0 +1,264 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs update handling off the Telegram polling thread.
+ * Work for the same user is executed strictly in arrival order, while different
+ * users are processed in parallel on a bounded worker pool.
+ */
+@Service
+public class UpdateDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(UpdateDispatcher.class);
+
+    private final int maxQueuedPerUser;
+    private final int maxQueuedTotal;
+
+    private final Map<Object, UserQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger queuedTotal = new AtomicInteger();
+    private final ExecutorService executor;
+    private final Semaphore workerPermits;
+
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    public UpdateDispatcher(@Value("${bot.dispatcher.max-workers:16}") int maxWorkers,
+                            @Value("${bot.dispatcher.max-queued-per-user:20}") int maxQueuedPerUser,
+                            @Value("${bot.dispatcher.max-queued-total:1000}") int maxQueuedTotal,
+                            @Value("${bot.dispatcher.virtual-threads:true}") boolean virtualThreads,
+                            MeterRegistry meterRegistry) {
+        this.maxQueuedPerUser = maxQueuedPerUser;
+        this.maxQueuedTotal = maxQueuedTotal;
+        this.workerPermits = new Semaphore(maxWorkers);
+
+        ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+        this.executor = virtualExecutor != null ? virtualExecutor
+                : Executors.newFixedThreadPool(maxWorkers, namedThreadFactory());
+        logger.info("Update dispatcher started: maxWorkers={}, virtualThreads={}", maxWorkers, virtualExecutor != null);
+
+        Gauge.builder("bot.dispatcher.queue.depth", queuedTotal, AtomicInteger::get)
+                .description("Updates waiting or running in the dispatcher")
+                .register(meterRegistry);
+        Gauge.builder("bot.dispatcher.active.users", queues, Map::size)
+                .description("Users with pending updates")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("bot.dispatcher.wait")
+                .description("Time an update waits in its user queue before being handled")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("bot.dispatcher.rejected")
+                .description("Updates rejected because the dispatcher was overloaded")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue a task for a user
+     * @param userId User the task belongs to, tasks of the same user never run concurrently.
+     *               Any key with value equality, e.g. a Telegram user id or a conversation key
+     * @param task Work to run
+     * @return false if the task was rejected because the queues are full
+     */
+    public boolean dispatch(Object userId, Runnable task) {
+        return dispatchAsync(userId, () -> {
+            task.run();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Queue an asynchronous task for a user. The next task of the same user starts
+     * only once the stage returned by this one completes, but no worker thread is
+     * held while the stage is pending.
+     * @param userId User the task belongs to
+     * @param task Work to start, returning the stage that completes when the work is done
+     * @return false if the task was rejected because the queues are full
+     */
+    public boolean dispatchAsync(Object userId, Supplier<? extends CompletionStage<?>> task) {
+        if (queuedTotal.incrementAndGet() > maxQueuedTotal) {
+            queuedTotal.decrementAndGet();
+            return reject(userId, "total queue limit reached");
+        }
+
+        QueuedTask queuedTask = new QueuedTask(task, System.nanoTime());
+        boolean[] accepted = new boolean[1];
+        boolean[] startDrain = new boolean[1];
+        queues.compute(userId, (id, queue) -> {
+            if (queue == null) {
+                queue = new UserQueue();
+            }
+            if (queue.tasks.size() < maxQueuedPerUser) {
+                queue.tasks.addLast(queuedTask);
+                accepted[0] = true;
+                if (!queue.running) {
+                    queue.running = true;
+                    startDrain[0] = true;
+                }
+            }
+            return queue;
+        });
+
+        if (!accepted[0]) {
+            queuedTotal.decrementAndGet();
+            return reject(userId, "user queue limit reached");
+        }
+        if (startDrain[0]) {
+            runNext(userId);
+        }
+        return true;
+    }
+
+    /**
+     * Start the next queued task of a user on the worker pool. When its stage completes
+     * the following task is started; the queue is removed atomically once drained so
+     * idle users don't keep memory.
+     */
+    private void runNext(Object userId) {
+        QueuedTask next = poll(userId);
+        if (next == null) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                waitTimer.record(System.nanoTime() - next.enqueuedAt, TimeUnit.NANOSECONDS);
+                CompletionStage<?> stage = start(userId, next);
+                stage.whenComplete((result, error) -> {
+                    if (error != null) {
+                        logger.error("Unhandled error processing update for user {}: {}", userId, error.getMessage(), error);
+                    }
+                    queuedTotal.decrementAndGet();
+                    runNext(userId);
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down: drop what the user still has queued, nothing will run it
+            int dropped = 1 + clear(userId);
+            queuedTotal.addAndGet(-dropped);
+            logger.warn("Dispatcher shut down, dropped {} updates for user {}", dropped, userId);
+        }
+    }
+
+    /**
+     * Run the synchronous part of a task while holding a worker permit
+     */
+    private CompletionStage<?> start(Object userId, QueuedTask next) {
+        try {
+            workerPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        try {
+            CompletionStage<?> stage = next.task.get();
+            return stage != null ? stage : CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            workerPermits.release();
+        }
+    }
+
+    private QueuedTask poll(Object userId) {
+        QueuedTask[] next = new QueuedTask[1];
+        queues.compute(userId, (id, queue) -> {
+            if (queue == null) {
+                return null;
+            }
+            next[0] = queue.tasks.pollFirst();
+            if (next[0] == null) {
+                queue.running = false;
+                return null;
+            }
+            return queue;
+        });
+        return next[0];
+    }
+
+    /**
+     * Remove the queue of a user
+     * @return Number of tasks it still held
+     */
+    private int clear(Object userId) {
+        int[] dropped = new int[1];
+        queues.computeIfPresent(userId, (id, queue) -> {
+            dropped[0] = queue.tasks.size();
+            return null;
+        });
+        return dropped[0];
+    }
+
+    private boolean reject(Object userId, String reason) {
+        rejectedCounter.increment();
+        logger.warn("Rejecting update for user {}: {}", userId, reason);
+        return false;
+    }
+
+    /**
+     * @return Number of updates currently waiting or running
+     */
+    public int getQueuedTotal() {
+        return queuedTotal.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Create a virtual thread per task executor when running on Java 21 or newer.
+     * Looked up reflectively so the project still compiles for Java 17.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory namedThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "update-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class UserQueue {
+        private final ArrayDeque<QueuedTask> tasks = new ArrayDeque<>();
+        private boolean running;
+    }
+
+    private record QueuedTask(Supplier<? extends CompletionStage<?>> task, long enqueuedAt) {
+    }
+}
@@ -0,0 +1,62 @@
+package com.curriculum.CurriculumUruguay.util;
+
+/**
+ * Concurrency limit adjusted by additive increase, multiplicative decrease. The
+ * limit grows by about one per round trip while calls complete without congestion
+ * and the limit is in use, and shrinks by the backoff ratio when a call reports
+ * congestion. Only one decrease happens per round trip: calls started before the
+ * last decrease ran under the old limit and don't shrink it again. Thread safe.
+ */
+public class AimdLimit {
+    private final double minLimit;
+    private final double maxLimit;
+    private final double backoffRatio;
+
+    private double limit;
+    private long lastDecreaseAt;
+    private boolean decreased;
+
+    /**
+     * @param initialLimit Limit until the first samples arrive
+     * @param minLimit Lowest limit, calls are never starved completely
+     * @param maxLimit Highest limit
+     * @param backoffRatio Factor, between 0 and 1, applied to the limit on congestion
+     */
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+        if (minLimit < 1 || maxLimit < minLimit || backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Invalid AIMD limit: min " + minLimit + ", max " + maxLimit
+                    + ", backoff ratio " + backoffRatio);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * @return Calls allowed in flight at once
+     */
+    public synchronized int get() {
+        return (int) limit;
+    }
+
+    /**
+     * Record a completed call
+     * @param startedAt When the call started, in nanoseconds
+     * @param now Current time in nanoseconds
+     * @param congested true if the call was slow, rejected or failed
+     * @param inFlight Calls in flight when it started, including itself
+     */
+    public synchronized void onSample(long startedAt, long now, boolean congested, int inFlight) {
+        if (congested) {
+            if (!decreased || startedAt - lastDecreaseAt > 0) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecreaseAt = now;
+                decreased = true;
+            }
+        } else if (inFlight * 2 >= limit) {
+            // A limit that isn't used isn't grown, it would allow a burst nobody measured
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable consistent hash ring. Every node is placed on the ring at several
+ * points (virtual nodes) so keys spread evenly, and adding or removing a node
+ * only moves the keys of the ring segments it takes over or gives back.
+ */
+public final class ConsistentHashRing<T> {
+    private final long[] points;
+    private final Object[] owners;
+    private final List<T> nodes;
+
+    /**
+     * @param nodes Nodes of the ring, identified by their string form
+     * @param virtualNodes Points per node
+     */
+    public ConsistentHashRing(Collection<T> nodes, int virtualNodes) {
+        this.nodes = List.copyOf(nodes);
+        int size = this.nodes.size() * virtualNodes;
+        long[] unsortedPoints = new long[size];
+        Integer[] order = new Integer[size];
+        int i = 0;
+        for (T node : this.nodes) {
+            for (int v = 0; v < virtualNodes; v++, i++) {
+                unsortedPoints[i] = hash(node + "#" + v);
+                order[i] = i;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(unsortedPoints[a], unsortedPoints[b]));
+        this.points = new long[size];
+        this.owners = new Object[size];
+        for (int p = 0; p < size; p++) {
+            points[p] = unsortedPoints[order[p]];
+            owners[p] = this.nodes.get(order[p] / virtualNodes);
+        }
+    }
+
+    /**
+     * @return Node owning the key: the first point at or after the key's hash, wrapping around
+     * @throws IllegalStateException if the ring has no nodes
+     */
+    @SuppressWarnings("unchecked")
+    public T nodeFor(String key) {
+        if (points.length == 0) {
+            throw new IllegalStateException("The ring has no nodes");
+        }
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return (T) owners[index == points.length ? 0 : index];
+    }
+
+    public List<T> getNodes() {
+        return nodes;
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /**
+     * 64-bit FNV-1a followed by the MurmurHash3 finalizer, so keys differing in the
+     * last characters, like consecutive chat ids, land far apart
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
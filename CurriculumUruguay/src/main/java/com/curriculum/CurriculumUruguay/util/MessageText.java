@@ -0,0 +1,41 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Text handling shared by the channels' outbound messages
+ */
+public final class MessageText {
+
+    private MessageText() {
+    }
+
+    /**
+     * Split a text into parts no longer than the limit, preferring line and word boundaries
+     * @param text Text to split
+     * @param maxLength Maximum length of each part
+     * @return Parts in order
+     */
+    public static List<String> split(String text, int maxLength) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        while (text.length() - start > maxLength) {
+            int end = start + maxLength;
+            int cut = text.lastIndexOf('\n', end - 1);
+            if (cut <= start) {
+                cut = text.lastIndexOf(' ', end - 1);
+            }
+            if (cut <= start) {
+                cut = Character.isHighSurrogate(text.charAt(end - 1)) ? end - 1 : end;
+                parts.add(text.substring(start, cut));
+                start = cut;
+            } else {
+                parts.add(text.substring(start, cut));
+                start = cut + 1;
+            }
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+}
@@ -0,0 +1,95 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer.
+ * Every slot carries a sequence number telling producers and the consumer whose
+ * turn it is, so producers only contend on a compare-and-set of the tail and
+ * never block: when the buffer is full {@link #offer(Object)} fails immediately.
+ */
+public class MpscRingBuffer<T> {
+    private final int mask;
+    private final AtomicReferenceArray<T> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // Only read and written by the consumer thread, published through the sequences
+    private long head;
+    private final AtomicLong consumed = new AtomicLong();
+
+    /**
+     * @param capacity Number of slots, rounded up to a power of two
+     */
+    public MpscRingBuffer(int capacity) {
+        if (capacity < 2 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 2 and 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add an element without blocking, safe to call from any thread
+     * @return false if the buffer is full
+     */
+    public boolean offer(T element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                // The consumer hasn't freed this slot yet
+                return false;
+            }
+            // Another producer took this position, retry with the new tail
+        }
+    }
+
+    /**
+     * Remove up to max elements in order, only called by the consumer thread
+     * @return Number of elements passed to the consumer
+     */
+    public int drain(Consumer<? super T> consumer, int max) {
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                // Empty, or a producer claimed the slot but hasn't published it yet
+                break;
+            }
+            T element = elements.get(index);
+            elements.lazySet(index, null);
+            sequences.set(index, head + mask + 1);
+            head++;
+            drained++;
+            consumer.accept(element);
+        }
+        consumed.lazySet(head);
+        return drained;
+    }
+
+    /**
+     * @return Approximate number of elements waiting
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - consumed.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
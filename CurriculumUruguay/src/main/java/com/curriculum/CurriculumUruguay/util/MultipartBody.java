@@ -0,0 +1,101 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Builds multipart/form-data request bodies for the java.net.http client.
+ * File parts given as a stream are not buffered, they are read in small chunks
+ * while the request is being sent.
+ */
+public class MultipartBody {
+    private final String boundary = "----CurriculumUruguay" + UUID.randomUUID().toString().replace("-", "");
+    private final List<HttpRequest.BodyPublisher> parts = new ArrayList<>();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /**
+     * Add a text form field
+     * @param name Field name
+     * @param value Field value
+     * @return This builder
+     */
+    public MultipartBody addField(String name, String value) {
+        write("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"\r\n"
+                + "Content-Type: text/plain; charset=UTF-8\r\n\r\n");
+        write(value);
+        write("\r\n");
+        return this;
+    }
+
+    /**
+     * Add a file part
+     * @param name Field name
+     * @param filename Filename reported to the server
+     * @param contentType Content type of the file
+     * @param data File content
+     * @return This builder
+     */
+    public MultipartBody addFile(String name, String filename, String contentType, byte[] data) {
+        writeFileHeader(name, filename, contentType);
+        pending.writeBytes(data);
+        write("\r\n");
+        return this;
+    }
+
+    /**
+     * Add a file part that is streamed while the request is sent
+     * @param name Field name
+     * @param filename Filename reported to the server
+     * @param contentType Content type of the file
+     * @param data Opens the file content, called once when the body is sent
+     * @return This builder
+     */
+    public MultipartBody addFile(String name, String filename, String contentType, Supplier<? extends InputStream> data) {
+        writeFileHeader(name, filename, contentType);
+        flushPending();
+        parts.add(HttpRequest.BodyPublishers.ofInputStream(data));
+        write("\r\n");
+        return this;
+    }
+
+    /**
+     * @return Value for the Content-Type header of the request
+     */
+    public String getContentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    /**
+     * @return Body publisher with all parts and the closing boundary
+     */
+    public HttpRequest.BodyPublisher build() {
+        write("--" + boundary + "--\r\n");
+        flushPending();
+        return parts.size() == 1 ? parts.get(0)
+                : HttpRequest.BodyPublishers.concat(parts.toArray(new HttpRequest.BodyPublisher[0]));
+    }
+
+    private void writeFileHeader(String name, String filename, String contentType) {
+        write("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: " + contentType + "\r\n\r\n");
+    }
+
+    private void flushPending() {
+        if (pending.size() > 0) {
+            parts.add(HttpRequest.BodyPublishers.ofByteArray(pending.toByteArray()));
+            pending.reset();
+        }
+    }
+
+    private void write(String text) {
+        pending.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,98 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Regular and bold font of rendered documents. Either the standard Helvetica,
+ * which every PDF reader has and is never embedded, or a TrueType pair read once
+ * and parsed once per rendering thread, of which each document embeds only the
+ * glyphs it uses. Fonts aren't thread safe, so they aren't shared between threads;
+ * rendering runs on a small fixed pool, the copies are few.
+ */
+public final class PdfFonts {
+    private final byte[] regularTtf;
+    private final byte[] boldTtf;
+    private final ThreadLocal<TrueTypeFont[]> parsed;
+    // Looking up the system font behind Helvetica is slow, and logs a warning when it isn't installed
+    private final ThreadLocal<Loaded> standard;
+
+    private PdfFonts(byte[] regularTtf, byte[] boldTtf) {
+        this.regularTtf = regularTtf;
+        this.boldTtf = boldTtf;
+        if (regularTtf == null) {
+            this.parsed = null;
+            this.standard = ThreadLocal.withInitial(() -> new Loaded(new PDType1Font(Standard14Fonts.FontName.HELVETICA),
+                    new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD)));
+        } else {
+            this.parsed = ThreadLocal.withInitial(() -> new TrueTypeFont[] {parse(this.regularTtf), parse(this.boldTtf)});
+            this.standard = null;
+        }
+    }
+
+    /**
+     * @return Helvetica and Helvetica Bold, not embedded
+     */
+    public static PdfFonts standard() {
+        return new PdfFonts(null, null);
+    }
+
+    /**
+     * @param regular TrueType file of the regular font
+     * @param bold TrueType file of the bold font
+     * @return The fonts, subsets embedded in every document
+     */
+    public static PdfFonts trueType(Path regular, Path bold) throws IOException {
+        byte[] regularTtf = Files.readAllBytes(regular);
+        byte[] boldTtf = Files.readAllBytes(bold);
+        // Fail on startup rather than on the first document
+        parse(regularTtf).close();
+        parse(boldTtf).close();
+        return new PdfFonts(regularTtf, boldTtf);
+    }
+
+    /**
+     * @return Fonts ready to be used in a document
+     */
+    public Loaded load(PDDocument document) throws IOException {
+        if (standard != null) {
+            // Not embedded, the same instances serve every document
+            return standard.get();
+        }
+        TrueTypeFont[] fonts = parsed.get();
+        return new Loaded(PDType0Font.load(document, fonts[0], true), PDType0Font.load(document, fonts[1], true));
+    }
+
+    /**
+     * @return true if the fonts are embedded in every document
+     */
+    public boolean isEmbedded() {
+        return parsed != null;
+    }
+
+    private static TrueTypeFont parse(byte[] ttf) {
+        try {
+            return new TTFParser().parse(new RandomAccessReadBuffer(ttf));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param regular Font of body text
+     * @param bold Font of names, headings and titles
+     */
+    public record Loaded(PDFont regular, PDFont bold) {
+    }
+}
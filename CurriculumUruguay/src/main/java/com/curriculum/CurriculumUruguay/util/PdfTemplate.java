@@ -0,0 +1,428 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Single column document template rendered to PDF from a record. The template is
+ * compiled once: its directives are parsed and its {field} placeholders resolved
+ * to record accessors, so an unknown field fails on startup and rendering only
+ * reads values and lays out text. Thread safe once compiled.
+ * <p>
+ * One directive per line, lines starting with # are comments:
+ * <pre>
+ * bold &lt;size&gt; &lt;text&gt;               bold text, wrapped to the page width
+ * text &lt;size&gt; &lt;text&gt;               regular text, newlines in values start a paragraph
+ * muted &lt;size&gt; &lt;text&gt;              gray regular text
+ * join &lt;size&gt; &lt;separator&gt; &lt;field&gt;... the non empty fields on one line
+ * section &lt;field&gt; &lt;title&gt;          heading with a rule, only if the field isn't empty
+ * each &lt;field&gt; ... end               the directives in between for every item of a list of records
+ * bullets &lt;size&gt; &lt;field&gt;            a bullet per item of a list of strings
+ * space &lt;points&gt;                    vertical space
+ * </pre>
+ * A line with placeholders is skipped when all of them are empty.
+ */
+public final class PdfTemplate {
+
+    private static final float MARGIN = 56;
+    private static final float LINE_SPACING = 1.3f;
+    private static final float[] MUTED = {0.4f, 0.4f, 0.4f};
+    private static final float[] ACCENT = {0.12f, 0.25f, 0.45f};
+    private static final float[] BLACK = {0, 0, 0};
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{(\\w+)}");
+
+    private final List<Element> elements;
+
+    private PdfTemplate(List<Element> elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * @param source Template directives
+     * @param type Record the placeholders are resolved against
+     * @throws IllegalArgumentException if a directive or a field is invalid
+     */
+    public static PdfTemplate compile(String source, Class<? extends Record> type) {
+        Deque<List<Element>> blocks = new ArrayDeque<>();
+        Deque<Class<?>> scopes = new ArrayDeque<>();
+        Deque<Method> lists = new ArrayDeque<>();
+        blocks.push(new ArrayList<>());
+        scopes.push(type);
+
+        String[] lines = source.split("\\R");
+        for (int number = 1; number <= lines.length; number++) {
+            String line = lines[number - 1].strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] words = line.split("\\s+", 3);
+            Class<?> scope = scopes.peek();
+            try {
+                switch (words[0]) {
+                    case "bold":
+                    case "text":
+                    case "muted":
+                        blocks.peek().add(new Text(words[0].equals("bold"), words[0].equals("muted") ? MUTED : BLACK,
+                                size(words[1]), segments(scope, argument(words, 2))));
+                        break;
+                    case "join": {
+                        String[] fields = argument(words, 2).split("\\s+");
+                        Method[] accessors = new Method[fields.length - 1];
+                        for (int i = 1; i < fields.length; i++) {
+                            accessors[i - 1] = accessor(scope, fields[i]);
+                        }
+                        blocks.peek().add(new Join(size(words[1]), " " + fields[0] + " ", accessors));
+                        break;
+                    }
+                    case "section":
+                        blocks.peek().add(new Section(accessor(scope, words[1]), argument(words, 2)));
+                        break;
+                    case "bullets":
+                        blocks.peek().add(new Bullets(size(words[1]), accessor(scope, argument(words, 2))));
+                        break;
+                    case "space":
+                        blocks.peek().add(new Space(size(words[1])));
+                        break;
+                    case "each": {
+                        Method list = accessor(scope, words[1]);
+                        lists.push(list);
+                        scopes.push(itemType(list));
+                        blocks.push(new ArrayList<>());
+                        break;
+                    }
+                    case "end":
+                        if (lists.isEmpty()) {
+                            throw new IllegalArgumentException("end without each");
+                        }
+                        List<Element> body = blocks.pop();
+                        scopes.pop();
+                        blocks.peek().add(new Each(lists.pop(), body));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown directive " + words[0]);
+                }
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid template line " + number + " '" + line + "': " + e.getMessage(), e);
+            }
+        }
+        if (!lists.isEmpty()) {
+            throw new IllegalArgumentException("Invalid template: each without end");
+        }
+        return new PdfTemplate(List.copyOf(blocks.pop()));
+    }
+
+    /**
+     * Render a document and write it
+     * @param data Record of the type the template was compiled for
+     * @param fonts Fonts of the document
+     * @param out Receives the PDF, not closed
+     */
+    public void render(Object data, PdfFonts fonts, OutputStream out) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            Layout layout = new Layout(document, fonts.load(document));
+            try {
+                for (Element element : elements) {
+                    element.render(layout, data);
+                }
+            } finally {
+                layout.close();
+            }
+            document.save(out);
+        }
+    }
+
+    private static String argument(String[] words, int index) {
+        if (words.length <= index) {
+            throw new IllegalArgumentException("missing argument");
+        }
+        return words[index];
+    }
+
+    private static float size(String value) {
+        return Float.parseFloat(value);
+    }
+
+    private static Method accessor(Class<?> scope, String field) {
+        RecordComponent[] components = scope.getRecordComponents();
+        if (components != null) {
+            for (RecordComponent component : components) {
+                if (component.getName().equals(field)) {
+                    return component.getAccessor();
+                }
+            }
+        }
+        throw new IllegalArgumentException("unknown field " + field + " of " + scope.getSimpleName());
+    }
+
+    private static Class<?> itemType(Method list) {
+        Type type = list.getGenericReturnType();
+        if (type instanceof ParameterizedType parameterized && Collection.class.isAssignableFrom(list.getReturnType())
+                && parameterized.getActualTypeArguments()[0] instanceof Class<?> item && item.isRecord()) {
+            return item;
+        }
+        throw new IllegalArgumentException(list.getName() + " is not a list of records");
+    }
+
+    private static List<Object> segments(Class<?> scope, String text) {
+        List<Object> segments = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(text);
+        int last = 0;
+        while (matcher.find()) {
+            if (matcher.start() > last) {
+                segments.add(text.substring(last, matcher.start()));
+            }
+            segments.add(accessor(scope, matcher.group(1)));
+            last = matcher.end();
+        }
+        if (last < text.length()) {
+            segments.add(text.substring(last));
+        }
+        return List.copyOf(segments);
+    }
+
+    private static Object read(Method accessor, Object scope) {
+        try {
+            return accessor.invoke(scope);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Can't read " + accessor.getName(), e);
+        }
+    }
+
+    private static boolean isEmpty(Object value) {
+        return value == null || value instanceof String string && string.isBlank()
+                || value instanceof Collection<?> collection && collection.isEmpty();
+    }
+
+    private interface Element {
+        void render(Layout layout, Object scope) throws IOException;
+    }
+
+    private record Text(boolean bold, float[] color, float size, List<Object> segments) implements Element {
+        @Override
+        public void render(Layout layout, Object scope) throws IOException {
+            StringBuilder text = new StringBuilder();
+            boolean hasPlaceholder = false;
+            boolean hasValue = false;
+            for (Object segment : segments) {
+                if (segment instanceof Method accessor) {
+                    hasPlaceholder = true;
+                    Object value = read(accessor, scope);
+                    if (!isEmpty(value)) {
+                        hasValue = true;
+                        text.append(value);
+                    }
+                } else {
+                    text.append(segment);
+                }
+            }
+            if (!hasPlaceholder || hasValue) {
+                layout.paragraph(text.toString(), bold ? layout.fonts.bold() : layout.fonts.regular(), size, color, 0);
+            }
+        }
+    }
+
+    private record Join(float size, String separator, Method[] fields) implements Element {
+        @Override
+        public void render(Layout layout, Object scope) throws IOException {
+            List<String> values = new ArrayList<>();
+            for (Method field : fields) {
+                Object value = read(field, scope);
+                if (!isEmpty(value)) {
+                    values.add(value.toString().strip());
+                }
+            }
+            if (!values.isEmpty()) {
+                layout.paragraph(String.join(separator, values), layout.fonts.regular(), size, MUTED, 0);
+            }
+        }
+    }
+
+    private record Section(Method field, String title) implements Element {
+        @Override
+        public void render(Layout layout, Object scope) throws IOException {
+            if (!isEmpty(read(field, scope))) {
+                layout.heading(title);
+            }
+        }
+    }
+
+    private record Bullets(float size, Method field) implements Element {
+        @Override
+        public void render(Layout layout, Object scope) throws IOException {
+            if (read(field, scope) instanceof Collection<?> items) {
+                for (Object item : items) {
+                    if (!isEmpty(item)) {
+                        layout.paragraph("• " + item.toString().strip(), layout.fonts.regular(), size, BLACK, 10);
+                    }
+                }
+            }
+        }
+    }
+
+    private record Space(float points) implements Element {
+        @Override
+        public void render(Layout layout, Object scope) {
+            layout.y -= points;
+        }
+    }
+
+    private record Each(Method list, List<Element> body) implements Element {
+        @Override
+        public void render(Layout layout, Object scope) throws IOException {
+            if (read(list, scope) instanceof Collection<?> items) {
+                for (Object item : items) {
+                    if (item == null) {
+                        continue;
+                    }
+                    for (Element element : body) {
+                        element.render(layout, item);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Pages of the document being rendered and the position on the current one
+     */
+    private static final class Layout {
+        private final PDDocument document;
+        private final PdfFonts.Loaded fonts;
+        private final float width = PDRectangle.A4.getWidth() - 2 * MARGIN;
+        private PDPageContentStream content;
+        private float y;
+
+        private Layout(PDDocument document, PdfFonts.Loaded fonts) throws IOException {
+            this.document = document;
+            this.fonts = fonts;
+            newPage();
+        }
+
+        private void newPage() throws IOException {
+            close();
+            PDPage page = new PDPage(PDRectangle.A4);
+            document.addPage(page);
+            content = new PDPageContentStream(document, page);
+            y = PDRectangle.A4.getHeight() - MARGIN;
+        }
+
+        private void heading(String title) throws IOException {
+            float size = 13;
+            // Keep the heading with the first lines of its section
+            if (y - 4 * size * LINE_SPACING < MARGIN) {
+                newPage();
+            } else {
+                y -= size * 0.6f;
+            }
+            paragraph(title, fonts.bold(), size, ACCENT, 0);
+            content.setStrokingColor(ACCENT[0], ACCENT[1], ACCENT[2]);
+            content.setLineWidth(0.6f);
+            content.moveTo(MARGIN, y + size * 0.2f);
+            content.lineTo(MARGIN + width, y + size * 0.2f);
+            content.stroke();
+            y -= size * 0.4f;
+        }
+
+        /**
+         * Write text wrapped to the page width, a paragraph per line of the text
+         */
+        private void paragraph(String text, PDFont font, float size, float[] color, float indent) throws IOException {
+            for (String line : text.split("\\R")) {
+                for (String wrapped : wrap(encodable(font, line.replace('\t', ' ').strip()), font, size, width - indent)) {
+                    if (y - size * LINE_SPACING < MARGIN) {
+                        newPage();
+                    }
+                    y -= size * LINE_SPACING;
+                    content.beginText();
+                    content.setFont(font, size);
+                    content.setNonStrokingColor(color[0], color[1], color[2]);
+                    content.newLineAtOffset(MARGIN + indent, y);
+                    content.showText(wrapped);
+                    content.endText();
+                }
+            }
+        }
+
+        private static List<String> wrap(String text, PDFont font, float size, float maxWidth) throws IOException {
+            List<String> lines = new ArrayList<>();
+            StringBuilder line = new StringBuilder();
+            for (String word : text.split(" +")) {
+                String candidate = line.isEmpty() ? word : line + " " + word;
+                if (width(font, candidate, size) <= maxWidth) {
+                    line.setLength(0);
+                    line.append(candidate);
+                    continue;
+                }
+                if (!line.isEmpty()) {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                }
+                // A word wider than the page, like a URL, is broken anywhere
+                while (width(font, word, size) > maxWidth && word.length() > 1) {
+                    int end = word.length() - 1;
+                    while (end > 1 && width(font, word.substring(0, end), size) > maxWidth) {
+                        end--;
+                    }
+                    lines.add(word.substring(0, end));
+                    word = word.substring(end);
+                }
+                line.append(word);
+            }
+            if (!line.isEmpty()) {
+                lines.add(line.toString());
+            }
+            return lines;
+        }
+
+        private static float width(PDFont font, String text, float size) throws IOException {
+            return font.getStringWidth(text) / 1000 * size;
+        }
+
+        /**
+         * Replace the characters the font can't show, like emoji, so the line is kept
+         */
+        private static String encodable(PDFont font, String text) throws IOException {
+            try {
+                font.encode(text);
+                return text;
+            } catch (IllegalArgumentException e) {
+                StringBuilder kept = new StringBuilder(text.length());
+                text.codePoints().forEach(codePoint -> {
+                    String character = Character.toString(codePoint);
+                    try {
+                        font.encode(character);
+                        kept.append(character);
+                    } catch (IllegalArgumentException | IOException unsupported) {
+                        kept.append('?');
+                    }
+                });
+                return kept.toString();
+            }
+        }
+
+        private void close() throws IOException {
+            if (content != null) {
+                content.close();
+                content = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.curriculum.CurriculumUruguay.util;
+
+/**
+ * Set of the most recently added 64-bit keys, e.g. hashes of message ids. Keys are
+ * kept in a ring in insertion order and indexed by an open addressing table of
+ * primitive longs, so the oldest key is forgotten once the capacity is reached.
+ */
+public class RecentKeys {
+    private static final long EMPTY = 0;
+
+    private final long[] ring;
+    private int next;
+    private int count;
+
+    // The table marks free slots with 0, so that key is tracked apart
+    private final long[] table;
+    private final int mask;
+    private boolean hasEmptyKey;
+
+    /**
+     * @param capacity Number of keys remembered
+     */
+    public RecentKeys(int capacity) {
+        if (capacity < 1 || capacity > 1 << 28) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^28: " + capacity);
+        }
+        this.ring = new long[capacity];
+        // At most half full so probe sequences stay short
+        int tableSize = Integer.highestOneBit(capacity) << 2;
+        this.table = new long[tableSize];
+        this.mask = tableSize - 1;
+    }
+
+    /**
+     * @return true if the key was added, false if it is already present
+     */
+    public synchronized boolean add(long key) {
+        if (contains(key)) {
+            return false;
+        }
+        if (count == ring.length) {
+            remove(ring[next]);
+        } else {
+            count++;
+        }
+
+        if (key == EMPTY) {
+            hasEmptyKey = true;
+        } else {
+            int slot = home(key);
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
+        }
+        ring[next] = key;
+        next = next + 1 == ring.length ? 0 : next + 1;
+        return true;
+    }
+
+    public synchronized boolean contains(long key) {
+        if (key == EMPTY) {
+            return hasEmptyKey;
+        }
+        for (int slot = home(key); table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (table[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    private void remove(long key) {
+        if (key == EMPTY) {
+            hasEmptyKey = false;
+            return;
+        }
+        int hole = home(key);
+        while (table[hole] != key) {
+            hole = (hole + 1) & mask;
+        }
+        // Shift back the following entries of the cluster that would no longer be reachable
+        int slot = hole;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long candidate = table[slot];
+            if (candidate == EMPTY) {
+                break;
+            }
+            int home = home(candidate);
+            boolean reachable = hole <= slot ? hole < home && home <= slot : hole < home || home <= slot;
+            if (!reachable) {
+                table[hole] = candidate;
+                hole = slot;
+            }
+        }
+        table[hole] = EMPTY;
+    }
+
+    private int home(long key) {
+        // Murmur3 finalizer, keys may be sequential ids
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+}
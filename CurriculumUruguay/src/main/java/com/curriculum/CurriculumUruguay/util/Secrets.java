@@ -0,0 +1,34 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Checks secrets presented by callers: webhook tokens, signatures and the cluster secret.
+ * Comparisons take constant time, so a secret can't be guessed byte by byte from how
+ * long a request takes to be refused.
+ */
+public final class Secrets {
+
+    private Secrets() {
+    }
+
+    /**
+     * @param expected Configured secret
+     * @param presented Secret sent by the caller, null if missing
+     * @return true if both are equal, never for a blank configured secret
+     */
+    public static boolean secretMatches(String expected, String presented) {
+        return expected != null && !expected.isBlank() && presented != null
+                && secretMatches(expected.getBytes(StandardCharsets.UTF_8), presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param expected Expected bytes, e.g. a computed signature
+     * @param presented Bytes sent by the caller
+     * @return true if both are equal
+     */
+    public static boolean secretMatches(byte[] expected, byte[] presented) {
+        return MessageDigest.isEqual(expected, presented);
+    }
+}
@@ -0,0 +1,345 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of records kept in fixed-size memory-mapped segment files.
+ * An entry gets a sequence number when appended and stays pending until it is
+ * acknowledged, which appends an ack record; entries without an ack are returned
+ * by {@link #pending()} when the journal is opened again.
+ * <p>
+ * Appends only copy into the mapped segment, so they survive a crash of the JVM
+ * as soon as they return; {@link #sync()} forces the segments written since the
+ * previous call to disk and is meant to be called periodically, batching the
+ * fsyncs of many appends. {@link #compact()} deletes the oldest segments once
+ * all their entries are acknowledged, moving entries still pending there to the
+ * active segment first.
+ * <p>
+ * Record layout: payload length (int), CRC32 of the rest (int), sequence (long),
+ * type (byte), payload. A zero length marks the end of a segment's records, a
+ * record whose CRC doesn't match (a write torn by a power loss) ends it as well.
+ */
+public final class SegmentJournal implements Closeable {
+
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 1;
+    private static final byte ENTRY = 1;
+    private static final byte ACK = 2;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("journal-(\\d+)\\.seg");
+
+    /**
+     * An entry that was appended and not acknowledged
+     * @param seq Sequence number
+     * @param payload Content
+     */
+    public record Entry(long seq, byte[] payload) {
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    // Segment holding each pending entry
+    private final Map<Long, Segment> pendingEntries = new HashMap<>();
+    private final List<Entry> recovered;
+    private Segment active;
+    private long nextSeq = 1;
+
+    /**
+     * Open the journal in a directory, creating it if needed
+     * @param directory Directory of the segment files
+     * @param segmentSize Size of each segment file in bytes
+     */
+    public SegmentJournal(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("Segment size must be at least 1024 bytes: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.recovered = recover();
+    }
+
+    /**
+     * Read every segment and collect the entries without an ack
+     */
+    private List<Entry> recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> SEGMENT_NAME.matcher(path.getFileName().toString()).matches()).toList();
+        }
+        Map<Long, Entry> entries = new HashMap<>();
+        Set<Long> acked = new HashSet<>();
+        for (Path file : files) {
+            Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+            matcher.matches();
+            Segment segment = Segment.open(Long.parseLong(matcher.group(1)), file, (int) Files.size(file));
+            segments.put(segment.id, segment);
+        }
+        for (Segment segment : segments.values()) {
+            segment.scan((seq, type, payload) -> {
+                if (type == ENTRY) {
+                    segment.entries++;
+                    // An entry moved by compaction may still be in its old segment
+                    if (entries.putIfAbsent(seq, new Entry(seq, payload)) == null) {
+                        pendingEntries.put(seq, segment);
+                    }
+                } else if (type == ACK) {
+                    acked.add(seq);
+                }
+                // Sequence numbers are never reused while a record mentions them
+                nextSeq = Math.max(nextSeq, seq + 1);
+            });
+        }
+        for (Long seq : acked) {
+            entries.remove(seq);
+            pendingEntries.remove(seq);
+        }
+        for (Segment segment : pendingEntries.values()) {
+            segment.pending++;
+        }
+        if (segments.isEmpty()) {
+            roll();
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+        List<Entry> result = new ArrayList<>(entries.values());
+        result.sort(Comparator.comparingLong(Entry::seq));
+        return result;
+    }
+
+    /**
+     * @return Entries that were pending when the journal was opened, in append order
+     */
+    public List<Entry> pending() {
+        return recovered;
+    }
+
+    /**
+     * Append an entry
+     * @param payload Content, at most the segment size minus the record overhead
+     * @return Sequence number of the entry
+     */
+    public synchronized long append(byte[] payload) {
+        if (HEADER_BYTES + payload.length + 4 > segmentSize) {
+            throw new IllegalArgumentException("Entry of " + payload.length + " bytes doesn't fit in a segment");
+        }
+        long seq = nextSeq++;
+        write(seq, ENTRY, payload);
+        active.entries++;
+        active.pending++;
+        pendingEntries.put(seq, active);
+        return seq;
+    }
+
+    /**
+     * Acknowledge an entry, it won't be returned as pending again
+     * @return false if the entry wasn't pending
+     */
+    public synchronized boolean ack(long seq) {
+        Segment segment = pendingEntries.remove(seq);
+        if (segment == null) {
+            return false;
+        }
+        segment.pending--;
+        write(seq, ACK, new byte[0]);
+        return true;
+    }
+
+    private void write(long seq, byte type, byte[] payload) {
+        int size = HEADER_BYTES + payload.length;
+        // Keep room for the end marker after the record
+        if (active.buffer.remaining() < size + 4) {
+            roll();
+        }
+        MappedByteBuffer buffer = active.buffer;
+        int position = buffer.position();
+        CRC32 crc = new CRC32();
+        buffer.position(position + 8);
+        buffer.putLong(seq).put(type).put(payload);
+        crc.update(buffer.duplicate().position(position + 8).limit(position + size));
+        buffer.putInt(buffer.position(), 0);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        // Written last, a record is only visible once complete
+        buffer.putInt(position, payload.length + 1);
+        active.dirty = true;
+    }
+
+    private void roll() {
+        long id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        try {
+            Segment segment = Segment.create(id, directory.resolve(String.format("journal-%016d.seg", id)), segmentSize);
+            segments.put(id, segment);
+            active = segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Force the segments written since the previous call to disk
+     */
+    public void sync() {
+        List<Segment> dirty = new ArrayList<>();
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                if (segment.dirty) {
+                    segment.dirty = false;
+                    dirty.add(segment);
+                }
+            }
+        }
+        // Appends go on while the pages are written
+        for (Segment segment : dirty) {
+            try {
+                segment.buffer.force();
+            } catch (UncheckedIOException e) {
+                // Deleted by a compaction meanwhile
+                if (!segment.deleted) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the oldest segments before the active one, moving their pending
+     * entries to the active segment first. Segments are only deleted oldest first
+     * because the acks of a segment refer to entries of the same or older segments.
+     * @return Number of segments deleted
+     */
+    public synchronized int compact() throws IOException {
+        int deleted = 0;
+        while (segments.firstKey() != active.id) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest.pending > 0) {
+                relocate(oldest);
+            }
+            segments.remove(oldest.id);
+            oldest.delete();
+            deleted++;
+        }
+        return deleted;
+    }
+
+    private void relocate(Segment segment) {
+        segment.scan((seq, type, payload) -> {
+            if (type == ENTRY && pendingEntries.get(seq) == segment) {
+                write(seq, ENTRY, payload);
+                active.entries++;
+                active.pending++;
+                pendingEntries.put(seq, active);
+            }
+        });
+        segment.pending = 0;
+    }
+
+    /**
+     * @return Entries appended and not acknowledged yet
+     */
+    public synchronized int pendingCount() {
+        return pendingEntries.size();
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Force every segment to disk and close the files
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+            segment.channel.close();
+        }
+        segments.clear();
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(long seq, byte type, byte[] payload);
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int entries;
+        private int pending;
+        private boolean dirty;
+        private volatile boolean deleted;
+
+        private Segment(long id, Path path, FileChannel channel, int size) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        static Segment create(long id, Path path, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return new Segment(id, path, channel, size);
+        }
+
+        static Segment open(long id, Path path, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(id, path, channel, size);
+        }
+
+        /**
+         * Visit the valid records and leave the buffer positioned after the last one
+         */
+        void scan(RecordVisitor visitor) {
+            MappedByteBuffer view = buffer;
+            int position = 0;
+            while (position + HEADER_BYTES <= view.capacity()) {
+                int length = view.getInt(position);
+                if (length <= 0 || position + HEADER_BYTES + length - 1 > view.capacity()) {
+                    break;
+                }
+                int size = HEADER_BYTES + length - 1;
+                CRC32 crc = new CRC32();
+                crc.update(view.duplicate().position(position + 8).limit(position + size));
+                if ((int) crc.getValue() != view.getInt(position + 4)) {
+                    break;
+                }
+                long seq = view.getLong(position + 8);
+                byte type = view.get(position + 16);
+                byte[] payload = new byte[length - 1];
+                view.get(position + HEADER_BYTES, payload);
+                visitor.visit(seq, type, payload);
+                position += size;
+            }
+            if (buffer.position() < position) {
+                buffer.position(position);
+            }
+        }
+
+        void delete() throws IOException {
+            deleted = true;
+            channel.close();
+            Files.deleteIfExists(path);
+        }
+    }
+}
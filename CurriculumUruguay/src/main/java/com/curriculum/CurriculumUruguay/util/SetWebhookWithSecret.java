@@ -0,0 +1,69 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.ApiResponse;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiValidationException;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * setWebhook call including the secret_token parameter, which the SetWebhook
+ * class of the telegrambots version in use doesn't support yet. Telegram sends the
+ * secret back in the X-Telegram-Bot-Api-Secret-Token header of every webhook request.
+ */
+public class SetWebhookWithSecret extends BotApiMethod<Boolean> {
+
+    @JsonProperty("url")
+    private final String url;
+
+    @JsonProperty("secret_token")
+    private final String secretToken;
+
+    @JsonProperty("max_connections")
+    private final Integer maxConnections;
+
+    @JsonProperty("allowed_updates")
+    private final List<String> allowedUpdates;
+
+    @JsonProperty("drop_pending_updates")
+    private final Boolean dropPendingUpdates = false;
+
+    public SetWebhookWithSecret(String url, String secretToken, Integer maxConnections, List<String> allowedUpdates) {
+        this.url = url;
+        this.secretToken = secretToken;
+        this.maxConnections = maxConnections;
+        this.allowedUpdates = allowedUpdates;
+    }
+
+    @Override
+    public String getMethod() {
+        return "setWebhook";
+    }
+
+    @Override
+    public Boolean deserializeResponse(String answer) throws TelegramApiRequestException {
+        try {
+            ApiResponse<Boolean> result = OBJECT_MAPPER.readValue(answer, new TypeReference<ApiResponse<Boolean>>() {});
+            if (result.getOk()) {
+                return result.getResult();
+            }
+            throw new TelegramApiRequestException("Error setting webhook", result);
+        } catch (IOException e) {
+            throw new TelegramApiRequestException("Unable to deserialize response", e);
+        }
+    }
+
+    @Override
+    public void validate() throws TelegramApiValidationException {
+        if (url == null || url.isEmpty()) {
+            throw new TelegramApiValidationException("URL parameter can't be empty", this);
+        }
+        if (secretToken == null || !secretToken.matches("[A-Za-z0-9_-]{1,256}")) {
+            throw new TelegramApiValidationException("Secret token must be 1-256 characters of A-Z, a-z, 0-9, _ and -", this);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that fails as soon as more than a maximum number of bytes is read
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+    private final long maxBytes;
+    private long count;
+
+    public SizeLimitedInputStream(InputStream in, long maxBytes) {
+        super(in);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int n = super.read(buffer, offset, length);
+        if (n > 0) {
+            count(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long n) throws SizeLimitExceededException {
+        count += n;
+        if (count > maxBytes) {
+            throw new SizeLimitExceededException(maxBytes);
+        }
+    }
+
+    /**
+     * Thrown when the stream is longer than the allowed size
+     */
+    public static class SizeLimitExceededException extends IOException {
+        public SizeLimitExceededException(long maxBytes) {
+            super("Content exceeds the maximum size of " + maxBytes + " bytes");
+        }
+    }
+}
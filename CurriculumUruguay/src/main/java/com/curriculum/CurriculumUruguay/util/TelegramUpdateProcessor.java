@@ -1,10 +1,16 @@
 package com.curriculum.CurriculumUruguay.util;
 
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.objects.Document;
 import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
+import java.util.Comparator;
+import java.util.List;
+
 /**
  * Utility class to process Telegram updates and determine their type
  */
@@ -48,6 +54,52 @@ public class TelegramUpdateProcessor {
         }
     }
     
+    /**
+     * Normalize the message of an update for the shared pipeline
+     * @param update The Telegram update object, must contain a message
+     * @param type The type returned by {@link #determineUpdateType(Update)}
+     * @param targetPhotoSize Pixel size of the longest side wanted for photos, see {@link #selectPhoto}
+     * @return The normalized message, replies go to the sender
+     */
+    public static InboundMessage toInboundMessage(Update update, String type, int targetPhotoSize) {
+        Message message = update.getMessage();
+        String userId = message.getFrom().getId().toString();
+
+        InboundMessage.Media media = null;
+        if (message.hasPhoto()) {
+            PhotoSize photo = selectPhoto(message.getPhoto(), targetPhotoSize);
+            media = new InboundMessage.Media(photo.getFileId(), "image/jpeg",
+                    photo.getFileSize() != null ? photo.getFileSize().longValue() : null);
+        } else if (message.hasDocument()) {
+            Document document = message.getDocument();
+            media = new InboundMessage.Media(document.getFileId(), document.getMimeType(),
+                    document.getFileSize() != null ? document.getFileSize().longValue() : null);
+        }
+
+        return new InboundMessage("telegram", userId, userId, null, message.getMessageId().toString(),
+                type, extractText(message), extractCaption(message), media);
+    }
+    
+    /**
+     * Pick the photo to download among the sizes Telegram generated: the smallest one
+     * whose longest side reaches the target, or the largest one if none does
+     * @param photos Available photo sizes
+     * @param targetSize Pixel size of the longest side wanted
+     * @return The selected photo size
+     */
+    public static PhotoSize selectPhoto(List<PhotoSize> photos, int targetSize) {
+        Comparator<PhotoSize> byPixels = Comparator.comparingInt(TelegramUpdateProcessor::longestSide);
+        return photos.stream()
+                .filter(photo -> longestSide(photo) >= targetSize)
+                .min(byPixels)
+                .or(() -> photos.stream().max(byPixels))
+                .orElseThrow(() -> new RuntimeException("No photos found"));
+    }
+
+    private static int longestSide(PhotoSize photo) {
+        return Math.max(photo.getWidth() != null ? photo.getWidth() : 0, photo.getHeight() != null ? photo.getHeight() : 0);
+    }
+    
     /**
      * Extract caption from a message if available
      * @param message The Telegram message
@@ -0,0 +1,56 @@
+package com.curriculum.CurriculumUruguay.util;
+
+/**
+ * Token bucket rate limiter. Not thread safe, callers confine it to one thread.
+ */
+public class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param capacity Maximum burst size
+     * @param tokensPerSecond Sustained rate
+     * @param now Current time in nanoseconds
+     */
+    public TokenBucket(double capacity, double tokensPerSecond, long now) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    /**
+     * @param now Current time in nanoseconds
+     * @return 0 if a token is available, otherwise nanoseconds until one will be
+     */
+    public long nanosUntilAvailable(long now) {
+        refill(now);
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    /**
+     * Take one token, callers check {@link #nanosUntilAvailable(long)} first
+     */
+    public void consume() {
+        tokens -= 1;
+    }
+
+    /**
+     * @param now Current time in nanoseconds
+     * @return true if the bucket is full, so it can be dropped without losing state
+     */
+    public boolean isFull(long now) {
+        refill(now);
+        return tokens >= capacity;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,76 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import java.util.Arrays;
+
+/**
+ * Remembers which ids of a monotonically increasing sequence were already seen,
+ * such as Telegram update_ids, with one bit per id over a sliding window below
+ * the highest id seen. Ids older than the window or not above the floor are
+ * treated as already seen.
+ */
+public class UpdateIdWindow {
+    private final long[] bits;
+    private final int size;
+    private long highest = Long.MIN_VALUE;
+    private long floor = Long.MIN_VALUE;
+
+    /**
+     * @param size Number of ids remembered below the highest one, rounded up to a multiple of 64
+     */
+    public UpdateIdWindow(int size) {
+        if (size < 64) {
+            throw new IllegalArgumentException("Window size must be at least 64: " + size);
+        }
+        this.bits = new long[(size + 63) >>> 6];
+        this.size = bits.length << 6;
+    }
+
+    /**
+     * @param id Id that just arrived
+     * @return true the first time an id is seen, false if it is a duplicate or too old to tell
+     */
+    public synchronized boolean markSeen(long id) {
+        if (id <= floor || (highest != Long.MIN_VALUE && id <= highest - size)) {
+            return false;
+        }
+        if (highest == Long.MIN_VALUE || id > highest) {
+            advanceTo(id);
+        }
+        int index = (int) Math.floorMod(id, (long) size);
+        long mask = 1L << index;
+        if ((bits[index >>> 6] & mask) != 0) {
+            return false;
+        }
+        bits[index >>> 6] |= mask;
+        return true;
+    }
+
+    /**
+     * Clear the bits of the ids the window slides over, they belonged to ids a full window older
+     */
+    private void advanceTo(long id) {
+        if (highest == Long.MIN_VALUE || id - highest >= size) {
+            Arrays.fill(bits, 0);
+        } else {
+            for (long cleared = highest + 1; cleared <= id; cleared++) {
+                int index = (int) Math.floorMod(cleared, (long) size);
+                bits[index >>> 6] &= ~(1L << index);
+            }
+        }
+        highest = id;
+    }
+
+    /**
+     * Treat every id up to a watermark as seen, e.g. the last id received before a restart
+     */
+    public synchronized void setFloor(long watermark) {
+        floor = Math.max(floor, watermark);
+    }
+
+    /**
+     * @return The highest id seen or the floor, whichever is larger
+     */
+    public synchronized long highest() {
+        return Math.max(highest, floor);
+    }
+}
@@ -0,0 +1,91 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import java.util.ArrayDeque;
+
+/**
+ * Several FIFO queues served by self-clocked weighted fair queueing. Each item is
+ * tagged with a virtual finish time, its cost divided by the weight of its queue
+ * added to the later of the current virtual time and the tag of the previous item
+ * of its queue, and the item with the earliest tag is served first. Every queue
+ * gets service time in proportion to its weight, so cheap items aren't stuck behind
+ * a backlog of expensive ones and an idle queue can't save up credit. Not thread
+ * safe, callers synchronize.
+ */
+public class WeightedFairQueue<T> {
+    private final double[] weights;
+    private final ArrayDeque<Tagged<T>>[] queues;
+    private final double[] lastFinish;
+    private double virtualTime;
+    private int size;
+
+    /**
+     * @param weights Weight of each queue, queues are numbered by their index
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public WeightedFairQueue(double... weights) {
+        for (double weight : weights) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Queue weights must be positive");
+            }
+        }
+        this.weights = weights.clone();
+        this.queues = new ArrayDeque[weights.length];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+        this.lastFinish = new double[weights.length];
+    }
+
+    /**
+     * @param queue Index of the queue
+     * @param item Item to add at the tail of the queue
+     * @param cost Expected service time of the item, in any unit used consistently
+     */
+    public void add(int queue, T item, double cost) {
+        double finish = Math.max(virtualTime, lastFinish[queue]) + cost / weights[queue];
+        lastFinish[queue] = finish;
+        queues[queue].addLast(new Tagged<>(item, finish));
+        size++;
+    }
+
+    /**
+     * @return The item with the earliest finish tag, null if every queue is empty
+     */
+    public T poll() {
+        int next = -1;
+        for (int i = 0; i < queues.length; i++) {
+            Tagged<T> head = queues[i].peekFirst();
+            if (head != null && (next < 0 || head.finish < queues[next].peekFirst().finish)) {
+                next = i;
+            }
+        }
+        if (next < 0) {
+            return null;
+        }
+        Tagged<T> served = queues[next].pollFirst();
+        virtualTime = served.finish;
+        size--;
+        return served.item;
+    }
+
+    /**
+     * @return Items waiting in one queue
+     */
+    public int size(int queue) {
+        return queues[queue].size();
+    }
+
+    /**
+     * @return Items waiting in every queue
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private record Tagged<T>(T item, double finish) {
+    }
+}
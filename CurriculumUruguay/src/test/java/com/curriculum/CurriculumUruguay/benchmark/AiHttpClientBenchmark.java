@@ -0,0 +1,155 @@
+package com.curriculum.CurriculumUruguay.benchmark;
+
+import com.curriculum.CurriculumUruguay.config.AppConfig;
+import com.curriculum.CurriculumUruguay.model.AiReply;
+import com.curriculum.CurriculumUruguay.service.AiConnectionPool;
+import com.curriculum.CurriculumUruguay.service.AiResilience;
+import com.curriculum.CurriculumUruguay.service.AiService;
+import com.curriculum.CurriculumUruguay.service.PayloadLogSampler;
+import com.curriculum.CurriculumUruguay.service.PipelineMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to answer a burst of concurrent calls to a local stub of the AI agent through
+ * the previous default RestTemplate, which keeps at most 5 idle connections and
+ * reconnects for the rest of every burst, and through AiService with its connection
+ * pool. The stub charges every new connection a fixed setup cost, standing in for the
+ * TCP and TLS handshakes with a remote agent, so connection reuse shows up in the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+// The stub answers without waiting on delayed ACKs, which would hide the connection costs
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class AiHttpClientBenchmark {
+
+    private static final int BURST = 16;
+    private static final long CONNECTION_SETUP_MILLIS = 100;
+    private static final String BODY = "{\"from\":\"1\",\"userMessage\":\"hola\"}";
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ExecutorService clientExecutor;
+    private ExecutorService callers;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private URI uri;
+    private RestTemplate restTemplate;
+    private AiService aiService;
+
+    @Setup
+    public void setUp() throws IOException {
+        serverExecutor = Executors.newFixedThreadPool(64);
+        clientExecutor = Executors.newCachedThreadPool();
+        callers = Executors.newFixedThreadPool(BURST);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/text", exchange -> {
+            if (clientPorts.add(exchange.getRemoteAddress().getPort())) {
+                try {
+                    Thread.sleep(CONNECTION_SETUP_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = "{\"message\":{\"message\":\"hola\",\"status\":\"ok\"}}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        uri = URI.create(baseUrl + "/text");
+        restTemplate = new RestTemplate();
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AiResilience resilience = new AiResilience(20, 10, 0.5, Duration.ofMinutes(1), 64, 1,
+                Duration.ofMillis(10), Duration.ofMillis(50), false, Duration.ofSeconds(3), registry);
+        aiService = new AiService(new AppConfig().aiAsyncHttpClient(clientExecutor, Duration.ofSeconds(2), false),
+                new AiConnectionPool(50, 20, Duration.ofSeconds(10), registry), new ObjectMapper(), clientExecutor,
+                new PipelineMetrics(registry), new PayloadLogSampler(0), resilience, 262144);
+        ReflectionTestUtils.setField(aiService, "agentUrl", baseUrl);
+        ReflectionTestUtils.setField(aiService, "responseTimeout", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(aiService, "readTimeout", Duration.ofSeconds(10));
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        clientExecutor.shutdownNow();
+        callers.shutdownNow();
+    }
+
+    @Benchmark
+    public int defaultRestTemplate() throws ExecutionException, InterruptedException {
+        List<Future<byte[]>> calls = new ArrayList<>(BURST);
+        for (int i = 0; i < BURST; i++) {
+            calls.add(callers.submit(() -> restTemplate.postForObject(uri, BODY, byte[].class)));
+        }
+        int length = 0;
+        for (Future<byte[]> call : calls) {
+            length += call.get().length;
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int pooledAiService() {
+        List<CompletableFuture<AiReply>> calls = new ArrayList<>(BURST);
+        for (int i = 0; i < BURST; i++) {
+            calls.add(aiService.sendTextToAiAsync("1", "hola"));
+        }
+        int length = 0;
+        for (CompletableFuture<AiReply> call : calls) {
+            length += call.join().message().length();
+        }
+        return length;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AiHttpClientBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
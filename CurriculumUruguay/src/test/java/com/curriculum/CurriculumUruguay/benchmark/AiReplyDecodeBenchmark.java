@@ -0,0 +1,81 @@
+package com.curriculum.CurriculumUruguay.benchmark;
+
+import com.curriculum.CurriculumUruguay.model.AiReply;
+import com.curriculum.CurriculumUruguay.model.PdfData;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous per-call ObjectMapper map parsing of AI service responses
+ * with decoding into {@link AiReply} through a shared reader. PDFs are decoded in
+ * memory like the map keeps the Base64 text, so no temporary file is written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AiReplyDecodeBenchmark {
+
+    /**
+     * Size of the generated PDF in bytes, 0 for a text-only reply
+     */
+    @Param({"0", "102400", "2097152"})
+    public int pdfBytes;
+
+    private byte[] response;
+    private ObjectReader replyReader;
+
+    @Setup
+    public void setUp() throws IOException {
+        response = AiResponses.reply(pdfBytes);
+        replyReader = new ObjectMapper().readerFor(AiReply.class)
+                .at("/message")
+                .withAttribute(PdfData.MEMORY_THRESHOLD_ATTRIBUTE, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public Map<String, Object> perCallMapperToMap() throws IOException {
+        String jsonString = new String(response);
+        ObjectMapper mapper = new ObjectMapper();
+        return mapper.readValue(jsonString, new TypeReference<Map<String, Object>>() {});
+    }
+
+    @Benchmark
+    public void sharedReaderFromStream(Blackhole blackhole) throws IOException {
+        AiReply reply = replyReader.readValue(new ByteArrayInputStream(response));
+        blackhole.consume(reply);
+        if (reply.hasPdf()) {
+            reply.pdfData().close();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AiReplyDecodeBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
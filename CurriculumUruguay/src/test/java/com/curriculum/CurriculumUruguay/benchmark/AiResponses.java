@@ -0,0 +1,81 @@
+package com.curriculum.CurriculumUruguay.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Realistic AI service response payloads for benchmarks
+ */
+public final class AiResponses {
+
+    private static final String MESSAGE = "¡Listo! Generé tu curriculum con la experiencia laboral, la formación "
+            + "académica y los datos de contacto que me enviaste. Si querés cambiar algo avisame y lo actualizo.";
+
+    private AiResponses() {
+    }
+
+    /**
+     * @param pdfBytes Size of the embedded PDF, 0 for a text-only reply
+     * @return JSON response as sent by the agent
+     */
+    public static byte[] reply(int pdfBytes) {
+        return pdfBytes == 0 ? reply("\"collecting_data\"") : reply(pdf(pdfBytes));
+    }
+
+    /**
+     * @param pdf PDF generated by the agent
+     * @return JSON response carrying the PDF in Base64
+     */
+    public static byte[] reply(byte[] pdf) {
+        return reply("\"completed\",\"pdfFilename\":\"curriculum_juan_perez.pdf\",\"pdfData\":\""
+                + Base64.getEncoder().encodeToString(pdf) + '"');
+    }
+
+    /**
+     * @return JSON response carrying {@link #CV} for the bot to render
+     */
+    public static byte[] cvReply() {
+        return reply("\"completed\",\"pdfFilename\":\"curriculum_juan_perez.pdf\",\"cv\":" + CV);
+    }
+
+    private static byte[] reply(String statusAndContent) {
+        return ("{\"message\":{\"message\":\"" + MESSAGE + "\",\"status\":" + statusAndContent + "}}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Curriculum of a typical user as structured data: two jobs, two degrees, skills and languages
+     */
+    public static final String CV = """
+            {"name":"Juan Pérez Rodríguez","title":"Analista de Sistemas","email":"juan.perez@correo.com.uy",
+            "phone":"+598 99 123 456","location":"Montevideo, Uruguay",
+            "summary":"Analista de sistemas con seis años de experiencia en desarrollo de aplicaciones web y \
+            mantenimiento de bases de datos. Orientado a la calidad, al trabajo en equipo y a la mejora continua \
+            de los procesos.",
+            "experience":[
+            {"role":"Desarrollador Java Senior","company":"Soluciones Informáticas del Sur S.A.","period":"Marzo 2021 - Actualidad",
+            "description":"Desarrollo y mantenimiento de servicios REST con Spring Boot para el área de pagos.\\nMigración \
+            de procesos batch a colas de mensajes, reduciendo los tiempos de cierre diario en un 40%.\\nMentoría de \
+            tres desarrolladores junior."},
+            {"role":"Desarrollador de Software","company":"Banco de Datos Oriental","period":"Febrero 2018 - Marzo 2021",
+            "description":"Mantenimiento de aplicaciones internas en Java y PL/SQL.\\nAutomatización de reportes \
+            mensuales para el área comercial."}],
+            "education":[
+            {"degree":"Ingeniería en Computación","institution":"Universidad de la República","period":"2013 - 2019"},
+            {"degree":"Bachillerato Tecnológico en Informática","institution":"UTU","period":"2010 - 2012"}],
+            "skills":["Java, Spring Boot y Hibernate","SQL (Oracle, PostgreSQL)","Docker y Kubernetes","Git y metodologías ágiles"],
+            "languages":["Español: nativo","Inglés: avanzado (B2)","Portugués: intermedio"]}
+            """;
+
+    /**
+     * @return Pseudo PDF content, random bytes behind a PDF header so base64 doesn't compress trivially
+     */
+    public static byte[] pdf(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        byte[] header = "%PDF-1.7\n".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(header, 0, data, 0, Math.min(header.length, size));
+        return data;
+    }
+}
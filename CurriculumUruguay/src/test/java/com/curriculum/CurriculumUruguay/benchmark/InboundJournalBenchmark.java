@@ -0,0 +1,80 @@
+package com.curriculum.CurriculumUruguay.benchmark;
+
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.service.InboundJournal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency of journaling a received message and acknowledging it once answered,
+ * with the fsyncs batched by the background thread every 10ms. Compaction runs
+ * every second so the segments of acknowledged messages are deleted while measuring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class InboundJournalBenchmark {
+
+    private final AtomicLong messageIds = new AtomicLong();
+
+    private Path directory;
+    private InboundJournal journal;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        journal = new InboundJournal(true, directory, 16 * 1024 * 1024, Duration.ofMillis(10), Duration.ofSeconds(1),
+                new ObjectMapper(), new SimpleMeterRegistry());
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException, IOException {
+        journal.shutdown();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public boolean appendAndComplete() {
+        long id = messageIds.incrementAndGet();
+        String user = String.valueOf(100_000_000 + id % 1000);
+        InboundMessage message = new InboundMessage("telegram", user, user, null, String.valueOf(id), "text",
+                "Trabajé como desarrollador en Antel entre 2018 y 2022", null, null);
+        boolean appended = journal.append(message);
+        journal.complete(message);
+        return appended;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(InboundJournalBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
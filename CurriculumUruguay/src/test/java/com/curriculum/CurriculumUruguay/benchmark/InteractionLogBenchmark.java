@@ -0,0 +1,96 @@
+package com.curriculum.CurriculumUruguay.benchmark;
+
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.model.Interaction;
+import com.curriculum.CurriculumUruguay.service.InteractionLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Events per second the update path can record through the ring buffer while the
+ * background writer inserts them into an embedded H2 database, compared with
+ * inserting every event synchronously. The {@code events} counters of the log show
+ * how many of the recorded events were written and how many were dropped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class InteractionLogBenchmark {
+
+    private static final InboundMessage MESSAGE =
+            new InboundMessage("telegram", "123456789", "123456789", null, "42", "text", "hola", null, null);
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private InteractionLog interactionLog;
+    private SimpleMeterRegistry registry;
+
+    @Setup
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE interaction_log (id BIGINT AUTO_INCREMENT PRIMARY KEY, received_at TIMESTAMP NOT NULL,"
+                + " channel VARCHAR(32) NOT NULL, user_id VARCHAR(64) NOT NULL, event_type VARCHAR(32) NOT NULL, message_id VARCHAR(128))");
+
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("dataSource", database);
+        registry = new SimpleMeterRegistry();
+        interactionLog = new InteractionLog(65536, 500, Duration.ofMillis(100), beans.getBeanProvider(DataSource.class), registry);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        interactionLog.shutdown();
+        registry.get("bot.interaction.log.events").counters().forEach(counter ->
+                System.out.printf("%n%s=%.0f", counter.getId().getTag("result"), counter.count()));
+        System.out.println();
+        database.shutdown();
+    }
+
+    @Benchmark
+    public boolean ringBuffer() {
+        return interactionLog.record(MESSAGE);
+    }
+
+    @Benchmark
+    public int synchronousInsert() {
+        return jdbcTemplate.update(Interaction.INSERT_SQL, Timestamp.from(Instant.now()), MESSAGE.channel(),
+                MESSAGE.userId(), MESSAGE.type(), MESSAGE.messageId());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(InteractionLogBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,155 @@
+package com.curriculum.CurriculumUruguay.benchmark;
+
+import com.curriculum.CurriculumUruguay.util.MultipartBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.FormHttpMessageConverter;
+import org.springframework.http.converter.support.AllEncompassingFormHttpMessageConverter;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and writing the multipart body of an image request: the streamed
+ * {@link MultipartBody} AiService sends, against the Spring form converter the
+ * previous RestTemplate client wrote the same request with. Both bodies are written
+ * to a sink that discards the bytes, so the numbers are the cost of producing them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultipartBodyBenchmark {
+
+    @Param({"65536", "1048576"})
+    public int imageBytes;
+
+    private byte[] image;
+    private FormHttpMessageConverter formConverter;
+
+    @Setup
+    public void setUp() {
+        image = new byte[imageBytes];
+        new Random(42).nextBytes(image);
+        formConverter = new AllEncompassingFormHttpMessageConverter();
+    }
+
+    /**
+     * The body as the previous RestTemplate client built it, kept as the baseline
+     */
+    @Benchmark
+    public long restTemplateForm() throws IOException {
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("from", "5102938475");
+        body.add("userMessage", "This is the profile image");
+        body.add("image", new ByteArrayResource(image) {
+            @Override
+            public String getFilename() {
+                return "image.jpg";
+            }
+        });
+        CountingOutputMessage output = new CountingOutputMessage();
+        formConverter.write(body, MediaType.MULTIPART_FORM_DATA, output);
+        return output.count;
+    }
+
+    @Benchmark
+    public long streamedMultipartBody() {
+        HttpRequest.BodyPublisher publisher = new MultipartBody()
+                .addField("from", "5102938475")
+                .addField("userMessage", "This is the profile image")
+                .addFile("image", "image.jpg", "image/jpeg", () -> new ByteArrayInputStream(image))
+                .build();
+        return drain(publisher);
+    }
+
+    /**
+     * Pull every buffer of the body as the HTTP client would when sending it
+     */
+    private static long drain(HttpRequest.BodyPublisher publisher) {
+        CompletableFuture<Long> written = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            private long count;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                count += item.remaining();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                written.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                written.complete(count);
+            }
+        });
+        return written.join();
+    }
+
+    private static final class CountingOutputMessage implements HttpOutputMessage {
+        private final HttpHeaders headers = new HttpHeaders();
+        private long count;
+
+        @Override
+        public OutputStream getBody() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                    count++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    count += len;
+                }
+            };
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MultipartBodyBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
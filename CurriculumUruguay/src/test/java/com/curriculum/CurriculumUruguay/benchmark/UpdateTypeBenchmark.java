@@ -0,0 +1,73 @@
+package com.curriculum.CurriculumUruguay.benchmark;
+
+import com.curriculum.CurriculumUruguay.util.TelegramUpdateProcessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classification of Telegram updates, run on the polling thread for every update
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateTypeBenchmark {
+
+    @Param({"text", "photo", "document"})
+    public String type;
+
+    private Update update;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        String fixture = type.equals("photo") ? "/telegram/photo_update.json" : "/telegram/text_update.json";
+        try (InputStream json = UpdateTypeBenchmark.class.getResourceAsStream(fixture)) {
+            ObjectNode node = (ObjectNode) mapper.readTree(json);
+            if (type.equals("document")) {
+                ObjectNode message = (ObjectNode) node.get("message");
+                message.remove("text");
+                message.putObject("document")
+                        .put("file_id", "BQACAgEAAxkBAAIBnGZm")
+                        .put("file_unique_id", "AgADnAQAAkq")
+                        .put("file_name", "cv.pdf")
+                        .put("mime_type", "application/pdf")
+                        .put("file_size", 48213);
+            }
+            update = mapper.treeToValue(node, Update.class);
+        }
+    }
+
+    @Benchmark
+    public String determineUpdateType() {
+        return TelegramUpdateProcessor.determineUpdateType(update);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UpdateTypeBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,169 @@
+package com.curriculum.CurriculumUruguay.config;
+
+import com.curriculum.CurriculumUruguay.model.AiReply;
+import com.curriculum.CurriculumUruguay.service.AiConnectionPool;
+import com.curriculum.CurriculumUruguay.service.AiResilience;
+import com.curriculum.CurriculumUruguay.service.AiService;
+import com.curriculum.CurriculumUruguay.service.PayloadLogSampler;
+import com.curriculum.CurriculumUruguay.service.PipelineMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs bursts of concurrent calls against a local stub of the AI agent and compares
+ * the connections the AI client opens through its pool with the previous default
+ * RestTemplate, which keeps at most 5 idle connections and reconnects for the rest
+ * of every burst. The latency gain is measured by AiHttpClientBenchmark.
+ */
+class AiHttpClientPoolTest {
+
+	private static final int THREADS = 16;
+	private static final int BURSTS = 6;
+	private static final int MAX_PER_ROUTE = 4;
+	private static final String BODY = "{\"from\":\"1\",\"userMessage\":\"hola\"}";
+
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private ExecutorService clientExecutor;
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger peakInFlight = new AtomicInteger();
+	private final AtomicInteger peakPending = new AtomicInteger();
+
+	@BeforeEach
+	void startStub() throws IOException {
+		serverExecutor = Executors.newFixedThreadPool(THREADS * 2);
+		clientExecutor = Executors.newCachedThreadPool();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(serverExecutor);
+		server.createContext("/text", exchange -> {
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+			peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			registry.find("bot.ai.pool.pending").gauges()
+					.forEach(gauge -> peakPending.accumulateAndGet((int) gauge.value(), Math::max));
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.getRequestBody().readAllBytes();
+			byte[] body = "{\"message\":{\"message\":\"hola\",\"status\":\"ok\"}}".getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			inFlight.decrementAndGet();
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+	}
+
+	@AfterEach
+	void stopStub() {
+		server.stop(0);
+		serverExecutor.shutdownNow();
+		clientExecutor.shutdownNow();
+	}
+
+	@Test
+	void aiClientReusesAtMostThePooledConnections() throws Exception {
+		String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+		URI uri = URI.create(baseUrl + "/text");
+		RestTemplate previous = new RestTemplate();
+		runLoad(() -> previous.postForObject(uri, BODY, byte[].class));
+		int defaultConnections = clientPorts.size();
+		clientPorts.clear();
+		peakInFlight.set(0);
+
+		AiConnectionPool pool = new AiConnectionPool(50, MAX_PER_ROUTE, Duration.ofSeconds(30), registry);
+		AiService service = newService(baseUrl, pool);
+		runLoad(() -> service.sendTextToAiAsync("1", "hola").get(30, TimeUnit.SECONDS));
+		int pooledConnections = clientPorts.size();
+
+		String summary = "default: " + defaultConnections + " connections, pooled: " + pooledConnections
+				+ " connections, peak in flight " + peakInFlight.get() + ", peak pending " + peakPending.get();
+		assertTrue(pooledConnections <= MAX_PER_ROUTE, summary);
+		assertTrue(pooledConnections < defaultConnections, summary);
+		assertTrue(peakInFlight.get() <= MAX_PER_ROUTE, summary);
+		assertTrue(peakPending.get() > 0, summary);
+		assertEquals(0, pool.getLeased());
+		assertEquals(0, pool.getPending());
+		assertEquals(50, registry.get("bot.ai.pool.available").gauge().value());
+	}
+
+	@Test
+	void callsWaitingLongerThanTheRequestTimeoutFail() {
+		AiConnectionPool pool = new AiConnectionPool(1, 1, Duration.ofMillis(50), registry);
+		URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/text");
+		AiConnectionPool.Lease lease = pool.acquire(uri).join();
+
+		CompletableFuture<AiConnectionPool.Lease> waiting = pool.acquire(uri);
+		Exception error = assertThrows(Exception.class, () -> waiting.get(5, TimeUnit.SECONDS));
+		assertInstanceOf(AiConnectionPool.PoolTimeoutException.class, error.getCause());
+		assertEquals(0, pool.getPending());
+
+		lease.release();
+		lease.release();
+		assertEquals(0, pool.getLeased());
+		assertNotNull(pool.acquire(uri).join());
+	}
+
+	private AiService newService(String baseUrl, AiConnectionPool pool) {
+		AiResilience resilience = new AiResilience(20, 10, 0.5, Duration.ofMinutes(1), THREADS, 1,
+				Duration.ofMillis(10), Duration.ofMillis(50), false, Duration.ofSeconds(3), registry);
+		AiService service = new AiService(new AppConfig().aiAsyncHttpClient(clientExecutor, Duration.ofSeconds(2), false),
+				pool, new ObjectMapper(), clientExecutor, new PipelineMetrics(registry), new PayloadLogSampler(0),
+				resilience, 262144);
+		ReflectionTestUtils.setField(service, "agentUrl", baseUrl);
+		ReflectionTestUtils.setField(service, "responseTimeout", Duration.ofSeconds(10));
+		ReflectionTestUtils.setField(service, "readTimeout", Duration.ofSeconds(10));
+		return service;
+	}
+
+	private void runLoad(Callable<?> call) throws Exception {
+		ExecutorService clients = Executors.newFixedThreadPool(THREADS);
+		try {
+			for (int burst = 0; burst < BURSTS; burst++) {
+				List<Future<?>> results = new ArrayList<>();
+				for (int i = 0; i < THREADS; i++) {
+					results.add(clients.submit(() -> {
+						assertNotNull(call.call());
+						return null;
+					}));
+				}
+				for (Future<?> result : results) {
+					result.get(30, TimeUnit.SECONDS);
+				}
+			}
+		} finally {
+			clients.shutdown();
+		}
+	}
+}
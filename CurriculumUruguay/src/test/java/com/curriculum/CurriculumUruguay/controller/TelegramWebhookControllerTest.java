@@ -0,0 +1,129 @@
+package com.curriculum.CurriculumUruguay.controller;
+
+import com.curriculum.CurriculumUruguay.loadtest.FakeAiAgent;
+import com.curriculum.CurriculumUruguay.loadtest.FakeTelegramApi;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Posts recorded Telegram updates to the webhook of the whole application, with the
+ * Telegram API and the AI agent replaced by local fakes, and checks the reply the
+ * user gets.
+ */
+@SpringBootTest(properties = {
+		"telegram.bot.mode=webhook",
+		"telegram.webhook.url=https://bot.example.com",
+		"telegram.webhook.secret-token=test-secret_123",
+		"ai.service.http2=false"
+})
+@AutoConfigureMockMvc
+@DirtiesContext
+class TelegramWebhookControllerTest {
+
+	// telegram.bot.token of the test properties
+	private static final String TOKEN = "123456:test-token";
+	private static final long CHAT_ID = 5102938475L;
+
+	private static final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+	private static FakeTelegramApi telegram;
+	private static FakeAiAgent agent;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@DynamicPropertySource
+	static void fakes(DynamicPropertyRegistry registry) throws IOException {
+		telegram = new FakeTelegramApi(TOKEN, 640, (chatId, text, document) -> {
+			if (chatId == CHAT_ID) {
+				replies.add(text);
+			}
+		});
+		agent = new FakeAiAgent(Duration.ofMillis(5), Duration.ofMillis(20), 0, 0);
+		registry.add("telegram.api.url", telegram::url);
+		registry.add("ai.service.url", agent::url);
+	}
+
+	@AfterAll
+	static void stopFakes() {
+		telegram.close();
+		agent.close();
+	}
+
+	@BeforeEach
+	void clearReplies() {
+		replies.clear();
+	}
+
+	@Test
+	void answersRecordedTextUpdate() throws Exception {
+		mockMvc.perform(post("/telegram/webhook")
+						.header(TelegramWebhookController.SECRET_TOKEN_HEADER, "test-secret_123")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(recorded("telegram/text_update.json")))
+				.andExpect(status().isOk());
+
+		assertEquals(FakeAiAgent.REPLY_PREFIX + " Trabajé 3 años como analista de datos en Montevideo",
+				replies.poll(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void answersRecordedPhotoUpdate() throws Exception {
+		int calls = agent.getCalls();
+
+		mockMvc.perform(post("/telegram/webhook")
+						.header(TelegramWebhookController.SECRET_TOKEN_HEADER, "test-secret_123")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(recorded("telegram/photo_update.json")))
+				.andExpect(status().isOk());
+
+		// The photo was downloaded from Telegram and uploaded to the agent
+		String reply = replies.poll(10, TimeUnit.SECONDS);
+		assertNotNull(reply);
+		assertTrue(reply.startsWith(FakeAiAgent.REPLY_PREFIX), reply);
+		assertEquals(calls + 1, agent.getCalls());
+	}
+
+	@Test
+	void rejectsRequestWithWrongSecret() throws Exception {
+		int calls = agent.getCalls();
+
+		mockMvc.perform(post("/telegram/webhook")
+						.header(TelegramWebhookController.SECRET_TOKEN_HEADER, "wrong")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(recorded("telegram/text_update.json")))
+				.andExpect(status().isUnauthorized());
+
+		mockMvc.perform(post("/telegram/webhook")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(recorded("telegram/text_update.json")))
+				.andExpect(status().isUnauthorized());
+
+		assertNull(replies.poll(500, TimeUnit.MILLISECONDS));
+		assertEquals(calls, agent.getCalls());
+	}
+
+	private static String recorded(String path) throws Exception {
+		return new ClassPathResource(path).getContentAsString(StandardCharsets.UTF_8);
+	}
+}
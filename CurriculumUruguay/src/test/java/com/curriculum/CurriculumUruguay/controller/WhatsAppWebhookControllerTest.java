@@ -0,0 +1,132 @@
+package com.curriculum.CurriculumUruguay.controller;
+
+import com.curriculum.CurriculumUruguay.Bot;
+import com.curriculum.CurriculumUruguay.channel.WhatsAppAdapter;
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.service.MessagePipeline;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = WhatsAppWebhookController.class, properties = {
+		"whatsapp.enabled=true",
+		"whatsapp.verify-token=test-verify",
+		"whatsapp.app-secret=test-app-secret"
+})
+class WhatsAppWebhookControllerTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@MockitoBean
+	private WhatsAppAdapter whatsAppAdapter;
+
+	@MockitoBean
+	private MessagePipeline messagePipeline;
+
+	@MockitoBean
+	private Bot bot;
+
+	@Test
+	void answersSubscriptionChallenge() throws Exception {
+		mockMvc.perform(get("/whatsapp/webhook")
+						.param("hub.mode", "subscribe")
+						.param("hub.verify_token", "test-verify")
+						.param("hub.challenge", "1158201444"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("1158201444"));
+
+		mockMvc.perform(get("/whatsapp/webhook")
+						.param("hub.mode", "subscribe")
+						.param("hub.verify_token", "wrong")
+						.param("hub.challenge", "1158201444"))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void dispatchesRecordedTextMessage() throws Exception {
+		byte[] payload = recorded("whatsapp/text_message.json");
+		mockMvc.perform(post("/whatsapp/webhook")
+						.header(WhatsAppWebhookController.SIGNATURE_HEADER, sign(payload))
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(payload))
+				.andExpect(status().isOk());
+
+		verify(whatsAppAdapter).markAsRead(any());
+		verify(messagePipeline).submit(eq(whatsAppAdapter), argThat((InboundMessage message) ->
+				"whatsapp:59891234567".equals(message.conversationKey())
+						&& "106540352242922".equals(message.accountId())
+						&& "text".equals(message.type())
+						&& "buenas de nuevo".equals(message.text())));
+	}
+
+	@Test
+	void dispatchesRecordedImageMessage() throws Exception {
+		byte[] payload = recorded("whatsapp/image_message.json");
+		mockMvc.perform(post("/whatsapp/webhook")
+						.header(WhatsAppWebhookController.SIGNATURE_HEADER, sign(payload))
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(payload))
+				.andExpect(status().isOk());
+
+		verify(messagePipeline).submit(eq(whatsAppAdapter), argThat((InboundMessage message) ->
+				"photo".equals(message.type())
+						&& "Esta es mi foto para el CV".equals(message.caption())
+						&& "1003383421387256".equals(message.media().id())
+						&& "image/jpeg".equals(message.media().mimeType())));
+	}
+
+	@Test
+	void rejectsRequestWithWrongSignature() throws Exception {
+		byte[] payload = recorded("whatsapp/text_message.json");
+		mockMvc.perform(post("/whatsapp/webhook")
+						.header(WhatsAppWebhookController.SIGNATURE_HEADER, "sha256=" + "00".repeat(32))
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(payload))
+				.andExpect(status().isUnauthorized());
+
+		mockMvc.perform(post("/whatsapp/webhook")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(payload))
+				.andExpect(status().isUnauthorized());
+
+		verify(messagePipeline, never()).submit(any(), any());
+	}
+
+	@Test
+	void refusesToStartWithoutAppSecret() {
+		assertThrows(IllegalStateException.class,
+				() -> new WhatsAppWebhookController(whatsAppAdapter, messagePipeline, new ObjectMapper(), "test-verify", " "));
+	}
+
+	private static String sign(byte[] payload) throws Exception {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec("test-app-secret".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+		return "sha256=" + HexFormat.of().formatHex(mac.doFinal(payload));
+	}
+
+	private static byte[] recorded(String path) throws Exception {
+		return new ClassPathResource(path).getContentAsByteArray();
+	}
+}
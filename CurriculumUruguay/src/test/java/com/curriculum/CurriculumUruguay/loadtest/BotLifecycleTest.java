@@ -0,0 +1,135 @@
+package com.curriculum.CurriculumUruguay.loadtest;
+
+import com.curriculum.CurriculumUruguay.CurriculumUruguayApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Starts and stops the bot against the {@link FakeTelegramApi} and {@link FakeAiAgent}
+ * stand-ins: updates are only received once the application is ready, and the
+ * updates in progress when it shuts down are still answered, unless the drain is
+ * disabled.
+ */
+class BotLifecycleTest {
+
+	// Generous for a loaded build machine, a warm start takes a few seconds
+	private static final Duration MAX_TIME_TO_FIRST_UPDATE = Duration.ofSeconds(20);
+
+	private final List<String> replies = new CopyOnWriteArrayList<>();
+	private final AtomicLong firstReplyAt = new AtomicLong();
+
+	private FakeAiAgent agent;
+	private FakeTelegramApi telegram;
+
+	@AfterEach
+	void tearDown() {
+		telegram.close();
+		agent.close();
+	}
+
+	@Test
+	void receivesUpdatesOnceReadyAndAnswersTheFirstInTime() throws Exception {
+		agent = new FakeAiAgent(Duration.ofMillis(20), Duration.ofMillis(20), 0, 0);
+		telegram = new FakeTelegramApi(LoadTestHarness.TOKEN, 320, this::onReply);
+		// Waiting before the bot starts, like the updates queued during a deploy
+		telegram.pushText(1_000_000, "hola");
+
+		AtomicLong readyAt = new AtomicLong();
+		long startedAt = System.nanoTime();
+		try (ConfigurableApplicationContext context = start(List.of(),
+				(ApplicationListener<ApplicationReadyEvent>) event -> readyAt.set(System.nanoTime()))) {
+			awaitReplies(1, Duration.ofSeconds(30));
+
+			assertTrue(telegram.getFirstPollAt() > readyAt.get(), "polled before the application was ready");
+			Duration timeToFirstUpdate = Duration.ofNanos(firstReplyAt.get() - startedAt);
+			assertTrue(timeToFirstUpdate.compareTo(MAX_TIME_TO_FIRST_UPDATE) < 0, "time to first update " + timeToFirstUpdate);
+			assertEquals(List.of(FakeAiAgent.REPLY_PREFIX + " hola"), replies);
+		}
+	}
+
+	@Test
+	void answersUpdatesInProgressWhenShuttingDown() throws Exception {
+		ConfigurableApplicationContext context = startWithCallsInFlight(List.of());
+
+		// Every AI call is in flight, closing waits for them and sends the replies
+		context.close();
+
+		assertEquals(10, replies.size(), replies.toString());
+		assertTrue(replies.stream().allMatch(reply -> reply.startsWith(FakeAiAgent.REPLY_PREFIX)), replies.toString());
+	}
+
+	@Test
+	void dropsUpdatesInProgressWithoutDrain() throws Exception {
+		ConfigurableApplicationContext context = startWithCallsInFlight(List.of("--bot.shutdown.drain-timeout=0s"));
+
+		context.close();
+
+		// The agent answers after the bot is gone, no reply is sent
+		Thread.sleep(2000);
+		assertTrue(replies.isEmpty(), replies.toString());
+	}
+
+	/**
+	 * Start the bot and wait until 10 updates are with an agent that takes 1.5 s to answer
+	 */
+	private ConfigurableApplicationContext startWithCallsInFlight(List<String> properties) throws Exception {
+		agent = new FakeAiAgent(Duration.ofMillis(1500), Duration.ofMillis(1500), 0, 0);
+		telegram = new FakeTelegramApi(LoadTestHarness.TOKEN, 320, this::onReply);
+
+		ConfigurableApplicationContext context = start(properties);
+		assertTrue(telegram.awaitPolling(30, TimeUnit.SECONDS));
+		for (int i = 0; i < 10; i++) {
+			telegram.pushText(1_000_000 + i, "mensaje " + i);
+		}
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (agent.getCalls() < 10 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(10, agent.getCalls());
+		assertTrue(replies.isEmpty());
+		return context;
+	}
+
+	private ConfigurableApplicationContext start(List<String> properties, ApplicationListener<?>... listeners) {
+		List<String> args = new ArrayList<>(List.of("--telegram.bot.token=" + LoadTestHarness.TOKEN,
+				"--telegram.bot.mode=polling",
+				"--telegram.api.url=" + telegram.url(),
+				"--ai.service.url=" + agent.url(),
+				"--ai.service.http2=false",
+				"--spring.datasource.enabled=false",
+				"--logging.level.root=WARN",
+				"--logging.level.com.curriculum=WARN"));
+		args.addAll(properties);
+		return new SpringApplicationBuilder(CurriculumUruguayApplication.class)
+				.web(WebApplicationType.NONE)
+				.listeners(listeners)
+				.run(args.toArray(String[]::new));
+	}
+
+	private void awaitReplies(int count, Duration timeout) throws InterruptedException {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		while (replies.size() < count && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(count, replies.size());
+	}
+
+	private void onReply(long chatId, String text, boolean document) {
+		firstReplyAt.compareAndSet(0, System.nanoTime());
+		replies.add(text);
+	}
+}
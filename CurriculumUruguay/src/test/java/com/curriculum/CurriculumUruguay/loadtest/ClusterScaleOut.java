@@ -0,0 +1,225 @@
+package com.curriculum.CurriculumUruguay.loadtest;
+
+import com.curriculum.CurriculumUruguay.CurriculumUruguayApplication;
+import com.curriculum.CurriculumUruguay.service.ClusterRouter;
+import com.curriculum.CurriculumUruguay.service.PipelineMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * An ingress polling a {@link FakeTelegramApi} and worker instances answering through
+ * a {@link FakeAiAgent}, each one a separate application on its own port talking over
+ * loopback HTTP, and a load of users sending their messages at a steady pace.
+ * <p>
+ * Run as a main it compares the messages one worker and three workers answer when each
+ * one calls the agent at most a few times at once, like a per-instance quota:
+ * {@code mvn -Pload-test verify -Dload.main=com.curriculum.CurriculumUruguay.loadtest.ClusterScaleOut}
+ */
+public final class ClusterScaleOut implements AutoCloseable {
+
+    private static final String SECRET = "scale-out-secret";
+
+    private final FakeAiAgent agent;
+    private final FakeTelegramApi telegram;
+    private final Map<Long, List<String>> replies = new ConcurrentHashMap<>();
+    private final AtomicInteger replyCount = new AtomicInteger();
+    private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+    private ClusterRouter router;
+    private String ingressUrl;
+
+    /**
+     * @param agent Stand-in of the AI agent every worker calls, closed with the cluster
+     */
+    public ClusterScaleOut(FakeAiAgent agent) throws Exception {
+        this.agent = agent;
+        this.telegram = new FakeTelegramApi(LoadTestHarness.TOKEN, 320, this::onReply);
+    }
+
+    /**
+     * Start the ingress and wait until it polls for updates
+     */
+    public void startIngress() throws InterruptedException {
+        ConfigurableApplicationContext ingress = start(
+                "--bot.cluster.role=ingress",
+                "--telegram.bot.mode=polling",
+                "--bot.cluster.worker-timeout=3s");
+        router = ingress.getBean(ClusterRouter.class);
+        ingressUrl = "http://localhost:" + ingress.getEnvironment().getProperty("local.server.port");
+        if (!telegram.awaitPolling(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("The ingress never polled for updates");
+        }
+    }
+
+    /**
+     * Start a worker joining the ingress
+     * @param maxConcurrent Calls the worker makes to the agent at once
+     */
+    public ConfigurableApplicationContext startWorker(int maxConcurrent) {
+        return start(
+                "--bot.cluster.role=worker",
+                "--telegram.bot.mode=none",
+                "--bot.cluster.ingress-url=" + ingressUrl,
+                "--bot.cluster.heartbeat-interval=500ms",
+                "--ai.service.bulkhead.max-concurrent=" + maxConcurrent);
+    }
+
+    /**
+     * Stop a worker, it leaves the cluster
+     */
+    public void stop(ConfigurableApplicationContext worker) {
+        contexts.remove(worker);
+        worker.close();
+    }
+
+    public ClusterRouter router() {
+        return router;
+    }
+
+    private ConfigurableApplicationContext start(String... args) {
+        String[] common = {
+                "--server.port=0",
+                "--telegram.bot.token=" + LoadTestHarness.TOKEN,
+                "--telegram.api.url=" + telegram.url(),
+                "--ai.service.url=" + agent.url(),
+                "--ai.service.http2=false",
+                "--bot.cluster.secret=" + SECRET,
+                "--spring.datasource.enabled=false",
+                "--telegram.sender.global-rate=100000",
+                "--telegram.sender.chat-rate=1000",
+                "--telegram.sender.chat-burst=1000",
+                "--logging.level.root=WARN",
+                "--logging.level.com.curriculum=WARN"
+        };
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(CurriculumUruguayApplication.class)
+                .run(Stream.concat(Stream.of(common), Stream.of(args)).toArray(String[]::new));
+        contexts.add(context);
+        return context;
+    }
+
+    /**
+     * Wait until the ingress counts exactly this many workers
+     */
+    public void awaitWorkers(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (router.getWorkers().size() != count) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Expected " + count + " workers but the ingress has " + router.getWorkers());
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Send every user's messages at a steady pace, open loop, wait for a reply to
+     * each one and check that the agent's replies came in the order of the messages
+     * @param firstChatId Chat of the first user, the others follow it
+     * @param interval Time between two messages of the same user
+     * @return Messages answered by the agent, the others got the try later reply
+     * @throws IllegalStateException if a message got no reply or more than one, or a user's replies are out of order
+     */
+    public int load(long firstChatId, int users, int messagesPerUser, Duration interval) throws InterruptedException {
+        int expected = replyCount.get() + users * messagesPerUser;
+        long intervalNanos = interval.toNanos() / users;
+        long next = System.nanoTime();
+        for (int m = 0; m < messagesPerUser; m++) {
+            for (long chatId = firstChatId; chatId < firstChatId + users; chatId++) {
+                LockSupport.parkNanos(next - System.nanoTime());
+                telegram.pushText(chatId, "mensaje " + m);
+                next += intervalNanos;
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (replyCount.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        if (replyCount.get() < expected) {
+            throw new IllegalStateException((expected - replyCount.get()) + " messages got no reply");
+        }
+
+        int answered = 0;
+        for (long chatId = firstChatId; chatId < firstChatId + users; chatId++) {
+            List<String> chat = replies.get(chatId);
+            if (chat.size() != messagesPerUser) {
+                throw new IllegalStateException("Chat " + chatId + " expected " + messagesPerUser + " replies: " + chat);
+            }
+            int previous = -1;
+            for (String reply : chat) {
+                if (reply.startsWith(FakeAiAgent.REPLY_PREFIX)) {
+                    int m = Integer.parseInt(reply.substring(reply.lastIndexOf(' ') + 1));
+                    if (m <= previous) {
+                        throw new IllegalStateException("Chat " + chatId + " replies out of order: " + chat);
+                    }
+                    previous = m;
+                    answered++;
+                }
+            }
+        }
+        return answered;
+    }
+
+    private void onReply(long chatId, String text, boolean document) {
+        replies.computeIfAbsent(chatId, id -> Collections.synchronizedList(new ArrayList<>())).add(text);
+        replyCount.incrementAndGet();
+    }
+
+    /**
+     * @return Messages a worker answered
+     */
+    public static double handled(ConfigurableApplicationContext worker) {
+        return worker.getBean(MeterRegistry.class).find(PipelineMetrics.UPDATES_COUNTER)
+                .tag("outcome", PipelineMetrics.SUCCESS)
+                .counters().stream()
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+
+    @Override
+    public void close() {
+        // Workers first, their leave notices go to a live ingress
+        for (int i = contexts.size() - 1; i >= 0; i--) {
+            contexts.get(i).close();
+        }
+        contexts.clear();
+        telegram.close();
+        agent.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = Integer.parseInt(System.getProperty("load.users", "60"));
+        int messagesPerUser = Integer.parseInt(System.getProperty("load.messages-per-user", "3"));
+        // With 6 concurrent calls of 300ms a worker answers 20 messages per second,
+        // each user sends a message per second
+        int status;
+        try (ClusterScaleOut cluster = new ClusterScaleOut(
+                new FakeAiAgent(Duration.ofMillis(300), Duration.ofMillis(300), 0, 0))) {
+            cluster.startIngress();
+            cluster.startWorker(6);
+            cluster.awaitWorkers(1);
+            int single = cluster.load(1_000_000, users, messagesPerUser, Duration.ofSeconds(1));
+
+            cluster.startWorker(6);
+            cluster.startWorker(6);
+            cluster.awaitWorkers(3);
+            int clustered = cluster.load(2_000_000, users, messagesPerUser, Duration.ofSeconds(1));
+
+            System.out.printf("sent=%d answered by 1 worker=%d by 3 workers=%d ratio=%.2f%n",
+                    users * messagesPerUser, single, clustered, clustered / (double) Math.max(single, 1));
+            status = clustered >= 1.8 * single ? 0 : 1;
+        }
+        // Threads of the client library may still run, e.g. the polling session
+        System.exit(status);
+    }
+}
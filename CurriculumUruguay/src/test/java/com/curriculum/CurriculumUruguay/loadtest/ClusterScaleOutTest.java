@@ -0,0 +1,49 @@
+package com.curriculum.CurriculumUruguay.loadtest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs an ingress and two workers under a load they answer entirely: every user's
+ * replies keep the order of their messages, conversations spread over both workers
+ * and move to the remaining one when a worker leaves. The throughput gained by
+ * adding workers is measured by {@link ClusterScaleOut#main} in the load-test profile.
+ */
+class ClusterScaleOutTest {
+
+	private static final int USERS = 20;
+	private static final int MESSAGES_PER_USER = 3;
+	private static final Duration USER_INTERVAL = Duration.ofMillis(200);
+
+	private ClusterScaleOut cluster;
+
+	@AfterEach
+	void tearDown() {
+		cluster.close();
+	}
+
+	@Test
+	void spreadsConversationsOverWorkersAndKeepsEachUsersOrder() throws Exception {
+		cluster = new ClusterScaleOut(new FakeAiAgent(Duration.ofMillis(20), Duration.ofMillis(50), 0, 0));
+		cluster.startIngress();
+		ConfigurableApplicationContext first = cluster.startWorker(64);
+		ConfigurableApplicationContext second = cluster.startWorker(64);
+		cluster.awaitWorkers(2);
+
+		assertEquals(USERS * MESSAGES_PER_USER, cluster.load(1_000_000, USERS, MESSAGES_PER_USER, USER_INTERVAL));
+		double handledBySecond = ClusterScaleOut.handled(second);
+		assertTrue(ClusterScaleOut.handled(first) > 0);
+		assertTrue(handledBySecond > 0);
+
+		// A leaving worker's conversations move to the remaining one
+		cluster.stop(first);
+		cluster.awaitWorkers(1);
+		assertEquals(USERS * MESSAGES_PER_USER, cluster.load(2_000_000, USERS, MESSAGES_PER_USER, USER_INTERVAL));
+		assertTrue(ClusterScaleOut.handled(second) > handledBySecond);
+	}
+}
@@ -0,0 +1,135 @@
+package com.curriculum.CurriculumUruguay.loadtest;
+
+import com.curriculum.CurriculumUruguay.benchmark.AiResponses;
+import com.curriculum.CurriculumUruguay.service.AiService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the AI agent serving /text and /image. Every call waits for a
+ * latency drawn from a lognormal distribution, the usual shape of LLM response
+ * times, and a configurable fraction of replies carries a generated PDF, or the
+ * curriculum as data when the bot renders PDFs itself. Text replies quote the
+ * user's message, so the order of the replies can be checked.
+ */
+public final class FakeAiAgent implements AutoCloseable {
+
+    /**
+     * Every reply text starts with this, anything else the bot sends is an error reply
+     */
+    public static final String REPLY_PREFIX = "Anotado:";
+
+    // z-score of the 99th percentile of the standard normal distribution
+    private static final double Z_99 = 2.326;
+
+    private final double mu;
+    private final double sigma;
+    private final double pdfFraction;
+    private final byte[] pdf;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonNode cv;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    /**
+     * @param median Median latency
+     * @param p99 99th percentile latency, at least the median
+     * @param pdfFraction Fraction of replies with a PDF
+     * @param pdfBytes Size of the PDF
+     */
+    public FakeAiAgent(Duration median, Duration p99, double pdfFraction, int pdfBytes) throws IOException {
+        double medianNanos = Math.max(1, median.toNanos());
+        this.mu = Math.log(medianNanos);
+        this.sigma = Math.log(Math.max(medianNanos, p99.toNanos()) / medianNanos) / Z_99;
+        this.pdfFraction = pdfFraction;
+        this.pdf = pdfBytes > 0 ? AiResponses.pdf(pdfBytes) : null;
+        this.cv = objectMapper.readTree(AiResponses.CV);
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fake-ai-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/text", this::handle);
+        server.createContext("/image", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return Base URL to configure as ai.service.url
+     */
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public int getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return Latency drawn from the lognormal distribution
+     */
+    long sampleLatencyNanos() {
+        return (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange; InputStream body = exchange.getRequestBody()) {
+            String text = null;
+            if (exchange.getRequestURI().getPath().equals("/text")) {
+                text = objectMapper.readTree(body).path("userMessage").asText(null);
+            } else {
+                body.transferTo(OutputStream.nullOutputStream());
+            }
+            int call = calls.incrementAndGet();
+            TimeUnit.NANOSECONDS.sleep(sampleLatencyNanos());
+
+            ObjectNode message = objectMapper.createObjectNode();
+            ObjectNode content = message.putObject("message")
+                    .put("message", REPLY_PREFIX + " " + (text != null ? text : "recibí tu mensaje " + call));
+            if (pdf != null && ThreadLocalRandom.current().nextDouble() < pdfFraction) {
+                content.put("status", "completed")
+                        .put("pdfFilename", "curriculum_" + call + ".pdf");
+                if ("json".equals(exchange.getRequestHeaders().getFirst(AiService.CV_FORMAT_HEADER))) {
+                    content.set("cv", cv);
+                } else {
+                    content.put("pdfData", pdf);
+                }
+            } else {
+                content.put("status", "collecting_data");
+            }
+            byte[] reply = objectMapper.writeValueAsBytes(message);
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, reply.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(reply);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,292 @@
+package com.curriculum.CurriculumUruguay.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the Telegram Bot API: serves long polling getUpdates from a
+ * queue of generated updates, records sendMessage/sendDocument/copyMessage calls as
+ * replies and serves getFile plus the file download with a generated JPEG photo.
+ * Any other method succeeds without effect.
+ */
+public final class FakeTelegramApi implements AutoCloseable {
+
+    /**
+     * Receives every message the bot sends
+     */
+    @FunctionalInterface
+    public interface ReplyListener {
+        /**
+         * @param chatId Chat the message was sent to
+         * @param text Text of the message, the caption of a document
+         * @param document true for a document
+         */
+        void reply(long chatId, String text, boolean document);
+    }
+
+    private static final Pattern CHAT_ID_PART = Pattern.compile("name=\"chat_id\".*?\r\n\r\n([^\r\n]+)", Pattern.DOTALL);
+    private static final Pattern CAPTION_PART = Pattern.compile("name=\"caption\".*?\r\n\r\n([^\r\n]*)", Pattern.DOTALL);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String token;
+    private final ReplyListener listener;
+    private final byte[] photo;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final BlockingQueue<ObjectNode> updates = new LinkedBlockingQueue<>();
+    private final AtomicLong nextUpdateId = new AtomicLong(1);
+    private final AtomicInteger nextMessageId = new AtomicInteger(1);
+    private final CountDownLatch polling = new CountDownLatch(1);
+    private final AtomicLong firstPollAt = new AtomicLong();
+    private volatile boolean closed;
+
+    public FakeTelegramApi(String token, int photoSize, ReplyListener listener) throws IOException {
+        this.token = token;
+        this.listener = listener;
+        this.photo = jpeg(photoSize, photoSize * 3 / 4);
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fake-telegram-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return Base URL to configure as telegram.api.url
+     */
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Wait until the bot polls for updates for the first time
+     */
+    public boolean awaitPolling(long timeout, TimeUnit unit) throws InterruptedException {
+        return polling.await(timeout, unit);
+    }
+
+    /**
+     * @return System.nanoTime() of the first getUpdates call, 0 before it
+     */
+    public long getFirstPollAt() {
+        return firstPollAt.get();
+    }
+
+    /**
+     * Queue a text message from a user
+     * @return Message id
+     */
+    public int pushText(long chatId, String text) {
+        ObjectNode message = message(chatId);
+        message.put("text", text);
+        return enqueue(message);
+    }
+
+    /**
+     * Queue a photo from a user, offered in a thumbnail and the full size
+     * @return Message id
+     */
+    public int pushPhoto(long chatId, String caption) {
+        ObjectNode message = message(chatId);
+        ArrayNode sizes = message.putArray("photo");
+        int messageId = message.get("message_id").asInt();
+        sizes.addObject().put("file_id", "thumb-" + messageId).put("file_unique_id", "t" + messageId)
+                .put("width", 320).put("height", 240).put("file_size", 20_000);
+        sizes.addObject().put("file_id", "photo-" + messageId).put("file_unique_id", "p" + messageId)
+                .put("width", 1280).put("height", 960).put("file_size", photo.length);
+        if (caption != null) {
+            message.put("caption", caption);
+        }
+        return enqueue(message);
+    }
+
+    private ObjectNode message(long chatId) {
+        ObjectNode message = objectMapper.createObjectNode();
+        message.put("message_id", nextMessageId.getAndIncrement());
+        message.put("date", System.currentTimeMillis() / 1000);
+        message.putObject("from").put("id", chatId).put("is_bot", false).put("first_name", "Usuario " + chatId);
+        message.putObject("chat").put("id", chatId).put("type", "private");
+        return message;
+    }
+
+    private int enqueue(ObjectNode message) {
+        ObjectNode update = objectMapper.createObjectNode();
+        update.put("update_id", nextUpdateId.getAndIncrement());
+        update.set("message", message);
+        updates.add(update);
+        return message.get("message_id").asInt();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if (path.startsWith("/file/bot" + token + "/")) {
+                respond(exchange, "image/jpeg", photo);
+                return;
+            }
+            if (!path.startsWith("/bot" + token + "/")) {
+                respond(exchange, 404, "{\"ok\":false,\"error_code\":404,\"description\":\"Not Found\"}");
+                return;
+            }
+            // Method names are case-insensitive, the client library sends some in lower case
+            String method = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+            JsonNode result = switch (method) {
+                case "getupdates" -> getUpdates(json(body));
+                case "sendmessage" -> sendMessage(json(body));
+                case "senddocument" -> sendDocument(new String(body, StandardCharsets.ISO_8859_1));
+                case "copymessage" -> objectMapper.createObjectNode().put("message_id", nextMessageId.getAndIncrement());
+                case "getfile" -> getFile(json(body).path("file_id").asText());
+                default -> objectMapper.getNodeFactory().booleanNode(true);
+            };
+            ObjectNode response = objectMapper.createObjectNode().put("ok", true);
+            response.set("result", result);
+            respond(exchange, "application/json", objectMapper.writeValueAsBytes(response));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Long poll: wait up to the requested timeout for a first update, then return
+     * every queued update up to the limit
+     */
+    private ArrayNode getUpdates(JsonNode request) throws InterruptedException {
+        firstPollAt.compareAndSet(0, System.nanoTime());
+        polling.countDown();
+        int limit = request.path("limit").asInt(100);
+        long timeoutMillis = Math.min(TimeUnit.SECONDS.toMillis(request.path("timeout").asLong(0)), 1000);
+        ArrayNode result = objectMapper.createArrayNode();
+        ObjectNode first = closed ? null : updates.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (first != null) {
+            result.add(first);
+            ObjectNode next;
+            while (result.size() < limit && (next = updates.poll()) != null) {
+                result.add(next);
+            }
+        }
+        return result;
+    }
+
+    private ObjectNode sendMessage(JsonNode request) {
+        return sent(request.path("chat_id").asLong(), request.path("text").asText(), false);
+    }
+
+    private ObjectNode sendDocument(String multipart) {
+        Matcher chatId = CHAT_ID_PART.matcher(multipart);
+        Matcher caption = CAPTION_PART.matcher(multipart);
+        ObjectNode message = sent(chatId.find() ? Long.parseLong(chatId.group(1).trim()) : 0,
+                caption.find() ? new String(caption.group(1).getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8) : "",
+                true);
+        int messageId = message.get("message_id").asInt();
+        message.putObject("document").put("file_id", "document-" + messageId).put("file_unique_id", "d" + messageId)
+                .put("file_name", "curriculum.pdf").put("mime_type", "application/pdf");
+        return message;
+    }
+
+    private ObjectNode sent(long chatId, String text, boolean document) {
+        listener.reply(chatId, text, document);
+        ObjectNode message = objectMapper.createObjectNode();
+        message.put("message_id", nextMessageId.getAndIncrement());
+        message.put("date", System.currentTimeMillis() / 1000);
+        message.putObject("chat").put("id", chatId).put("type", "private");
+        if (!document) {
+            message.put("text", text);
+        }
+        return message;
+    }
+
+    private ObjectNode getFile(String fileId) {
+        return objectMapper.createObjectNode()
+                .put("file_id", fileId)
+                .put("file_unique_id", "u" + fileId)
+                .put("file_size", photo.length)
+                .put("file_path", "photos/" + fileId + ".jpg");
+    }
+
+    private JsonNode json(byte[] body) throws IOException {
+        return body.length == 0 ? objectMapper.createObjectNode() : objectMapper.readTree(body);
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * A photo of a document: noise on a light background so it compresses like a real one
+     */
+    private static byte[] jpeg(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(235, 232, 225));
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.DARK_GRAY);
+        Random random = new Random(7);
+        for (int line = 40; line < height - 40; line += 24) {
+            for (int x = 40; x < width - 40; x += 6 + random.nextInt(6)) {
+                graphics.fillRect(x, line, 3 + random.nextInt(4), 10);
+            }
+        }
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "jpg", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,267 @@
+package com.curriculum.CurriculumUruguay.loadtest;
+
+import com.curriculum.CurriculumUruguay.CurriculumUruguayApplication;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the real bot, polling a {@link FakeTelegramApi} and calling a {@link FakeAiAgent},
+ * with text and photo messages at a target rate spread over many users, and reports
+ * end-to-end latency from the moment an update is offered to getUpdates until the
+ * reply reaches sendMessage/sendDocument, throughput, heap and thread counts.
+ * <p>
+ * Run with {@code mvn -Pload-test verify -Dload.args="-Dload.rate=200 -Dload.duration=60s"},
+ * see {@link Options#fromSystemProperties()} for the settings.
+ */
+public final class LoadTestHarness {
+
+    static final String TOKEN = "123456:load-test-token";
+
+    /**
+     * @param rate Messages per second offered to the bot
+     * @param duration How long messages are generated
+     * @param users Distinct chats the messages are spread over
+     * @param photoFraction Fraction of messages that are photos
+     * @param aiMedian Median latency of the AI agent
+     * @param aiP99 99th percentile latency of the AI agent
+     * @param pdfFraction Fraction of AI replies with a PDF
+     * @param pdfBytes Size of the PDFs
+     * @param drainTimeout How long to wait for the last replies once generation stops
+     */
+    public record Options(double rate, Duration duration, int users, double photoFraction, Duration aiMedian,
+                          Duration aiP99, double pdfFraction, int pdfBytes, Duration drainTimeout) {
+
+        /**
+         * Read the options from load.* system properties, defaults in brackets: load.rate [50],
+         * load.duration [30s], load.users [500], load.photo-fraction [0.1], load.ai.median [800ms],
+         * load.ai.p99 [5s], load.pdf-fraction [0.05], load.pdf-bytes [120000], load.drain-timeout [30s]
+         */
+        public static Options fromSystemProperties() {
+            return new Options(
+                    Double.parseDouble(System.getProperty("load.rate", "50")),
+                    duration(System.getProperty("load.duration", "30s")),
+                    Integer.parseInt(System.getProperty("load.users", "500")),
+                    Double.parseDouble(System.getProperty("load.photo-fraction", "0.1")),
+                    duration(System.getProperty("load.ai.median", "800ms")),
+                    duration(System.getProperty("load.ai.p99", "5s")),
+                    Double.parseDouble(System.getProperty("load.pdf-fraction", "0.05")),
+                    Integer.parseInt(System.getProperty("load.pdf-bytes", "120000")),
+                    duration(System.getProperty("load.drain-timeout", "30s")));
+        }
+
+        private static Duration duration(String value) {
+            if (value.endsWith("ms")) {
+                return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+            }
+            if (value.endsWith("s")) {
+                return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+            }
+            return Duration.parse(value);
+        }
+    }
+
+    /**
+     * @param sent Messages offered to the bot
+     * @param answered Messages answered with the AI reply
+     * @param failed Messages answered with an error or busy message
+     * @param unanswered Messages without any reply when the drain timeout elapsed
+     * @param p50Millis Median end-to-end latency of the answered messages
+     * @param p99Millis 99th percentile end-to-end latency of the answered messages
+     * @param maxMillis Highest end-to-end latency of the answered messages
+     * @param throughput Replies per second from the first message to the last reply
+     * @param peakHeapBytes Highest heap usage sampled during the run
+     * @param peakThreads Highest count of live threads, the stand-ins' threads excluded
+     * @param timers Count, mean and max of the bot's own timers, where the time went
+     */
+    public record Report(long sent, long answered, long failed, long unanswered, double p50Millis, double p99Millis,
+                         double maxMillis, double throughput, long peakHeapBytes, int peakThreads, List<String> timers) {
+
+        @Override
+        public String toString() {
+            return String.format("sent=%d answered=%d failed=%d unanswered=%d%n"
+                            + "latency p50=%.1fms p99=%.1fms max=%.1fms%n"
+                            + "throughput=%.1f msg/s peakHeap=%dMB peakThreads=%d%n%s",
+                    sent, answered, failed, unanswered, p50Millis, p99Millis, maxMillis, throughput,
+                    peakHeapBytes / (1024 * 1024), peakThreads, String.join(System.lineSeparator(), timers));
+        }
+    }
+
+    private final Options options;
+
+    // Send time of the messages waiting for a reply, per chat in the order they were sent
+    private final Map<Long, Queue<Long>> waiting = new ConcurrentHashMap<>();
+    private final Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong lastReplyAt = new AtomicLong();
+    private final AtomicLong peakHeap = new AtomicLong();
+    private final AtomicInteger peakThreads = new AtomicInteger();
+
+    public LoadTestHarness(Options options) {
+        this.options = options;
+    }
+
+    /**
+     * Start the stand-ins and the application, generate the load and wait for the replies
+     */
+    public Report run() throws Exception {
+        try (FakeAiAgent agent = new FakeAiAgent(options.aiMedian(), options.aiP99(), options.pdfFraction(), options.pdfBytes());
+             FakeTelegramApi telegram = new FakeTelegramApi(TOKEN, 1600, this::onReply);
+             ConfigurableApplicationContext context = start(telegram, agent)) {
+            if (!telegram.awaitPolling(30, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("The bot never polled for updates");
+            }
+            ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "fake-load-sampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sampler.scheduleAtFixedRate(this::sample, 0, 200, TimeUnit.MILLISECONDS);
+            try {
+                long startedAt = System.nanoTime();
+                long sent = generate(telegram, startedAt);
+                awaitReplies(sent);
+                sample();
+                return report(sent, startedAt, context.getBean(MeterRegistry.class));
+            } finally {
+                sampler.shutdownNow();
+            }
+        }
+    }
+
+    private ConfigurableApplicationContext start(FakeTelegramApi telegram, FakeAiAgent agent) {
+        return new SpringApplicationBuilder(CurriculumUruguayApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--telegram.bot.token=" + TOKEN,
+                        "--telegram.bot.mode=polling",
+                        "--telegram.api.url=" + telegram.url(),
+                        "--ai.service.url=" + agent.url(),
+                        "--spring.datasource.enabled=false",
+                        // The stand-in doesn't rate limit, measure the bot rather than the outbound pacing
+                        "--telegram.sender.global-rate=100000",
+                        "--telegram.sender.chat-rate=1000",
+                        "--telegram.sender.chat-burst=1000",
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.curriculum=WARN",
+                        "--ai.service.http2=false");
+    }
+
+    /**
+     * Offer messages at the target rate, open loop: a message is sent on schedule
+     * whether or not the previous ones were answered
+     * @return Messages sent
+     */
+    private long generate(FakeTelegramApi telegram, long startedAt) {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / options.rate());
+        long endAt = startedAt + options.duration().toNanos();
+        long sent = 0;
+        for (long next = startedAt; next < endAt; next += intervalNanos) {
+            long delay = next - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            long chatId = 1_000_000 + sent % options.users();
+            // Registered first, the reply may arrive before push returns
+            waiting.computeIfAbsent(chatId, id -> new ConcurrentLinkedQueue<>()).add(System.nanoTime());
+            if (ThreadLocalRandom.current().nextDouble() < options.photoFraction()) {
+                telegram.pushPhoto(chatId, null);
+            } else {
+                telegram.pushText(chatId, "Trabajé como desarrollador en la empresa " + sent + " entre 2019 y 2023");
+            }
+            sent++;
+        }
+        return sent;
+    }
+
+    private void onReply(long chatId, String text, boolean document) {
+        Queue<Long> chat = waiting.get(chatId);
+        Long sentAt = chat != null ? chat.poll() : null;
+        if (sentAt == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (document || (text != null && text.startsWith(FakeAiAgent.REPLY_PREFIX))) {
+            latencies.add(now - sentAt);
+        } else {
+            failed.incrementAndGet();
+        }
+        lastReplyAt.set(now);
+    }
+
+    private void awaitReplies(long sent) throws InterruptedException {
+        long deadline = System.nanoTime() + options.drainTimeout().toNanos();
+        while (latencies.size() + failed.get() < sent && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    private void sample() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        int threads = (int) Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> !thread.getName().startsWith("fake-"))
+                .count();
+        peakThreads.accumulateAndGet(threads, Math::max);
+    }
+
+    private Report report(long sent, long startedAt, MeterRegistry meterRegistry) {
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        long answered = sorted.length;
+        long replies = answered + failed.get();
+        double elapsedSeconds = (Math.max(lastReplyAt.get(), startedAt + 1) - startedAt) / 1e9;
+        return new Report(sent, answered, failed.get(), sent - replies,
+                percentileMillis(sorted, 0.50), percentileMillis(sorted, 0.99),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6,
+                replies / elapsedSeconds, peakHeap.get(), peakThreads.get(), timers(meterRegistry));
+    }
+
+    private static List<String> timers(MeterRegistry meterRegistry) {
+        return meterRegistry.getMeters().stream()
+                .filter(meter -> meter instanceof Timer && meter.getId().getName().startsWith("bot."))
+                .map(Timer.class::cast)
+                .filter(timer -> timer.count() > 0)
+                .map(timer -> String.format("  %s%s count=%d mean=%.1fms max=%.1fms", timer.getId().getName(),
+                        timer.getId().getTags().stream().map(tag -> tag.getKey() + "=" + tag.getValue()).toList(),
+                        timer.count(), timer.mean(TimeUnit.MILLISECONDS), timer.max(TimeUnit.MILLISECONDS)))
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Nearest-rank percentile
+     */
+    static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.fromSystemProperties();
+        System.out.println("Load test: " + options);
+        Report report = new LoadTestHarness(options).run();
+        System.out.println(report);
+        // Threads of the client library may still run, e.g. the polling session
+        System.exit(0);
+    }
+}
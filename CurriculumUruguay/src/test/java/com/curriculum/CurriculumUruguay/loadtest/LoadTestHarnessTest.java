@@ -0,0 +1,34 @@
+package com.curriculum.CurriculumUruguay.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadTestHarnessTest {
+
+	@Test
+	void answersEveryMessageUnderLightLoad() throws Exception {
+		LoadTestHarness.Options options = new LoadTestHarness.Options(25, Duration.ofSeconds(2), 10, 0.2,
+				Duration.ofMillis(20), Duration.ofMillis(100), 0.2, 32_000, Duration.ofSeconds(20));
+
+		LoadTestHarness.Report report = new LoadTestHarness(options).run();
+
+		assertEquals(50, report.sent());
+		assertEquals(report.sent(), report.answered(), report.toString());
+		assertTrue(report.p50Millis() > 0 && report.p50Millis() <= report.p99Millis(), report.toString());
+		assertTrue(report.peakThreads() > 0);
+	}
+
+	@Test
+	void percentilesUseNearestRank() {
+		long[] nanos = new long[100];
+		for (int i = 0; i < nanos.length; i++) {
+			nanos[i] = (i + 1) * 1_000_000L;
+		}
+		assertEquals(50.0, LoadTestHarness.percentileMillis(nanos, 0.50));
+		assertEquals(99.0, LoadTestHarness.percentileMillis(nanos, 0.99));
+		assertEquals(0.0, LoadTestHarness.percentileMillis(new long[0], 0.99));
+	}
+}
@@ -0,0 +1,78 @@
+package com.curriculum.CurriculumUruguay.model;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfDataTest {
+
+	private final ObjectReader reader = new ObjectMapper().readerFor(AiReply.class)
+			.at("/message")
+			.withAttribute(PdfData.MEMORY_THRESHOLD_ATTRIBUTE, 1024);
+
+	@Test
+	void keepsSmallPdfInMemory() throws Exception {
+		byte[] pdf = randomBytes(512);
+		AiReply reply = reader.readValue(new ByteArrayInputStream(response(pdf)));
+
+		try (PdfData pdfData = reply.pdfData(); InputStream in = pdfData.openStream()) {
+			assertFalse(pdfData.isOnDisk());
+			assertArrayEquals(pdf, in.readAllBytes());
+		}
+		assertEquals("listo", reply.message());
+	}
+
+	@Test
+	void spillsLargePdfToTemporaryFileAndDeletesItOnClose() throws Exception {
+		byte[] pdf = randomBytes(200_000);
+		AiReply reply = reader.readValue(new ByteArrayInputStream(response(pdf)));
+
+		PdfData pdfData = reply.pdfData();
+		assertTrue(pdfData.isOnDisk());
+		assertEquals(pdf.length, pdfData.size());
+		try (InputStream in = pdfData.openStream()) {
+			assertArrayEquals(pdf, in.readAllBytes());
+		}
+
+		Path tempDir = Path.of(System.getProperty("java.io.tmpdir"));
+		long before = countTempPdfs(tempDir);
+		pdfData.close();
+		assertEquals(before - 1, countTempPdfs(tempDir));
+	}
+
+	@Test
+	void rejectsInvalidBase64() {
+		byte[] json = "{\"message\":{\"message\":\"listo\",\"pdfData\":\"%%%not-base64%%%\"}}".getBytes(StandardCharsets.UTF_8);
+
+		JsonMappingException error = assertThrows(JsonMappingException.class, () -> reader.readValue(json));
+		assertTrue(error instanceof PdfData.InvalidPdfDataException || error.getCause() instanceof PdfData.InvalidPdfDataException);
+	}
+
+	private static byte[] response(byte[] pdf) {
+		return ("{\"message\":{\"message\":\"listo\",\"status\":\"completed\",\"pdfFilename\":\"cv.pdf\",\"pdfData\":\""
+				+ Base64.getEncoder().encodeToString(pdf) + "\"}}").getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] randomBytes(int size) {
+		byte[] data = new byte[size];
+		new Random(7).nextBytes(data);
+		return data;
+	}
+
+	private static long countTempPdfs(Path dir) throws Exception {
+		try (var files = Files.list(dir)) {
+			return files.filter(file -> file.getFileName().toString().startsWith("curriculum-")).count();
+		}
+	}
+}
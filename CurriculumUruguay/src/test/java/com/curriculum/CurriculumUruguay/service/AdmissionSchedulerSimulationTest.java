@@ -0,0 +1,257 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.AiReply;
+import com.curriculum.CurriculumUruguay.util.AimdLimit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.net.ConnectException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Discrete event simulation, in virtual time, of mixed traffic reaching an agent
+ * that works on a fixed number of requests at once and queues the rest in arrival
+ * order. Texts, photos and PDF generations arrive at random and a burst of photos
+ * overloads the agent for a minute. Without the scheduler every call waits in the
+ * agent's queue behind the photos and PDFs; with it the calls the agent can't take
+ * wait in the scheduler, where texts overtake them. In another run the agent is
+ * down for a minute and every call fails or is rejected right away.
+ */
+class AdmissionSchedulerSimulationTest {
+
+	private static final AiReply REPLY = new AiReply("ok", "collecting_data", null, null);
+
+	// The agent answers 8 requests at once
+	private static final int AGENT_CAPACITY = 8;
+	private static final long SIMULATED_NANOS = TimeUnit.MINUTES.toNanos(30);
+	// Messages per second: 80% of the agent's capacity before the burst
+	private static final double ARRIVAL_RATE = 2.7;
+	private static final long BURST_START = TimeUnit.MINUTES.toNanos(10);
+	private static final long BURST_END = TimeUnit.MINUTES.toNanos(11);
+	// Extra photos per second during the burst
+	private static final double BURST_PHOTO_RATE = 2;
+	private static final long LAST_ARRIVAL = SIMULATED_NANOS - TimeUnit.MINUTES.toNanos(5);
+	private static final long OUTAGE_START = TimeUnit.MINUTES.toNanos(5);
+	private static final long OUTAGE_END = TimeUnit.MINUTES.toNanos(6);
+	// Time to refuse a call while the agent is down
+	private static final long REFUSAL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+	@Test
+	void textP99StaysLowUnderMixedLoad() {
+		Map<AdmissionScheduler.CostClass, double[]> fifo = simulate(false, false, 0).latencies();
+		Map<AdmissionScheduler.CostClass, double[]> scheduled = simulate(true, false, 0).latencies();
+
+		String table = table(fifo, scheduled);
+		double fifoText = percentile(fifo.get(AdmissionScheduler.CostClass.TEXT), 0.99);
+		double scheduledText = percentile(scheduled.get(AdmissionScheduler.CostClass.TEXT), 0.99);
+		assertTrue(scheduledText < fifoText / 5, table);
+		// A text takes about a second, even during the burst it waits only a few more
+		assertTrue(scheduledText < 10, table);
+		// Every message was answered, the photos of the burst took longer
+		for (AdmissionScheduler.CostClass costClass : AdmissionScheduler.CostClass.values()) {
+			assertEquals(fifo.get(costClass).length, scheduled.get(costClass).length, table);
+		}
+	}
+
+	@Test
+	void limitRecoversAfterCallsFailFast() {
+		// Measured from two minutes after the agent is back
+		Run run = simulate(true, true, OUTAGE_END + TimeUnit.MINUTES.toNanos(2));
+
+		String limits = String.format("limit %d, texts p50 %.1f s, p99 %.1f s", run.limit(),
+				percentile(run.latencies().get(AdmissionScheduler.CostClass.TEXT), 0.5),
+				percentile(run.latencies().get(AdmissionScheduler.CostClass.TEXT), 0.99));
+		// The instant refusals don't set the latency the later replies are judged by
+		assertTrue(run.limit() >= AGENT_CAPACITY, limits);
+		assertTrue(percentile(run.latencies().get(AdmissionScheduler.CostClass.TEXT), 0.99) < 10, limits);
+	}
+
+	/**
+	 * @return p50 and p99 of each class without and with the scheduler, for assertion messages
+	 */
+	private static String table(Map<AdmissionScheduler.CostClass, double[]> fifo,
+	                            Map<AdmissionScheduler.CostClass, double[]> scheduled) {
+		StringBuilder table = new StringBuilder(String.format("%n%-6s %22s %22s", "class", "agent queue p50/p99 s", "scheduler p50/p99 s"));
+		for (AdmissionScheduler.CostClass costClass : AdmissionScheduler.CostClass.values()) {
+			table.append(String.format("%n%-6s %10.1f /%9.1f %10.1f /%9.1f", costClass,
+					percentile(fifo.get(costClass), 0.5), percentile(fifo.get(costClass), 0.99),
+					percentile(scheduled.get(costClass), 0.5), percentile(scheduled.get(costClass), 0.99)));
+		}
+		return table.toString();
+	}
+
+	/**
+	 * @param enabled Whether the scheduler limits the calls
+	 * @param outage Whether the agent is down for a minute instead of getting a burst of photos
+	 * @param measuredFrom Time from which arriving messages are measured
+	 * @return Seconds from arrival to reply of every message answered, by class, and the
+	 * scheduler's limit once the last messages have arrived
+	 */
+	private static Run simulate(boolean enabled, boolean outage, long measuredFrom) {
+		Simulation simulation = new Simulation();
+		AdmissionScheduler scheduler = new AdmissionScheduler(enabled, new AimdLimit(10, 2, 40, 0.9), 1.5,
+				100_000, new double[] {4, 1, 1}, Set.of(), new SimpleMeterRegistry(), () -> simulation.now);
+		Agent agent = new Agent(simulation, outage);
+		Random random = new Random(42);
+		Map<AdmissionScheduler.CostClass, List<Double>> latencies = new EnumMap<>(AdmissionScheduler.CostClass.class);
+		for (AdmissionScheduler.CostClass costClass : AdmissionScheduler.CostClass.values()) {
+			latencies.put(costClass, new ArrayList<>());
+		}
+
+		Runnable[] arrival = new Runnable[1];
+		arrival[0] = () -> {
+			double draw = random.nextDouble();
+			AdmissionScheduler.CostClass costClass = draw < 0.7 ? AdmissionScheduler.CostClass.TEXT
+					: draw < 0.9 ? AdmissionScheduler.CostClass.PHOTO : AdmissionScheduler.CostClass.PDF;
+			send(simulation, scheduler, agent, random, costClass, measuredFrom, latencies);
+			simulation.after(exponential(random, ARRIVAL_RATE), arrival[0]);
+		};
+		simulation.after(0, arrival[0]);
+		Runnable[] burst = new Runnable[1];
+		burst[0] = () -> {
+			send(simulation, scheduler, agent, random, AdmissionScheduler.CostClass.PHOTO, 0, latencies);
+			long next = exponential(random, BURST_PHOTO_RATE);
+			if (simulation.now + next < BURST_END) {
+				simulation.after(next, burst[0]);
+			}
+		};
+		if (!outage) {
+			simulation.after(BURST_START, burst[0]);
+		}
+		int[] limit = new int[1];
+		simulation.after(LAST_ARRIVAL, () -> limit[0] = scheduler.getLimit());
+		simulation.run(SIMULATED_NANOS);
+
+		Map<AdmissionScheduler.CostClass, double[]> result = new EnumMap<>(AdmissionScheduler.CostClass.class);
+		latencies.forEach((costClass, values) -> result.put(costClass, values.stream().mapToDouble(Double::doubleValue).sorted().toArray()));
+		return new Run(result, limit[0]);
+	}
+
+	private record Run(Map<AdmissionScheduler.CostClass, double[]> latencies, int limit) {
+	}
+
+	private static void send(Simulation simulation, AdmissionScheduler scheduler, Agent agent, Random random,
+	                         AdmissionScheduler.CostClass costClass, long measuredFrom,
+	                         Map<AdmissionScheduler.CostClass, List<Double>> latencies) {
+		if (simulation.now >= LAST_ARRIVAL) {
+			// The last minutes only drain what is queued
+			return;
+		}
+		long arrivedAt = simulation.now;
+		long work = serviceTime(random, costClass);
+		CompletableFuture<AiReply> reply = scheduler.submit(costClass, () -> agent.call(work));
+		if (arrivedAt >= measuredFrom) {
+			reply.thenRun(() -> latencies.get(costClass).add((simulation.now - arrivedAt) / 1e9));
+		}
+	}
+
+	/**
+	 * Time the agent works on a request: a second for a text, four to download and
+	 * read a photo, eight to generate a PDF, give or take a third
+	 */
+	private static long serviceTime(Random random, AdmissionScheduler.CostClass costClass) {
+		double median = switch (costClass) {
+			case TEXT -> 1;
+			case PHOTO -> 4;
+			case PDF -> 8;
+		};
+		return (long) (median * Math.exp(0.3 * random.nextGaussian()) * 1e9);
+	}
+
+	private static long exponential(Random random, double perSecond) {
+		return (long) (-Math.log(1 - random.nextDouble()) / perSecond * 1e9);
+	}
+
+	private static double percentile(double[] sorted, double quantile) {
+		return sorted[(int) Math.ceil(quantile * sorted.length) - 1];
+	}
+
+	/**
+	 * Virtual clock and the events due at each instant, run on the calling thread
+	 */
+	private static final class Simulation {
+		private final PriorityQueue<Event> events = new PriorityQueue<>();
+		private long now;
+		private long sequence;
+
+		void after(long delayNanos, Runnable action) {
+			events.add(new Event(now + delayNanos, sequence++, action));
+		}
+
+		void run(long untilNanos) {
+			while (!events.isEmpty() && events.peek().at <= untilNanos) {
+				Event event = events.poll();
+				now = event.at;
+				event.action.run();
+			}
+		}
+
+		private record Event(long at, long sequence, Runnable action) implements Comparable<Event> {
+			@Override
+			public int compareTo(Event other) {
+				return at != other.at ? Long.compare(at, other.at) : Long.compare(sequence, other.sequence);
+			}
+		}
+	}
+
+	/**
+	 * Agent working on a fixed number of requests at once, the others wait in arrival order.
+	 * While it is down its calls are refused, alternately by the connection and by the
+	 * circuit breaker asking to try later
+	 */
+	private static final class Agent {
+		private final Simulation simulation;
+		private final boolean outage;
+		private final Queue<Runnable> waiting = new ArrayDeque<>();
+		private int busy;
+		private int refused;
+
+		Agent(Simulation simulation, boolean outage) {
+			this.simulation = simulation;
+			this.outage = outage;
+		}
+
+		CompletableFuture<AiReply> call(long workNanos) {
+			CompletableFuture<AiReply> reply = new CompletableFuture<>();
+			if (outage && simulation.now >= OUTAGE_START && simulation.now < OUTAGE_END) {
+				boolean connectionRefused = refused++ % 2 == 0;
+				simulation.after(REFUSAL_NANOS, () -> {
+					if (connectionRefused) {
+						reply.completeExceptionally(new ConnectException("Connection refused"));
+					} else {
+						reply.complete(AiResilience.TRY_LATER_REPLY);
+					}
+				});
+				return reply;
+			}
+			Runnable work = () -> simulation.after(workNanos, () -> {
+				busy--;
+				Runnable next = waiting.poll();
+				if (next != null) {
+					busy++;
+					next.run();
+				}
+				reply.complete(REPLY);
+			});
+			if (busy < AGENT_CAPACITY) {
+				busy++;
+				work.run();
+			} else {
+				waiting.add(work);
+			}
+			return reply;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.AiReply;
+import com.curriculum.CurriculumUruguay.util.CircuitBreaker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the AI service against a local stub of the agent that injects errors and delays.
+ */
+class AiResilienceTest {
+
+	private static final String OK_BODY = "{\"message\":{\"message\":\"hola\",\"status\":\"ok\"}}";
+
+	private HttpServer server;
+	private ExecutorService executor;
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	/** Faults applied to the next requests, each one is a status code or a negative delay in ms */
+	private final Deque<Integer> faults = new ArrayDeque<>();
+	private final AtomicInteger requests = new AtomicInteger();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private volatile String okBody = OK_BODY;
+
+	@BeforeEach
+	void startStub() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/text", this::handle);
+		server.start();
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@AfterEach
+	void stopStub() {
+		release.countDown();
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		exchange.getRequestBody().readAllBytes();
+		Integer fault;
+		synchronized (faults) {
+			fault = faults.pollFirst();
+		}
+		if (fault != null && fault < 0) {
+			try {
+				release.await(-fault, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		int status = fault != null && fault > 0 ? fault : 200;
+		byte[] body = (status == 200 ? okBody : "{}").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		if (status == 503) {
+			exchange.getResponseHeaders().add("Retry-After", "1");
+		}
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private void inject(Integer... values) {
+		synchronized (faults) {
+			faults.addAll(List.of(values));
+		}
+	}
+
+	private AiService newService(AiResilience resilience) {
+		HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(executor).build();
+		AiConnectionPool pool = new AiConnectionPool(50, 20, Duration.ofSeconds(10), registry);
+		AiService service = new AiService(httpClient, pool, new ObjectMapper(), executor,
+				new PipelineMetrics(registry), new PayloadLogSampler(0), resilience, 262144);
+		ReflectionTestUtils.setField(service, "agentUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+		ReflectionTestUtils.setField(service, "responseTimeout", Duration.ofSeconds(10));
+		ReflectionTestUtils.setField(service, "readTimeout", Duration.ofSeconds(10));
+		return service;
+	}
+
+	private AiResilience newResilience(int minimumCalls, int maxConcurrent, int maxAttempts, boolean hedge) {
+		return new AiResilience(10, minimumCalls, 0.5, Duration.ofMinutes(1), maxConcurrent, maxAttempts,
+				Duration.ofMillis(10), Duration.ofMillis(50), hedge, Duration.ofMillis(100), registry);
+	}
+
+	private AiReply text(AiService service) throws Exception {
+		return service.sendTextToAiAsync("1", "hola").get(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	void retriesUnavailableAgentWithBackoff() throws Exception {
+		AiService service = newService(newResilience(10, 10, 3, false));
+		inject(503, 503);
+
+		assertEquals("hola", text(service).message());
+		assertEquals(3, requests.get());
+		assertEquals(2.0, registry.get("bot.ai.resilience").tag("event", "retry").counter().count());
+	}
+
+	@Test
+	void doesNotRetryErrorsTheAgentMayHaveProcessed() {
+		AiService service = newService(newResilience(10, 10, 3, false));
+		// A gateway error doesn't say whether the agent got the request
+		inject(500, 502, 504);
+
+		for (int status : new int[] {500, 502, 504}) {
+			ExecutionException error = assertThrows(ExecutionException.class, () -> text(service));
+			assertEquals(status, assertInstanceOf(AiService.AiStatusException.class, error.getCause()).getStatusCode());
+		}
+		assertEquals(3, requests.get());
+	}
+
+	@Test
+	void responseWithoutMessageDecodesToAnEmptyReply() throws Exception {
+		AiService service = newService(newResilience(10, 10, 1, false));
+		okBody = "{\"status\":\"ok\"}";
+
+		AiReply reply = text(service);
+		assertNull(reply.message());
+		assertFalse(reply.hasPdf());
+	}
+
+	@Test
+	void openCircuitAnswersWithoutCallingAgent() throws Exception {
+		AiResilience resilience = newResilience(3, 10, 1, false);
+		AiService service = newService(resilience);
+		inject(500, 500, 500);
+
+		for (int i = 0; i < 3; i++) {
+			assertThrows(ExecutionException.class, () -> text(service));
+		}
+		assertEquals(CircuitBreaker.State.OPEN, resilience.getState("text"));
+
+		assertSame(AiResilience.TRY_LATER_REPLY, text(service));
+		assertEquals(3, requests.get());
+	}
+
+	@Test
+	void bulkheadRejectsCallsOverTheLimit() throws Exception {
+		AiService service = newService(newResilience(10, 1, 1, false));
+		inject(-5000);
+
+		CompletableFuture<AiReply> slow = service.sendTextToAiAsync("1", "hola");
+		assertSame(AiResilience.TRY_LATER_REPLY, text(service));
+
+		release.countDown();
+		assertEquals("hola", slow.get(10, TimeUnit.SECONDS).message());
+		assertEquals(1.0, registry.get("bot.ai.resilience").tag("event", "bulkhead_rejected").counter().count());
+	}
+
+	@Test
+	void hedgedRequestAnswersWhenFirstIsSlow() throws Exception {
+		AiService service = newService(newResilience(10, 10, 1, true));
+		inject(-5000);
+
+		long start = System.nanoTime();
+		assertEquals("hola", text(service).message());
+
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+		assertEquals(2, requests.get());
+		assertEquals(1.0, registry.get("bot.ai.resilience").tag("event", "hedge").counter().count());
+	}
+}
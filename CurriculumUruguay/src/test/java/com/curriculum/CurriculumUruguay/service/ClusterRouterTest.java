@@ -0,0 +1,127 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Forwards messages to stub workers that answer late or refuse them
+ */
+class ClusterRouterTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final List<HttpServer> servers = new ArrayList<>();
+	private ClusterRouter router;
+
+	@AfterEach
+	void tearDown() {
+		router.shutdown();
+		servers.forEach(server -> server.stop(0));
+	}
+
+	/**
+	 * @param status Status the worker answers with
+	 * @param delayMillis Time the worker takes to answer
+	 * @param received Ids of the messages the worker received, in order
+	 * @return Base URL of the worker
+	 */
+	private String worker(int status, long delayMillis, List<String> received, CountDownLatch requested) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/cluster/messages", exchange -> {
+			for (JsonNode message : objectMapper.readTree(exchange.getRequestBody())) {
+				received.add(message.get("messageId").asText());
+			}
+			requested.countDown();
+			try {
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.sendResponseHeaders(status, -1);
+			exchange.close();
+		});
+		server.start();
+		servers.add(server);
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	private static InboundMessage message(String messageId) {
+		return new InboundMessage("telegram", "1", "1", null, messageId, "text", "hola " + messageId, null, null);
+	}
+
+	private ClusterRouter newRouter(Duration requestTimeout) {
+		return new ClusterRouter(ClusterRouter.ROLE_INGRESS, "test-secret", 128, 100, 1000, requestTimeout,
+				Duration.ofMinutes(1), Duration.ofMinutes(2), objectMapper, registry);
+	}
+
+	private static void awaitSize(List<String> received, int size) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (received.size() < size && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	void doesNotRerouteABatchTheWorkerMayHaveReceived() throws Exception {
+		router = newRouter(Duration.ofMillis(300));
+		List<String> slow = Collections.synchronizedList(new ArrayList<>());
+		List<String> other = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch slowRequested = new CountDownLatch(1);
+		String slowUrl = worker(200, 2000, slow, slowRequested);
+		router.register(slowUrl);
+
+		assertTrue(router.forward(message("1")));
+		assertTrue(slowRequested.await(5, TimeUnit.SECONDS));
+		router.register(worker(200, 0, other, new CountDownLatch(1)));
+
+		// The slow worker times out and is removed, its batch isn't sent to the other one
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (router.getWorkers().contains(slowUrl) && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(router.forward(message("2")));
+		awaitSize(other, 1);
+		assertEquals(List.of("2"), other);
+		assertEquals(1.0, registry.get("bot.cluster.forwarded").tag("result", "unconfirmed").counter().count());
+	}
+
+	@Test
+	void reroutesMessagesTheWorkerRefusedAheadOfNewOnes() throws Exception {
+		router = newRouter(Duration.ofSeconds(5));
+		List<String> refusing = Collections.synchronizedList(new ArrayList<>());
+		List<String> other = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch refusingRequested = new CountDownLatch(1);
+		String refusingUrl = worker(401, 500, refusing, refusingRequested);
+		router.register(refusingUrl);
+
+		assertTrue(router.forward(message("1")));
+		assertTrue(refusingRequested.await(5, TimeUnit.SECONDS));
+		assertTrue(router.forward(message("2")));
+		router.register(worker(200, 0, other, new CountDownLatch(1)));
+		router.deregister(refusingUrl);
+		// Arrives while the refused messages are still on their way back
+		assertTrue(router.forward(message("3")));
+
+		awaitSize(other, 3);
+		assertEquals(List.of("1", "2", "3"), other);
+		assertEquals(List.of("1"), refusing);
+	}
+}
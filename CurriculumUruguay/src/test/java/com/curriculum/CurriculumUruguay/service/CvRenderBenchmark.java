@@ -0,0 +1,113 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.benchmark.AiResponses;
+import com.curriculum.CurriculumUruguay.model.AiReply;
+import com.curriculum.CurriculumUruguay.model.PdfData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The curriculum delivered as a Base64 PDF generated by the agent, decoded by the
+ * bot, against the same curriculum delivered as data and rendered by the bot. The
+ * agent's PDF is the one the bot renders, so both paths produce the same document;
+ * the sizes of both responses are printed on setup. Lives next to CvRenderer
+ * because renderNow is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CvRenderBenchmark {
+
+    static final String DEJAVU = "/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf";
+    static final String DEJAVU_BOLD = "/usr/share/fonts/truetype/dejavu/DejaVuSans-Bold.ttf";
+
+    /**
+     * Fonts of the document: standard Helvetica or an embedded TrueType subset
+     */
+    @Param({"standard", "embedded"})
+    public String fonts;
+
+    private CvRenderer renderer;
+    private ObjectReader replyReader;
+    private byte[] base64Response;
+    private byte[] cvResponse;
+
+    @Setup
+    public void setUp() throws IOException {
+        boolean embedded = fonts.equals("embedded");
+        if (embedded && !Files.exists(Path.of(DEJAVU))) {
+            throw new IllegalStateException("Embedded fonts need " + DEJAVU);
+        }
+        renderer = new CvRenderer(true, new ClassPathResource("cv-template.txt"), embedded ? DEJAVU : "",
+                embedded ? DEJAVU_BOLD : "", 1, 1, 262144, new SimpleMeterRegistry());
+        replyReader = new ObjectMapper().readerFor(AiReply.class).at("/message");
+
+        cvResponse = AiResponses.cvReply();
+        AiReply reply = replyReader.readValue(cvResponse);
+        try (PdfData pdf = renderer.renderNow(reply.cv()); InputStream in = pdf.openStream()) {
+            base64Response = AiResponses.reply(in.readAllBytes());
+        }
+        System.out.printf("%nResponse bytes: base64 PDF %d, cv data %d%n", base64Response.length, cvResponse.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        renderer.shutdown();
+    }
+
+    /**
+     * Current path: the agent renders, the bot decodes the Base64 PDF from the response
+     */
+    @Benchmark
+    public long decodeBase64Pdf() throws IOException {
+        AiReply reply = replyReader.readValue(new ByteArrayInputStream(base64Response));
+        try (PdfData pdf = reply.pdfData()) {
+            return pdf.size();
+        }
+    }
+
+    /**
+     * Local rendering: the bot decodes the curriculum data and renders the PDF
+     */
+    @Benchmark
+    public long decodeCvAndRender() throws IOException {
+        AiReply reply = replyReader.readValue(new ByteArrayInputStream(cvResponse));
+        try (PdfData pdf = renderer.renderNow(reply.cv())) {
+            return pdf.size();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CvRenderBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,113 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImagePreprocessorTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final ExecutorService ioExecutor = Executors.newCachedThreadPool();
+	private final ImagePreprocessor preprocessor = new ImagePreprocessor(true, 1280, 50_000_000, 0.85f, 2, 8, ioExecutor, registry);
+
+	@AfterEach
+	void tearDown() {
+		preprocessor.shutdown();
+		ioExecutor.shutdownNow();
+	}
+
+	private static byte[] png(int width, int height) throws Exception {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setPaint(new GradientPaint(0, 0, Color.BLUE, width, height, new Color(255, 200, 0, 128)));
+		graphics.fillRect(0, 0, width, height);
+		graphics.dispose();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+
+	@Test
+	void downscalesAndReencodesLargeImage() throws Exception {
+		byte[] original = png(3000, 2000);
+
+		ImagePreprocessor.PreparedImage prepared = preprocessor.prepare(() -> new ByteArrayInputStream(original))
+				.get(30, TimeUnit.SECONDS);
+
+		assertEquals(ImagePreprocessor.JPEG, prepared.contentType());
+		assertEquals("image.jpg", prepared.filename());
+		assertEquals(ImagePreprocessor.JPEG, ImagePreprocessor.detectContentType(prepared.data()));
+		BufferedImage result = ImageIO.read(new ByteArrayInputStream(prepared.data()));
+		assertEquals(1280, result.getWidth());
+		assertEquals(853, result.getHeight());
+		assertTrue(prepared.data().length < original.length);
+		assertEquals(1, registry.get("bot.image.bytes.saved").summary().count());
+		assertEquals(1, registry.get("bot.image.preprocess").timer().count());
+	}
+
+	@Test
+	void stripsMetadataOfSmallJpegEvenWhenReencodingGrowsIt() throws Exception {
+		ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB), "jpg", jpeg);
+		byte[] plain = jpeg.toByteArray();
+		// APP1 segment with an EXIF payload right after the SOI marker
+		byte[] exif = "Exif\0\0GPS -34.9011 -56.1645".getBytes(StandardCharsets.ISO_8859_1);
+		ByteArrayOutputStream tagged = new ByteArrayOutputStream();
+		tagged.write(plain, 0, 2);
+		tagged.write(new byte[] {(byte) 0xFF, (byte) 0xE1, 0, (byte) (exif.length + 2)});
+		tagged.write(exif);
+		tagged.write(plain, 2, plain.length - 2);
+
+		ImagePreprocessor.PreparedImage prepared = preprocessor.process(tagged.toByteArray());
+
+		assertEquals(ImagePreprocessor.JPEG, prepared.contentType());
+		assertFalse(new String(prepared.data(), StandardCharsets.ISO_8859_1).contains("GPS"));
+	}
+
+	@Test
+	void doesNotDecodeImagesOverThePixelLimit() throws Exception {
+		ImagePreprocessor limited = new ImagePreprocessor(true, 1280, 10_000, 0.85f, 1, 1, ioExecutor, registry);
+		byte[] huge = png(200, 100);
+
+		try {
+			ImagePreprocessor.PreparedImage prepared = limited.process(huge);
+
+			assertSame(huge, prepared.data());
+			assertEquals(ImagePreprocessor.PNG, prepared.contentType());
+		} finally {
+			limited.shutdown();
+		}
+	}
+
+	@Test
+	void sendsUndecodableImageUnchanged() {
+		byte[] webp = "RIFF\0\0\0\0WEBPVP8 not really an image".getBytes();
+
+		ImagePreprocessor.PreparedImage prepared = preprocessor.process(webp);
+
+		assertSame(webp, prepared.data());
+		assertEquals(ImagePreprocessor.WEBP, prepared.contentType());
+		assertEquals("image.webp", prepared.filename());
+	}
+
+	@Test
+	void detectsContentTypeFromLeadingBytes() throws Exception {
+		assertEquals(ImagePreprocessor.PNG, ImagePreprocessor.detectContentType(png(2, 2)));
+		assertEquals(ImagePreprocessor.GIF, ImagePreprocessor.detectContentType("GIF89a...".getBytes()));
+		assertEquals(ImagePreprocessor.UNKNOWN, ImagePreprocessor.detectContentType("hola".getBytes()));
+	}
+}
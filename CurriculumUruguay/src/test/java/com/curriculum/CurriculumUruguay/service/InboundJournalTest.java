@@ -0,0 +1,63 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InboundJournalTest {
+
+	@TempDir
+	Path directory;
+
+	private InboundJournal open() throws IOException {
+		return new InboundJournal(true, directory, 1 << 16, Duration.ofMillis(10), Duration.ofSeconds(30),
+				new ObjectMapper(), new SimpleMeterRegistry());
+	}
+
+	private static InboundMessage text(String userId, String messageId, String text) {
+		return new InboundMessage("telegram", userId, userId, null, messageId, "text", text, null, null);
+	}
+
+	@Test
+	void recoversUnansweredMessagesInArrivalOrder() throws Exception {
+		InboundJournal journal = open();
+		assertTrue(journal.append(text("1", "10", "Trabajé en Antel")));
+		assertTrue(journal.append(text("2", "20", "hola")));
+		InboundMessage photo = new InboundMessage("telegram", "1", "1", null, "11", "photo", null, "mi CV",
+				new InboundMessage.Media("file-1", "image/jpeg", 2048L));
+		assertTrue(journal.append(photo));
+		journal.complete(text("2", "20", "hola"));
+		journal.shutdown();
+
+		InboundJournal reopened = open();
+		assertEquals(List.of(text("1", "10", "Trabajé en Antel"), photo), reopened.getRecovered());
+		reopened.shutdown();
+	}
+
+	@Test
+	void completingAMessageAcknowledgesEarlierOnesOfTheConversation() throws Exception {
+		InboundJournal journal = open();
+		journal.append(text("1", "10", "a"));
+		journal.append(text("1", "11", "b"));
+		journal.append(text("1", "12", "c"));
+		journal.append(text("2", "20", "d"));
+		// "a" and "b" were merged into the reply to "b"
+		journal.complete(text("1", "11", "a\nb"));
+		// Unknown messages don't acknowledge anything
+		journal.complete(text("1", "99", "x"));
+		journal.shutdown();
+
+		InboundJournal reopened = open();
+		assertEquals(List.of("12", "20"), reopened.getRecovered().stream().map(InboundMessage::messageId).toList());
+		reopened.shutdown();
+	}
+}
@@ -0,0 +1,85 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InteractionLogTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void createTable() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE interaction_log (id BIGINT AUTO_INCREMENT PRIMARY KEY, received_at TIMESTAMP NOT NULL,"
+				+ " channel VARCHAR(32) NOT NULL, user_id VARCHAR(64) NOT NULL, event_type VARCHAR(32) NOT NULL, message_id VARCHAR(128))");
+	}
+
+	@AfterEach
+	void shutdownDatabase() {
+		database.shutdown();
+	}
+
+	private InteractionLog newLog(int capacity, int batchSize) {
+		StaticListableBeanFactory beans = new StaticListableBeanFactory();
+		beans.addBean("dataSource", database);
+		return new InteractionLog(capacity, batchSize, Duration.ofHours(1), beans.getBeanProvider(DataSource.class), registry);
+	}
+
+	private static InboundMessage text(int userId) {
+		return new InboundMessage("telegram", String.valueOf(userId), String.valueOf(userId), null, "1", "text", "hola", null, null);
+	}
+
+	@Test
+	void writesBufferedEventsOnShutdown() throws InterruptedException {
+		InteractionLog log = newLog(1024, 100);
+		for (int i = 0; i < 250; i++) {
+			assertTrue(log.record(text(i)));
+		}
+		log.shutdown();
+
+		assertEquals(250, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM interaction_log", Integer.class));
+		assertEquals("text", jdbcTemplate.queryForObject(
+				"SELECT event_type FROM interaction_log WHERE user_id = '42'", String.class));
+		assertEquals(250.0, registry.get("bot.interaction.log.events").tag("result", "written").counter().count());
+	}
+
+	@Test
+	void dropsEventsWhenBufferIsFull() throws InterruptedException {
+		// Larger batches than the buffer, so only the shutdown drains it
+		InteractionLog log = newLog(4, 100);
+		for (int i = 0; i < 6; i++) {
+			log.record(text(i));
+		}
+		assertEquals(4.0, registry.get("bot.interaction.log.events").tag("result", "accepted").counter().count());
+		assertEquals(2.0, registry.get("bot.interaction.log.events").tag("result", "dropped").counter().count());
+
+		log.shutdown();
+		assertEquals(4, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM interaction_log", Integer.class));
+	}
+
+	@Test
+	void countsBatchesTheDatabaseRejects() throws InterruptedException {
+		jdbcTemplate.execute("DROP TABLE interaction_log");
+		InteractionLog log = newLog(16, 8);
+		log.record(text(1));
+		log.shutdown();
+		assertEquals(1.0, registry.get("bot.interaction.log.events").tag("result", "failed").counter().count());
+	}
+}
@@ -0,0 +1,115 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageCoalescerTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	// Batches handed to the dispatcher, started by the test like a worker would
+	private final BlockingQueue<Supplier<InboundMessage>> dispatched = new LinkedBlockingQueue<>();
+	private final MessageCoalescer.Dispatch dispatch = merged -> dispatched.add(merged);
+
+	private MessageCoalescer coalescer;
+
+	@AfterEach
+	void shutdown() {
+		coalescer.shutdown();
+	}
+
+	private static InboundMessage text(String userId, String text) {
+		return new InboundMessage("telegram", userId, userId, null, text, "text", text, null, null);
+	}
+
+	private Supplier<InboundMessage> nextBatch() throws InterruptedException {
+		Supplier<InboundMessage> batch = dispatched.poll(2, TimeUnit.SECONDS);
+		assertNotNull(batch, "no batch was dispatched");
+		return batch;
+	}
+
+	@Test
+	void mergesMessagesWithinWindowInOrder() throws InterruptedException {
+		coalescer = new MessageCoalescer(true, Duration.ofMillis(200), Duration.ofSeconds(5), 10, registry);
+		coalescer.add(text("1", "Trabajé en Antel"), dispatch);
+		coalescer.add(text("1", "de 2018 a 2022"), dispatch);
+		coalescer.add(text("2", "hola"), dispatch);
+		coalescer.add(text("1", "como desarrollador"), dispatch);
+
+		InboundMessage first = nextBatch().get();
+		InboundMessage second = nextBatch().get();
+		InboundMessage user1 = first.userId().equals("1") ? first : second;
+		assertEquals("Trabajé en Antel\nde 2018 a 2022\ncomo desarrollador", user1.text());
+		assertEquals("como desarrollador", user1.messageId());
+		assertNull(dispatched.poll(400, TimeUnit.MILLISECONDS));
+		assertEquals(2.0, registry.get("bot.coalesce.merged").counter().count());
+	}
+
+	@Test
+	void keepsBatchOpenUntilItStarts() throws InterruptedException {
+		coalescer = new MessageCoalescer(true, Duration.ofMillis(50), Duration.ofSeconds(5), 10, registry);
+		coalescer.add(text("1", "a"), dispatch);
+		Supplier<InboundMessage> batch = nextBatch();
+
+		// The previous AI call of the user is still running, the batch hasn't started
+		coalescer.add(text("1", "b"), dispatch);
+		assertEquals("a\nb", batch.get().text());
+
+		// Once started, later messages go to a new batch
+		coalescer.add(text("1", "c"), dispatch);
+		assertEquals("c", nextBatch().get().text());
+	}
+
+	@Test
+	void dispatchesAtMaxWaitWhileUserKeepsTyping() throws InterruptedException {
+		coalescer = new MessageCoalescer(true, Duration.ofMillis(100), Duration.ofMillis(300), 100, registry);
+		long start = System.nanoTime();
+		for (int i = 0; i < 12; i++) {
+			coalescer.add(text("1", String.valueOf(i)), dispatch);
+			Thread.sleep(50);
+		}
+		Supplier<InboundMessage> batch = dispatched.poll();
+		assertNotNull(batch, "batch should be dispatched at max wait even though the window never elapsed");
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+		assertTrue(batch.get().text().startsWith("0\n1\n2"));
+	}
+
+	@Test
+	void sealDispatchesPendingTextsFirst() throws InterruptedException {
+		coalescer = new MessageCoalescer(true, Duration.ofSeconds(10), Duration.ofSeconds(10), 10, registry);
+		coalescer.add(text("1", "a"), dispatch);
+		coalescer.add(text("1", "b"), dispatch);
+
+		// A photo arrives, the texts must be dispatched before it without waiting for the window
+		coalescer.seal("telegram:1");
+		Supplier<InboundMessage> batch = dispatched.poll();
+		assertNotNull(batch);
+
+		// Texts after the photo don't join the batch that goes before it
+		coalescer.add(text("1", "c"), dispatch);
+		assertEquals("a\nb", batch.get().text());
+	}
+
+	@Test
+	void startsNewBatchWhenFull() throws InterruptedException {
+		coalescer = new MessageCoalescer(true, Duration.ofSeconds(10), Duration.ofSeconds(10), 2, registry);
+		coalescer.add(text("1", "a"), dispatch);
+		coalescer.add(text("1", "b"), dispatch);
+		Supplier<InboundMessage> full = dispatched.poll();
+		assertNotNull(full);
+		coalescer.add(text("1", "c"), dispatch);
+		assertEquals("a\nb", full.get().text());
+		coalescer.seal("telegram:1");
+		assertEquals("c", nextBatch().get().text());
+	}
+}
@@ -0,0 +1,42 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.repository.PdfFileIdRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfFileIdCacheTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private PdfFileIdCache newCache(int maxEntries) {
+		return new PdfFileIdCache(maxEntries,
+				new StaticListableBeanFactory().getBeanProvider(PdfFileIdRepository.class), registry);
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedEntry() {
+		PdfFileIdCache cache = newCache(2);
+		cache.put("a", "file-a");
+		cache.put("b", "file-b");
+		assertEquals("file-a", cache.get("a"));
+
+		cache.put("c", "file-c");
+
+		assertEquals("file-a", cache.get("a"));
+		assertNull(cache.get("b"));
+		assertEquals("file-c", cache.get("c"));
+		assertEquals(3.0, registry.get("bot.pdf.file.id.cache.requests").tag("result", "hit").counter().count());
+		assertEquals(1.0, registry.get("bot.pdf.file.id.cache.requests").tag("result", "miss").counter().count());
+	}
+
+	@Test
+	void forgetsEvictedFileId() {
+		PdfFileIdCache cache = newCache(10);
+		cache.put("a", "file-a");
+		cache.evict("a");
+		assertNull(cache.get("a"));
+	}
+}
@@ -0,0 +1,46 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineMetricsTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final PipelineMetrics metrics = new PipelineMetrics(registry);
+
+	private Timer stage(String stage, String outcome) {
+		return registry.get(PipelineMetrics.STAGE_TIMER)
+				.tag("stage", stage)
+				.tag("event_type", "photo")
+				.tag("outcome", outcome)
+				.timer();
+	}
+
+	@Test
+	void recordsAsyncStageWhenFutureCompletes() {
+		CompletableFuture<String> call = new CompletableFuture<>();
+		metrics.time("ai.image", "photo", call);
+		assertTrue(registry.find(PipelineMetrics.STAGE_TIMER).timers().isEmpty());
+
+		call.completeExceptionally(new RuntimeException("boom"));
+
+		assertEquals(1, stage("ai.image", PipelineMetrics.ERROR).count());
+	}
+
+	@Test
+	void recordsFailedSyncStageAndRethrows() {
+		assertEquals("path", metrics.time("file_lookup", "photo", () -> "path"));
+		assertThrows(IllegalStateException.class, () -> metrics.time("file_lookup", "photo", () -> {
+			throw new IllegalStateException("boom");
+		}));
+
+		assertEquals(1, stage("file_lookup", PipelineMetrics.SUCCESS).count());
+		assertEquals(1, stage("file_lookup", PipelineMetrics.ERROR).count());
+	}
+}
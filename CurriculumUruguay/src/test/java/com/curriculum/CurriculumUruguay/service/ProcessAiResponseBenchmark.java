@@ -0,0 +1,127 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.benchmark.AiResponses;
+import com.curriculum.CurriculumUruguay.channel.ChannelAdapter;
+import com.curriculum.CurriculumUruguay.model.AiReply;
+import com.curriculum.CurriculumUruguay.model.InboundMessage;
+import com.curriculum.CurriculumUruguay.model.PdfData;
+import com.curriculum.CurriculumUruguay.repository.UserSessionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding an agent response and handing its text and PDF to a channel, the work
+ * done for every AI reply. The adapter drains the PDF like an upload would.
+ * Lives next to MessagePipeline because processAiResponse is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessAiResponseBenchmark {
+
+    /**
+     * Size of the generated PDF in bytes, 0 for a text-only reply
+     */
+    @Param({"0", "102400", "2097152"})
+    public int pdfBytes;
+
+    private static final InboundMessage MESSAGE =
+            new InboundMessage("telegram", "5102938475", "5102938475", null, "412", "text", "listo", null, null);
+
+    private byte[] response;
+    private ObjectReader replyReader;
+    private SessionStore sessionStore;
+    private MessagePipeline pipeline;
+    private final ChannelAdapter adapter = new DrainingAdapter();
+
+    @Setup
+    public void setUp() {
+        response = AiResponses.reply(pdfBytes);
+        replyReader = new ObjectMapper().readerFor(AiReply.class)
+                .at("/message")
+                .withAttribute(PdfData.MEMORY_THRESHOLD_ATTRIBUTE, 262_144);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        sessionStore = new SessionStore(10_000, Duration.ofHours(1), Duration.ofHours(1), 100,
+                new StaticListableBeanFactory().getBeanProvider(UserSessionRepository.class),
+                registry);
+        // Only the collaborators used after the AI call are needed, the replies carry no curriculum to render
+        pipeline = new MessagePipeline(null, null, new PipelineMetrics(registry), null, null, sessionStore,
+                null, null, null, null, null, null, null, null, null, 10_485_760);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        sessionStore.shutdown();
+    }
+
+    @Benchmark
+    public Void decodeAndProcess() throws IOException {
+        AiReply reply = replyReader.readValue(new ByteArrayInputStream(response));
+        return pipeline.processAiResponse(adapter, MESSAGE, reply).join();
+    }
+
+    private static final class DrainingAdapter implements ChannelAdapter {
+        private final byte[] buffer = new byte[8192];
+
+        @Override
+        public String channel() {
+            return "benchmark";
+        }
+
+        @Override
+        public CompletableFuture<Void> sendText(InboundMessage to, String text) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> sendPdf(InboundMessage to, PdfData pdfData, String filename, String caption) {
+            try (InputStream pdf = pdfData.openStream()) {
+                while (pdf.read(buffer) != -1) {
+                    // Read like the upload does
+                }
+                return CompletableFuture.completedFuture(null);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        @Override
+        public InputStream openMedia(InboundMessage.Media media) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ProcessAiResponseBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
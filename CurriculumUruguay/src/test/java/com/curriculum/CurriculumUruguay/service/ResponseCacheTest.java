@@ -0,0 +1,62 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.model.AiReply;
+import com.curriculum.CurriculumUruguay.model.PdfData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final ResponseCache cache = new ResponseCache(true, 100, Duration.ofMinutes(5), new String[] {"faq"}, 200,
+			"Bienvenido", "Ayuda", registry);
+
+	private final AtomicInteger calls = new AtomicInteger();
+
+	private Supplier<CompletableFuture<AiReply>> agent(AiReply reply) {
+		return () -> {
+			calls.incrementAndGet();
+			return CompletableFuture.completedFuture(reply);
+		};
+	}
+
+	@Test
+	void answersCommandsWithoutCallingTheAgent() {
+		AiReply reply = cache.reply("/start", agent(null)).join();
+		assertEquals("Bienvenido", reply.message());
+		assertEquals("Ayuda", cache.reply("/help@CurriculumBot", agent(null)).join().message());
+		assertEquals(0, calls.get());
+	}
+
+	@Test
+	void cachesRepliesMarkedCacheableForNormalizedQuestion() {
+		AiReply faq = new AiReply("Un CV de una página es suficiente.", "faq", null, null);
+		assertSame(faq, cache.reply("¿Qué largo debe tener un CV?", agent(faq)).join());
+		assertSame(faq, cache.reply("que largo debe tener un cv", agent(faq)).join());
+		assertSame(faq, cache.reply("  QUÉ largo debe tener un CV!! ", agent(faq)).join());
+
+		assertEquals(1, calls.get());
+		assertEquals(2.0, registry.get("bot.response.cache.requests").tag("result", "hit").counter().count());
+		assertEquals(2, registry.get("bot.response.cache.saved").timer().count());
+		assertEquals(2.0 / 3, registry.get("bot.response.cache.hit.ratio").gauge().value(), 1e-9);
+	}
+
+	@Test
+	void doesNotCacheConversationReplies() {
+		AiReply step = new AiReply("¿Dónde trabajaste?", "collecting", null, null);
+		AiReply withPdf = new AiReply("Listo", "faq", "cv.pdf", PdfData.of(new byte[] {1}));
+		cache.reply("hola", agent(step)).join();
+		cache.reply("hola", agent(step)).join();
+		cache.reply("genera el pdf", agent(withPdf)).join();
+		cache.reply("genera el pdf", agent(withPdf)).join();
+		assertEquals(4, calls.get());
+	}
+}
@@ -0,0 +1,119 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import com.curriculum.CurriculumUruguay.Bot;
+import com.curriculum.CurriculumUruguay.model.SessionState;
+import com.curriculum.CurriculumUruguay.model.UserSession;
+import com.curriculum.CurriculumUruguay.repository.UserSessionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs against an embedded H2 database, outside a test transaction so the
+ * writer thread and the test see the same committed rows
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SessionStoreTest {
+
+	@MockitoBean
+	private Bot bot;
+
+	@Autowired
+	private UserSessionRepository repository;
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private SessionStore newStore(int batchSize) {
+		StaticListableBeanFactory beans = new StaticListableBeanFactory();
+		beans.addBean("userSessionRepository", repository);
+		return new SessionStore(100, Duration.ofHours(1), Duration.ofHours(1), batchSize,
+				beans.getBeanProvider(UserSessionRepository.class), registry);
+	}
+
+	@AfterEach
+	void cleanUp() {
+		repository.deleteAll();
+	}
+
+	@Test
+	void writesChangesBehindInBatches() {
+		SessionStore store = newStore(1000);
+		for (int i = 0; i < 250; i++) {
+			store.update("telegram:" + i, session -> session.withStep(SessionState.STEP_STARTED));
+		}
+		store.update("telegram:7", session -> session.withAiStatus("collecting"));
+
+		// Visible right away from the cache, nothing written yet
+		assertEquals("collecting", store.get("telegram:7").lastAiStatus());
+		assertEquals(0, repository.count());
+		assertEquals(250, store.getPending());
+
+		store.flush();
+
+		assertEquals(250, repository.count());
+		assertEquals(0, store.getPending());
+		UserSession row = repository.findById("telegram:7").orElseThrow();
+		assertEquals(SessionState.STEP_STARTED, row.getCurrentStep());
+		assertEquals("collecting", row.getLastAiStatus());
+	}
+
+	@Test
+	void updatesRowsAlreadyWritten() {
+		SessionStore store = newStore(2);
+		store.update("telegram:1", session -> session.withStep(SessionState.STEP_STARTED));
+		store.flush();
+		assertTrue(store.get("telegram:1").stored());
+
+		store.update("telegram:1", session -> session.withStep(SessionState.STEP_CV_DELIVERED).withPdf("abc", "cv.pdf"));
+		store.flush();
+
+		assertEquals(1, repository.count());
+		UserSession row = repository.findById("telegram:1").orElseThrow();
+		assertEquals(SessionState.STEP_CV_DELIVERED, row.getCurrentStep());
+		assertEquals("cv.pdf", row.getLastPdfFilename());
+	}
+
+	@Test
+	void updatesRowsWhoseChangeRacedTheirInsert() {
+		SessionStore store = newStore(10);
+		store.update("telegram:1", session -> session.withStep(SessionState.STEP_STARTED));
+		store.flush();
+
+		// A change computed before the insert succeeded, still marked as not stored
+		store.update("telegram:1", session -> SessionState.empty("telegram:1", false).withStep(SessionState.STEP_CV_DELIVERED));
+		store.update("telegram:2", session -> session.withStep(SessionState.STEP_STARTED));
+		store.flush();
+
+		assertEquals(0, store.getPending());
+		assertEquals(2, repository.count());
+		assertEquals(SessionState.STEP_CV_DELIVERED, repository.findById("telegram:1").orElseThrow().getCurrentStep());
+	}
+
+	@Test
+	void readsFromDatabaseOnCacheMiss() throws InterruptedException {
+		SessionStore before = newStore(10);
+		before.update("whatsapp:59891234567", session -> session.withStep(SessionState.STEP_IN_PROGRESS).withAiStatus("review"));
+		// Pending changes are written when the application stops
+		before.shutdown();
+
+		SessionStore after = newStore(10);
+		SessionState session = after.get("whatsapp:59891234567");
+
+		assertEquals(SessionState.STEP_IN_PROGRESS, session.currentStep());
+		assertEquals("review", session.lastAiStatus());
+		assertTrue(session.stored());
+		assertNull(after.get("whatsapp:1").currentStep());
+		assertFalse(after.get("whatsapp:1").stored());
+	}
+}
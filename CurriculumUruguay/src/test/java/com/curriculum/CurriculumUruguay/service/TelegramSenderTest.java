@@ -0,0 +1,99 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TelegramSenderTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private TelegramSender sender;
+
+	@AfterEach
+	void tearDown() {
+		if (sender != null) {
+			sender.shutdown();
+		}
+	}
+
+	private TelegramSender newSender(DefaultAbsSender bot) {
+		return newSender(bot, 1, 3);
+	}
+
+	private TelegramSender newSender(DefaultAbsSender bot, double chatRate, double chatBurst) {
+		StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+		beanFactory.addBean("bot", bot);
+		return new TelegramSender(beanFactory.getBeanProvider(DefaultAbsSender.class), 30, chatRate, chatBurst, 5, registry);
+	}
+
+	@Test
+	void longTextFailsWhenAPartFails() throws Exception {
+		DefaultAbsSender bot = mock(DefaultAbsSender.class);
+		TelegramApiRequestException badRequest = new TelegramApiRequestException("Error sending message",
+				new JSONObject("{\"ok\":false,\"error_code\":400,\"description\":\"Bad Request\"}"));
+		when(bot.executeAsync(any(SendMessage.class)))
+				.thenReturn(CompletableFuture.failedFuture(badRequest))
+				.thenReturn(CompletableFuture.completedFuture(new Message()));
+		sender = newSender(bot, 10, 10);
+
+		ExecutionException error = assertThrows(ExecutionException.class,
+				() -> sender.sendText(1L, "x".repeat(10000)).get(5, TimeUnit.SECONDS));
+
+		assertSame(badRequest, error.getCause());
+		// The rest of the text isn't sent without its beginning
+		verify(bot, times(1)).executeAsync(any(SendMessage.class));
+	}
+
+	@Test
+	void retriesAfterDelayRequestedByTelegram() throws Exception {
+		DefaultAbsSender bot = mock(DefaultAbsSender.class);
+		TelegramApiRequestException tooManyRequests = new TelegramApiRequestException("Error sending message",
+				new JSONObject("{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests\",\"parameters\":{\"retry_after\":1}}"));
+		Message message = new Message();
+		when(bot.executeAsync(any(SendMessage.class)))
+				.thenReturn(CompletableFuture.failedFuture(tooManyRequests))
+				.thenReturn(CompletableFuture.completedFuture(message));
+		sender = newSender(bot);
+
+		long start = System.nanoTime();
+		assertSame(message, sender.sendText(1L, "hola").get(5, TimeUnit.SECONDS));
+
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+		verify(bot, times(2)).executeAsync(any(SendMessage.class));
+		assertEquals(1.0, registry.get("bot.telegram.send.throttled").tag("reason", "retry_after").counter().count());
+		assertEquals(0, sender.getQueued());
+	}
+
+	@Test
+	void throttledChatWakesUpAgainWhenItsOwnWakeupStartsNothing() throws Exception {
+		DefaultAbsSender bot = mock(DefaultAbsSender.class);
+		TelegramApiRequestException tooManyRequests = new TelegramApiRequestException("Error sending message",
+				new JSONObject("{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests\",\"parameters\":{\"retry_after\":1}}"));
+		Message message = new Message();
+		when(bot.executeAsync(any(SendMessage.class)))
+				.thenReturn(CompletableFuture.failedFuture(tooManyRequests))
+				.thenReturn(CompletableFuture.completedFuture(message));
+		// Once retry_after has passed the chat still lacks a token, the wakeup must schedule the next one
+		sender = newSender(bot, 0.9, 1);
+
+		assertSame(message, sender.sendText(1L, "hola").get(5, TimeUnit.SECONDS));
+
+		verify(bot, times(2)).executeAsync(any(SendMessage.class));
+		assertEquals(0, sender.getQueued());
+	}
+}
@@ -0,0 +1,122 @@
+package com.curriculum.CurriculumUruguay.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateDispatcherTest {
+
+	private UpdateDispatcher dispatcher;
+
+	@AfterEach
+	void tearDown() {
+		if (dispatcher != null) {
+			dispatcher.shutdown();
+		}
+	}
+
+	@Test
+	void keepsOrderWithinUser() throws InterruptedException {
+		dispatcher = new UpdateDispatcher(8, 100, 1000, false, new SimpleMeterRegistry());
+		List<Integer> processed = new CopyOnWriteArrayList<>();
+		CountDownLatch done = new CountDownLatch(50);
+
+		for (int i = 0; i < 50; i++) {
+			int sequence = i;
+			assertTrue(dispatcher.dispatch(1L, () -> {
+				processed.add(sequence);
+				done.countDown();
+			}));
+		}
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 50; i++) {
+			assertEquals(i, processed.get(i));
+		}
+	}
+
+	@Test
+	void startsNextTaskOnlyWhenAsyncStageCompletes() throws InterruptedException {
+		dispatcher = new UpdateDispatcher(1, 10, 100, false, new SimpleMeterRegistry());
+		CompletableFuture<Void> pending = new CompletableFuture<>();
+		CountDownLatch secondStarted = new CountDownLatch(1);
+		CountDownLatch otherUserDone = new CountDownLatch(1);
+
+		dispatcher.dispatchAsync(1L, () -> pending);
+		dispatcher.dispatch(1L, secondStarted::countDown);
+		// The single worker isn't held while the first stage is pending
+		dispatcher.dispatch(2L, otherUserDone::countDown);
+
+		assertTrue(otherUserDone.await(5, TimeUnit.SECONDS));
+		assertFalse(secondStarted.await(200, TimeUnit.MILLISECONDS));
+		pending.complete(null);
+		assertTrue(secondStarted.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void dropsQueuedTasksOnceShutDown() {
+		dispatcher = new UpdateDispatcher(1, 10, 100, false, new SimpleMeterRegistry());
+		CompletableFuture<Void> pending = new CompletableFuture<>();
+
+		dispatcher.dispatchAsync(1L, () -> pending);
+		dispatcher.dispatch(1L, () -> fail("ran after shutdown"));
+		dispatcher.dispatch(1L, () -> fail("ran after shutdown"));
+		dispatcher.shutdown();
+		pending.complete(null);
+
+		// Nothing is left for a graceful drain to wait for, and the user can queue again
+		assertEquals(0, dispatcher.getQueuedTotal());
+		dispatcher.dispatch(1L, () -> fail("ran after shutdown"));
+		assertEquals(0, dispatcher.getQueuedTotal());
+	}
+
+	@Test
+	void slowUserDoesNotBlockOthers() throws InterruptedException {
+		dispatcher = new UpdateDispatcher(4, 10, 100, false, new SimpleMeterRegistry());
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch otherDone = new CountDownLatch(1);
+
+		dispatcher.dispatch(1L, () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		dispatcher.dispatch(2L, otherDone::countDown);
+
+		assertTrue(otherDone.await(5, TimeUnit.SECONDS));
+		release.countDown();
+	}
+
+	@Test
+	void rejectsWhenUserQueueIsFull() throws InterruptedException {
+		dispatcher = new UpdateDispatcher(2, 2, 100, false, new SimpleMeterRegistry());
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+
+		assertTrue(dispatcher.dispatch(1L, () -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertTrue(dispatcher.dispatch(1L, () -> { }));
+		assertTrue(dispatcher.dispatch(1L, () -> { }));
+		assertFalse(dispatcher.dispatch(1L, () -> { }));
+		assertTrue(dispatcher.dispatch(2L, () -> { }));
+
+		release.countDown();
+	}
+}
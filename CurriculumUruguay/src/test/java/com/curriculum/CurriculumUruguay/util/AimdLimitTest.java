@@ -0,0 +1,49 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AimdLimitTest {
+
+	private final AimdLimit limit = new AimdLimit(10, 2, 20, 0.5);
+
+	@Test
+	void growsByAboutOnePerRoundTripWhileTheLimitIsUsed() {
+		for (int i = 0; i < 10; i++) {
+			limit.onSample(i, i + 1, false, 10);
+		}
+		assertEquals(10, limit.get(), "grown by less than one");
+		for (int i = 0; i < 2; i++) {
+			limit.onSample(i, i + 1, false, 10);
+		}
+		assertEquals(11, limit.get());
+
+		// Few calls in flight, the limit isn't what holds them back
+		for (int i = 0; i < 100; i++) {
+			limit.onSample(i, i + 1, false, 2);
+		}
+		assertEquals(11, limit.get());
+
+		for (int i = 0; i < 10_000; i++) {
+			limit.onSample(i, i + 1, false, 20);
+		}
+		assertEquals(20, limit.get(), "capped at the maximum");
+	}
+
+	@Test
+	void shrinksOncePerRoundTripOnCongestion() {
+		limit.onSample(0, 100, true, 10);
+		assertEquals(5, limit.get());
+
+		// Started before the decrease, these calls ran under the old limit
+		limit.onSample(10, 110, true, 10);
+		limit.onSample(50, 120, true, 10);
+		assertEquals(5, limit.get());
+
+		limit.onSample(101, 200, true, 5);
+		assertEquals(2, limit.get());
+		limit.onSample(201, 300, true, 2);
+		assertEquals(2, limit.get(), "never below the minimum");
+	}
+}
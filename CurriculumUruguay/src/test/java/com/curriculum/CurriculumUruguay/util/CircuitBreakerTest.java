@@ -0,0 +1,46 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+	private final AtomicLong now = new AtomicLong();
+
+	private final CircuitBreaker breaker = new CircuitBreaker(4, 4, 0.5, 1_000, now::get);
+
+	@Test
+	void opensAtFailureRateAndRecoversAfterTrialCall() {
+		breaker.onSuccess();
+		breaker.onSuccess();
+		breaker.onFailure();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		breaker.onFailure();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire());
+
+		now.addAndGet(1_000);
+		assertTrue(breaker.tryAcquire());
+		assertFalse(breaker.tryAcquire(), "only one trial call while half open");
+		breaker.onSuccess();
+
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertTrue(breaker.tryAcquire());
+	}
+
+	@Test
+	void failedTrialCallOpensAgain() {
+		for (int i = 0; i < 4; i++) {
+			breaker.onFailure();
+		}
+		now.addAndGet(1_000);
+		assertTrue(breaker.tryAcquire());
+		breaker.onFailure();
+
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire());
+	}
+}
@@ -0,0 +1,52 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+	private static final int KEYS = 30_000;
+
+	@Test
+	void spreadsKeysEvenly() {
+		ConsistentHashRing<String> ring = new ConsistentHashRing<>(List.of("a", "b", "c"), 128);
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < KEYS; i++) {
+			counts.merge(ring.nodeFor("telegram:" + (1_000_000 + i)), 1, Integer::sum);
+		}
+
+		assertEquals(3, counts.size());
+		for (int count : counts.values()) {
+			assertTrue(count > KEYS / 3 * 0.8 && count < KEYS / 3 * 1.2, counts.toString());
+		}
+	}
+
+	@Test
+	void joiningNodeOnlyTakesKeysFromOthers() {
+		ConsistentHashRing<String> before = new ConsistentHashRing<>(List.of("a", "b", "c"), 128);
+		ConsistentHashRing<String> after = new ConsistentHashRing<>(List.of("a", "b", "c", "d"), 128);
+		int moved = 0;
+		for (int i = 0; i < KEYS; i++) {
+			String key = "telegram:" + i;
+			String owner = after.nodeFor(key);
+			if (!owner.equals(before.nodeFor(key))) {
+				assertEquals("d", owner);
+				moved++;
+			}
+		}
+		// About a quarter of the keys move to the new node
+		assertTrue(moved > KEYS / 4 * 0.8 && moved < KEYS / 4 * 1.2, "moved " + moved);
+	}
+
+	@Test
+	void emptyRingHasNoOwner() {
+		ConsistentHashRing<String> ring = new ConsistentHashRing<>(List.of(), 128);
+		assertTrue(ring.isEmpty());
+		assertThrows(IllegalStateException.class, () -> ring.nodeFor("telegram:1"));
+	}
+}
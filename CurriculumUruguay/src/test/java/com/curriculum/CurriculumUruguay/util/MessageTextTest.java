@@ -0,0 +1,29 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageTextTest {
+
+	@Test
+	void splitsLongTextOnLineBoundaries() {
+		String first = "a".repeat(3000);
+		String second = "b".repeat(3000);
+
+		List<String> parts = MessageText.split(first + "\n" + second, 4096);
+
+		assertEquals(List.of(first, second), parts);
+	}
+
+	@Test
+	void splitsTextWithoutBoundaries() {
+		List<String> parts = MessageText.split("x".repeat(10000), 4096);
+
+		assertEquals(3, parts.size());
+		assertTrue(parts.stream().allMatch(part -> part.length() <= 4096));
+		assertEquals(10000, String.join("", parts).length());
+	}
+}
@@ -0,0 +1,71 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MpscRingBufferTest {
+
+	@Test
+	void rejectsOffersWhenFull() {
+		MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(3);
+		assertEquals(4, buffer.capacity());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.offer(i));
+		}
+		assertFalse(buffer.offer(4));
+
+		List<Integer> drained = new ArrayList<>();
+		assertEquals(2, buffer.drain(drained::add, 2));
+		assertTrue(buffer.offer(4));
+		buffer.drain(drained::add, 10);
+		assertEquals(List.of(0, 1, 2, 3, 4), drained);
+		assertEquals(0, buffer.size());
+	}
+
+	@Test
+	void keepsEveryProducersOrder() throws InterruptedException {
+		int producers = 4;
+		int perProducer = 100_000;
+		MpscRingBuffer<long[]> buffer = new MpscRingBuffer<>(1024);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			long producer = p;
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (long i = 0; i < perProducer; i++) {
+					while (!buffer.offer(new long[] {producer, i})) {
+						Thread.onSpinWait();
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+
+		long[] next = new long[producers];
+		int received = 0;
+		start.countDown();
+		while (received < producers * perProducer) {
+			received += buffer.drain(event -> {
+				assertEquals(next[(int) event[0]], event[1]);
+				next[(int) event[0]]++;
+			}, 256);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (long count : next) {
+			assertEquals(perProducer, count);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import com.curriculum.CurriculumUruguay.model.CvData;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class PdfTemplateTest {
+
+	private static final String DEJAVU = "/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf";
+	private static final String DEJAVU_BOLD = "/usr/share/fonts/truetype/dejavu/DejaVuSans-Bold.ttf";
+
+	private final PdfTemplate template = PdfTemplate.compile(readTemplate(), CvData.class);
+
+	@Test
+	void rendersTheCurriculumSkippingEmptyFields() throws IOException {
+		CvData cv = new CvData("Ana Núñez", "Contadora", "ana@correo.com.uy", null, "Salto", "Contadora 🚀 con diez años",
+				List.of(new CvData.Experience("Contadora", "Estudio Díaz", "2015 - 2025", "Liquidación de sueldos\nBalances")),
+				List.of(), List.of("Excel avanzado"), null);
+
+		String text = textOf(render(cv, PdfFonts.standard()));
+
+		assertTrue(text.contains("Ana Núñez"), text);
+		assertTrue(text.contains("ana@correo.com.uy · Salto"), text);
+		// Helvetica has no emoji, the rest of the line is kept
+		assertTrue(text.contains("Contadora ? con diez años"), text);
+		assertTrue(text.contains("Experiencia laboral"), text);
+		assertTrue(text.contains("Liquidación de sueldos\nBalances"), text);
+		assertTrue(text.contains("• Excel avanzado"), text);
+		assertFalse(text.contains("Educación"), text);
+		assertFalse(text.contains("Idiomas"), text);
+	}
+
+	@Test
+	void longCurriculumFlowsOntoMorePages() throws IOException {
+		CvData.Experience job = new CvData.Experience("Vendedor", "Tienda", "2020",
+				"Atención al público, manejo de caja y reposición de mercadería en el local del centro de la ciudad. ".repeat(5));
+		CvData cv = new CvData("Pedro", null, null, null, null, null, Collections.nCopies(30, job), null, null, null);
+
+		try (PDDocument document = Loader.loadPDF(render(cv, PdfFonts.standard()))) {
+			assertTrue(document.getNumberOfPages() > 2, "pages: " + document.getNumberOfPages());
+		}
+	}
+
+	@Test
+	void embeddedFontsAreReusedAcrossDocuments() throws IOException {
+		assumeTrue(Files.exists(Path.of(DEJAVU)) && Files.exists(Path.of(DEJAVU_BOLD)));
+		PdfFonts fonts = PdfFonts.trueType(Path.of(DEJAVU), Path.of(DEJAVU_BOLD));
+		CvData first = new CvData("Łukasz Žák", null, null, null, null, "Ingeniero", null, null, null, null);
+		CvData second = new CvData("Ana", null, null, null, null, "Diseñadora", null, null, null, null);
+
+		assertTrue(textOf(render(first, fonts)).contains("Łukasz Žák"));
+		assertTrue(textOf(render(second, fonts)).contains("Diseñadora"));
+	}
+
+	@Test
+	void invalidTemplatesFailToCompile() {
+		IllegalArgumentException unknown = assertThrows(IllegalArgumentException.class,
+				() -> PdfTemplate.compile("bold 12 {name}\ntext 10 {salary}", CvData.class));
+		assertTrue(unknown.getMessage().contains("line 2"), unknown.getMessage());
+
+		assertThrows(IllegalArgumentException.class, () -> PdfTemplate.compile("each skills\nend", CvData.class));
+		assertThrows(IllegalArgumentException.class, () -> PdfTemplate.compile("each experience\nbold 11 {role}", CvData.class));
+		assertThrows(IllegalArgumentException.class, () -> PdfTemplate.compile("bold big {name}", CvData.class));
+	}
+
+	private byte[] render(CvData cv, PdfFonts fonts) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		template.render(cv, fonts, out);
+		return out.toByteArray();
+	}
+
+	private static String textOf(byte[] pdf) throws IOException {
+		try (PDDocument document = Loader.loadPDF(pdf)) {
+			return new PDFTextStripper().getText(document);
+		}
+	}
+
+	private static String readTemplate() {
+		try {
+			return new String(PdfTemplateTest.class.getResourceAsStream("/cv-template.txt").readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
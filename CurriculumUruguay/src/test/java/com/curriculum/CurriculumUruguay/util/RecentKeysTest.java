@@ -0,0 +1,52 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecentKeysTest {
+
+	@Test
+	void forgetsOldestKeyAtCapacity() {
+		RecentKeys keys = new RecentKeys(3);
+		assertTrue(keys.add(1));
+		assertTrue(keys.add(2));
+		assertTrue(keys.add(3));
+		assertFalse(keys.add(2));
+
+		assertTrue(keys.add(4));
+		assertFalse(keys.contains(1));
+		assertTrue(keys.contains(2));
+		assertEquals(3, keys.size());
+	}
+
+	@Test
+	void matchesReferenceSetUnderChurn() {
+		int capacity = 100;
+		RecentKeys keys = new RecentKeys(capacity);
+		ArrayDeque<Long> order = new ArrayDeque<>();
+		Set<Long> expected = new HashSet<>();
+		Random random = new Random(7);
+
+		// Few distinct values so keys collide, repeat and get evicted often
+		for (int i = 0; i < 200_000; i++) {
+			long key = random.nextInt(300);
+			boolean added = expected.add(key);
+			if (added) {
+				order.addLast(key);
+				if (order.size() > capacity) {
+					expected.remove(order.removeFirst());
+				}
+			}
+			assertEquals(added, keys.add(key), "key " + key + " at step " + i);
+		}
+		for (long key = 0; key < 300; key++) {
+			assertEquals(expected.contains(key), keys.contains(key));
+		}
+	}
+}
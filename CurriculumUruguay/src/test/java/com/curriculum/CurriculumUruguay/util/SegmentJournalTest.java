@@ -0,0 +1,94 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentJournalTest {
+
+	@TempDir
+	Path directory;
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static List<String> payloads(SegmentJournal journal) {
+		return journal.pending().stream().map(entry -> new String(entry.payload(), StandardCharsets.UTF_8)).toList();
+	}
+
+	@Test
+	void returnsUnacknowledgedEntriesAfterReopen() throws IOException {
+		try (SegmentJournal journal = new SegmentJournal(directory, 4096)) {
+			assertEquals(1, journal.append(bytes("a")));
+			assertEquals(2, journal.append(bytes("b")));
+			assertEquals(3, journal.append(bytes("c")));
+			assertTrue(journal.ack(2));
+			assertFalse(journal.ack(2));
+		}
+
+		try (SegmentJournal journal = new SegmentJournal(directory, 4096)) {
+			assertEquals(List.of("a", "c"), payloads(journal));
+			assertEquals(List.of(1L, 3L), journal.pending().stream().map(SegmentJournal.Entry::seq).toList());
+			// Sequence numbers continue, an old ack can't match a new entry
+			assertEquals(4, journal.append(bytes("d")));
+		}
+	}
+
+	@Test
+	void compactionDeletesAnsweredSegmentsAndKeepsPendingEntries() throws IOException {
+		byte[] payload = new byte[200];
+		try (SegmentJournal journal = new SegmentJournal(directory, 1024)) {
+			long kept = journal.append(payload);
+			for (int i = 0; i < 20; i++) {
+				journal.ack(journal.append(payload));
+			}
+			assertTrue(journal.segmentCount() > 3);
+
+			assertTrue(journal.compact() > 0);
+			assertEquals(1, journal.segmentCount());
+			assertEquals(1, journal.pendingCount());
+
+			journal.ack(kept);
+			journal.append(bytes("last"));
+		}
+
+		try (SegmentJournal journal = new SegmentJournal(directory, 1024)) {
+			assertEquals(List.of("last"), payloads(journal));
+		}
+	}
+
+	@Test
+	void tornRecordEndsTheSegment() throws IOException {
+		try (SegmentJournal journal = new SegmentJournal(directory, 4096)) {
+			journal.append(bytes("complete"));
+			journal.append(bytes("torn"));
+		}
+		Path segment;
+		try (Stream<Path> files = Files.list(directory)) {
+			segment = files.findFirst().orElseThrow();
+		}
+		// Second record: after the first one (17 byte header + 8 byte payload), payload at +17
+		try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+			file.seek(25 + 17);
+			file.write('X');
+		}
+
+		try (SegmentJournal journal = new SegmentJournal(directory, 4096)) {
+			assertEquals(List.of("complete"), payloads(journal));
+			journal.append(bytes("after"));
+		}
+		try (SegmentJournal journal = new SegmentJournal(directory, 4096)) {
+			assertEquals(List.of("complete", "after"), payloads(journal));
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelegramUpdateProcessorTest {
+
+	private static PhotoSize photo(String fileId, int width, int height, int fileSize) {
+		return new PhotoSize(fileId, fileId, width, height, fileSize, null);
+	}
+
+	private final List<PhotoSize> photos = List.of(
+			photo("s", 90, 60, 621),
+			photo("m", 320, 213, 4267),
+			photo("x", 800, 533, 15824),
+			photo("y", 1280, 853, 18846));
+
+	@Test
+	void selectsSmallestPhotoReachingTarget() {
+		assertEquals("x", TelegramUpdateProcessor.selectPhoto(photos, 640).getFileId());
+		assertEquals("y", TelegramUpdateProcessor.selectPhoto(photos, 1280).getFileId());
+	}
+
+	@Test
+	void fallsBackToLargestPhoto() {
+		assertEquals("y", TelegramUpdateProcessor.selectPhoto(photos, 2560).getFileId());
+	}
+}
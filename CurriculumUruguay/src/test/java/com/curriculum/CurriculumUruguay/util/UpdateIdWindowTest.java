@@ -0,0 +1,36 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateIdWindowTest {
+
+	@Test
+	void rejectsRepeatedAndTooOldIds() {
+		UpdateIdWindow window = new UpdateIdWindow(128);
+		assertTrue(window.markSeen(1_000));
+		assertTrue(window.markSeen(1_002));
+		// Out of order but inside the window
+		assertTrue(window.markSeen(1_001));
+		assertFalse(window.markSeen(1_002));
+
+		assertTrue(window.markSeen(1_100));
+		assertFalse(window.markSeen(1_001));
+		// Sliding past an id frees its bit for the id a window later
+		assertTrue(window.markSeen(1_130));
+		assertFalse(window.markSeen(1_000));
+		assertTrue(window.markSeen(1_128));
+		assertEquals(1_130, window.highest());
+	}
+
+	@Test
+	void treatsIdsUpToTheFloorAsSeen() {
+		UpdateIdWindow window = new UpdateIdWindow(64);
+		window.setFloor(500);
+		assertFalse(window.markSeen(500));
+		assertFalse(window.markSeen(42));
+		assertTrue(window.markSeen(501));
+		assertEquals(501, window.highest());
+	}
+}
@@ -0,0 +1,58 @@
+package com.curriculum.CurriculumUruguay.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WeightedFairQueueTest {
+
+	@Test
+	void cheapItemsOvertakeABacklogOfExpensiveOnes() {
+		WeightedFairQueue<String> queue = new WeightedFairQueue<>(1, 1);
+		for (int i = 0; i < 5; i++) {
+			queue.add(1, "pdf" + i, 8);
+		}
+		queue.add(0, "text0", 1);
+		queue.add(0, "text1", 1);
+
+		assertEquals(List.of("text0", "text1", "pdf0", "pdf1"), List.of(queue.poll(), queue.poll(), queue.poll(), queue.poll()));
+		assertEquals(3, queue.size());
+		assertEquals(3, queue.size(1));
+	}
+
+	@Test
+	void servesQueuesInProportionToTheirWeight() {
+		WeightedFairQueue<Integer> queue = new WeightedFairQueue<>(3, 1);
+		for (int i = 0; i < 40; i++) {
+			queue.add(0, 0, 1);
+			queue.add(1, 1, 1);
+		}
+		List<Integer> served = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			served.add(queue.poll());
+		}
+
+		assertEquals(30, served.stream().filter(q -> q == 0).count());
+		assertEquals(40, queue.size());
+	}
+
+	@Test
+	void idleQueueDoesNotSaveUpCredit() {
+		WeightedFairQueue<String> queue = new WeightedFairQueue<>(1, 1);
+		for (int i = 0; i < 10; i++) {
+			queue.add(1, "busy" + i, 1);
+		}
+		for (int i = 0; i < 5; i++) {
+			queue.poll();
+		}
+		// Arrives after the busy queue was served for a while, it alternates instead of taking over
+		queue.add(0, "late0", 1);
+		queue.add(0, "late1", 1);
+
+		assertEquals(List.of("late0", "busy5", "late1", "busy6"), List.of(queue.poll(), queue.poll(), queue.poll(), queue.poll()));
+		assertNull(new WeightedFairQueue<String>(1).poll());
+	}
+}